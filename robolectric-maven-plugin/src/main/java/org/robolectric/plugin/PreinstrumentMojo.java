@@ -0,0 +1,57 @@
+package org.robolectric.plugin;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.bytecode.PreinstrumentedJar;
+import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.internal.dependency.MavenDependencyResolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Instruments android-all jars ahead of time so tests can load Android classes without running ASM.
+ *
+ * <p>By default jars are written to the directory Robolectric looks in at runtime
+ * ({@code java.io.tmpdir/robolectric/preinstrumented}). If {@code outputDirectory} is changed, tests must be run with
+ * {@code -Drobolectric.preinstrumented.dir} pointing at it.</p>
+ */
+@Mojo(name = "preinstrument", requiresProject = false)
+public class PreinstrumentMojo extends AbstractMojo {
+
+  /** API levels to instrument. Defaults to every supported API level. */
+  @Parameter(property = "robolectric.apiLevels")
+  private List<Integer> apiLevels;
+
+  /** Directory to write the instrumented jars to. */
+  @Parameter(property = "robolectric.preinstrumented.dir")
+  private File outputDirectory;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    List<Integer> levels = new ArrayList<>();
+    if (apiLevels == null || apiLevels.isEmpty()) {
+      levels.addAll(SdkConfig.getSupportedApis());
+    } else {
+      levels.addAll(apiLevels);
+    }
+
+    File dir = outputDirectory == null ? PreinstrumentedJar.getDirectory() : outputDirectory;
+    DependencyResolver dependencyResolver = new MavenDependencyResolver();
+    for (int apiLevel : levels) {
+      SdkConfig sdkConfig = new SdkConfig(apiLevel);
+      getLog().info("Pre-instrumenting " + sdkConfig + "...");
+      try {
+        File jar = PreinstrumentedJar.build(sdkConfig, dependencyResolver, dir);
+        getLog().info("Wrote " + jar);
+      } catch (IOException e) {
+        throw new MojoExecutionException("Couldn't pre-instrument " + sdkConfig, e);
+      }
+    }
+  }
+}
@@ -4,52 +4,145 @@ import com.ximpleware.VTDGen;
 import com.ximpleware.VTDNav;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses the XML files in resource directories and passes them to {@link XmlLoader}s.
+ *
+ * <p>Files can be processed concurrently by setting {@code robolectric.resources.parallelism} to the number of
+ * threads, or to 0 to use one per processor. The values each file defines are still added to the
+ * {@link ResBundle}s on the calling thread, in the same order as when files are processed one at a time.</p>
+ */
 public class DocumentLoader {
+  public static final String PARALLELISM_PROPERTY = "robolectric.resources.parallelism";
+
   private static final FsFile.Filter ENDS_WITH_XML = new FsFile.Filter() {
     @Override public boolean accept(@NotNull FsFile fsFile) {
       return fsFile.getName().endsWith(".xml");
     }
   };
 
+  private static ForkJoinPool pool;
+
   private final FsFile resourceBase;
   private final String packageName;
-  private final VTDGen vtdGen;
+  private final ThreadLocal<VTDGen> vtdGen = new ThreadLocal<VTDGen>() {
+    @Override
+    protected VTDGen initialValue() {
+      return new VTDGen();
+    }
+  };
 
   public DocumentLoader(ResourcePath resourcePath) {
     this.resourceBase = resourcePath.resourceBase;
     this.packageName = resourcePath.getPackageName();
-    vtdGen = new VTDGen();
+  }
+
+  /**
+   * @return The number of threads to process files on, as requested with {@code robolectric.resources.parallelism}.
+   */
+  public static int getParallelism() {
+    Integer parallelism = Integer.getInteger(PARALLELISM_PROPERTY);
+    if (parallelism == null) {
+      return 1;
+    }
+    return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
+
+  private static synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(getParallelism());
+    }
+    return pool;
   }
 
   public void load(String folderBaseName, XmlLoader... xmlLoaders) throws Exception {
-    FsFile[] files = resourceBase.listFiles(new DirectoryMatchingFilter(folderBaseName));
-    if (files == null) {
+    load(folderBaseName, null, xmlLoaders);
+  }
+
+  /**
+   * Loads files that haven't changed since they were cached from a snapshot, and parses the rest.
+   *
+   * @param snapshot The snapshot, or null to parse every file.
+   */
+  void load(String folderBaseName, ResourceTableCache.Snapshot snapshot, XmlLoader... xmlLoaders) throws Exception {
+    FsFile[] dirs = resourceBase.listFiles(new DirectoryMatchingFilter(folderBaseName));
+    if (dirs == null) {
       throw new RuntimeException(resourceBase.join(folderBaseName) + " is not a directory");
     }
-    for (FsFile dir : files) {
-      loadFile(dir, xmlLoaders);
+
+    List<FsFile> files = new ArrayList<>();
+    for (FsFile dir : dirs) {
+      if (!dir.exists()) {
+        throw new RuntimeException("no such directory " + dir);
+      }
+      for (FsFile file : dir.listFiles(ENDS_WITH_XML)) {
+        files.add(file);
+      }
+    }
+
+    if (getParallelism() > 1 && files.size() > 1) {
+      loadConcurrently(files, snapshot, xmlLoaders);
+    } else {
+      for (FsFile file : files) {
+        loadResourceXmlFile(file, new XmlLoader.XmlContext(packageName, file), snapshot, xmlLoaders);
+      }
     }
   }
 
-  private void loadFile(FsFile dir, XmlLoader[] xmlLoaders) throws Exception {
-    if (!dir.exists()) {
-      throw new RuntimeException("no such directory " + dir);
+  /**
+   * Processes files on the pool, deferring the values they define, then adds each file's values in file order.
+   */
+  private void loadConcurrently(List<FsFile> files, final ResourceTableCache.Snapshot snapshot, final XmlLoader[] xmlLoaders) throws Exception {
+    ForkJoinPool pool = getPool();
+    List<Future<XmlLoader.XmlContext>> futures = new ArrayList<>(files.size());
+    for (final FsFile file : files) {
+      futures.add(pool.submit(new Callable<XmlLoader.XmlContext>() {
+        @Override
+        public XmlLoader.XmlContext call() throws Exception {
+          XmlLoader.XmlContext xmlContext = new XmlLoader.XmlContext(packageName, file);
+          xmlContext.deferPuts();
+          loadResourceXmlFile(file, xmlContext, snapshot, xmlLoaders);
+          return xmlContext;
+        }
+      }));
     }
 
-    for (FsFile file : dir.listFiles(ENDS_WITH_XML)) {
-      loadResourceXmlFile(file, xmlLoaders);
+    try {
+      for (Future<XmlLoader.XmlContext> future : futures) {
+        future.get().applyDeferredPuts();
+      }
+    } catch (ExecutionException e) {
+      for (Future<XmlLoader.XmlContext> future : futures) {
+        future.cancel(false);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
     }
   }
 
-  private void loadResourceXmlFile(FsFile fsFile, XmlLoader... xmlLoaders) throws Exception {
+  private void loadResourceXmlFile(FsFile fsFile, XmlLoader.XmlContext xmlContext, ResourceTableCache.Snapshot snapshot, XmlLoader... xmlLoaders) throws Exception {
+    if (snapshot != null && snapshot.replay(fsFile, xmlContext)) {
+      return;
+    }
+
     VTDNav vtdNav = parse(fsFile);
     for (XmlLoader xmlLoader : xmlLoaders) {
-      xmlLoader.processResourceXml(fsFile, vtdNav, packageName);
+      xmlLoader.processResourceXml(fsFile, vtdNav, xmlContext);
     }
   }
 
   private VTDNav parse(FsFile xmlFile) throws Exception {
     byte[] bytes = xmlFile.getBytes();
+    VTDGen vtdGen = this.vtdGen.get();
     vtdGen.setDoc(bytes);
     vtdGen.parse(true);
 
@@ -1,24 +1,17 @@
 package org.robolectric.res;
 
 import org.robolectric.util.Join;
-import org.robolectric.util.Util;
+import org.robolectric.util.MappedJar;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.NavigableSet;
-import java.util.TreeMap;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 import static java.util.Arrays.asList;
 
@@ -53,42 +46,16 @@ abstract public class Fs {
   }
 
   static class JarFs extends Fs {
-    private static final Map<File, NavigableMap<String, JarEntry>> CACHE =
-        new LinkedHashMap<File, NavigableMap<String, JarEntry>>() {
-          @Override
-          protected boolean removeEldestEntry(Map.Entry<File, NavigableMap<String, JarEntry>> fileNavigableMapEntry) {
-            return size() > 10;
-          }
-        };
-
-    private final JarFile jarFile;
-    private final NavigableMap<String, JarEntry> jarEntryMap;
+    private final String jarFileName;
+    private final MappedJar mappedJar;
 
     public JarFs(File file) {
+      jarFileName = file.getPath();
       try {
-        jarFile = new JarFile(file);
+        mappedJar = MappedJar.open(file);
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
-
-      NavigableMap<String, JarEntry> cachedMap;
-      synchronized (CACHE) {
-        cachedMap = CACHE.get(file.getAbsoluteFile());
-      }
-
-      if (cachedMap == null) {
-        cachedMap = new TreeMap<>();
-        Enumeration<JarEntry> entries = jarFile.entries();
-        while (entries.hasMoreElements()) {
-          JarEntry jarEntry = entries.nextElement();
-          cachedMap.put(jarEntry.getName(), jarEntry);
-        }
-        synchronized (CACHE) {
-          CACHE.put(file.getAbsoluteFile(), cachedMap);
-        }
-      }
-
-      jarEntryMap = cachedMap;
     }
 
     @Override public FsFile join(String folderBaseName) {
@@ -107,16 +74,16 @@ abstract public class Fs {
       }
 
       @Override public boolean isDirectory() {
-        return jarEntryMap.containsKey(path + "/");
+        return mappedJar.contains(path + "/");
       }
 
       @Override public boolean isFile() {
-        return jarEntryMap.containsKey(path);
+        return mappedJar.contains(path);
       }
 
       @Override public FsFile[] listFiles() {
         if (!isDirectory()) return null;
-        NavigableSet<String> strings = jarEntryMap.navigableKeySet().subSet(path + "/", false, path + "0", false);
+        List<String> strings = mappedJar.getNamesBetween(path + "/", path + "0");
         List<FsFile> fsFiles = new ArrayList<>();
         int startOfFilename = path.length() + 2;
         for (String string : strings) {
@@ -162,11 +129,15 @@ abstract public class Fs {
       }
 
       @Override public InputStream getInputStream() throws IOException {
-        return new BufferedInputStream(jarFile.getInputStream(jarEntryMap.get(path)));
+        return new ByteArrayInputStream(getBytes());
       }
 
       @Override public byte[] getBytes() throws IOException {
-        return Util.readBytes(jarFile.getInputStream(jarEntryMap.get(path)));
+        byte[] bytes = mappedJar.getBytes(path);
+        if (bytes == null) {
+          throw new FileNotFoundException(getPath());
+        }
+        return bytes;
       }
 
       @Override public FsFile join(String... pathParts) {
@@ -197,7 +168,7 @@ abstract public class Fs {
       }
 
       private String getJarFileName() {
-        return jarFile.getName();
+        return jarFileName;
       }
 
       @Override
@@ -29,28 +29,42 @@ public class PackageResourceLoader extends XResourceLoader {
 
     DocumentLoader documentLoader = new DocumentLoader(resourcePath);
 
-    documentLoader.load("values",
-        new ValueResourceLoader(data, "/resources/bool", "bool", ResType.BOOLEAN),
-        new ValueResourceLoader(data, "/resources/item[@type='bool']", "bool", ResType.BOOLEAN),
-        new ValueResourceLoader(data, "/resources/color", "color", ResType.COLOR),
-        new ValueResourceLoader(data, "/resources/drawable", "drawable", ResType.DRAWABLE),
-        new ValueResourceLoader(data, "/resources/item[@type='color']", "color", ResType.COLOR),
-        new ValueResourceLoader(data, "/resources/dimen", "dimen", ResType.DIMEN),
-        new ValueResourceLoader(data, "/resources/item[@type='dimen']", "dimen", ResType.DIMEN),
-        new ValueResourceLoader(data, "/resources/integer", "integer", ResType.INTEGER),
-        new ValueResourceLoader(data, "/resources/item[@type='integer']", "integer", ResType.INTEGER),
-        new ValueResourceLoader(data, "/resources/integer-array", "array", ResType.INTEGER_ARRAY),
-        new ValueResourceLoader(data, "/resources/fraction", "fraction", ResType.FRACTION),
-        new ValueResourceLoader(data, "/resources/item[@type='fraction']", "fraction", ResType.FRACTION),
-        new ValueResourceLoader(data, "/resources/item", "layout", ResType.LAYOUT),
-        new PluralResourceLoader(pluralsData),
-        new ValueResourceLoader(data, "/resources/string", "string", ResType.CHAR_SEQUENCE),
-        new ValueResourceLoader(data, "/resources/item[@type='string']", "string", ResType.CHAR_SEQUENCE),
-        new ValueResourceLoader(data, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
-        new AttrResourceLoader(data),
-        new StyleResourceLoader(data)
+    ResourceTableCache resourceTableCache = ResourceTableCache.getDefault();
+    ResourceTableCache.Snapshot snapshot = null;
+    ResBunch valuesData = data;
+    ResBundle<PluralResourceLoader.PluralRules> valuesPluralsData = pluralsData;
+    if (resourceTableCache != null) {
+      snapshot = resourceTableCache.open(resourcePath, data, pluralsData);
+      valuesData = snapshot.getRecordingData();
+      valuesPluralsData = snapshot.getRecordingPluralsData();
+    }
+
+    documentLoader.load("values", snapshot,
+        new ValueResourceLoader(valuesData, "/resources/bool", "bool", ResType.BOOLEAN),
+        new ValueResourceLoader(valuesData, "/resources/item[@type='bool']", "bool", ResType.BOOLEAN),
+        new ValueResourceLoader(valuesData, "/resources/color", "color", ResType.COLOR),
+        new ValueResourceLoader(valuesData, "/resources/drawable", "drawable", ResType.DRAWABLE),
+        new ValueResourceLoader(valuesData, "/resources/item[@type='color']", "color", ResType.COLOR),
+        new ValueResourceLoader(valuesData, "/resources/dimen", "dimen", ResType.DIMEN),
+        new ValueResourceLoader(valuesData, "/resources/item[@type='dimen']", "dimen", ResType.DIMEN),
+        new ValueResourceLoader(valuesData, "/resources/integer", "integer", ResType.INTEGER),
+        new ValueResourceLoader(valuesData, "/resources/item[@type='integer']", "integer", ResType.INTEGER),
+        new ValueResourceLoader(valuesData, "/resources/integer-array", "array", ResType.INTEGER_ARRAY),
+        new ValueResourceLoader(valuesData, "/resources/fraction", "fraction", ResType.FRACTION),
+        new ValueResourceLoader(valuesData, "/resources/item[@type='fraction']", "fraction", ResType.FRACTION),
+        new ValueResourceLoader(valuesData, "/resources/item", "layout", ResType.LAYOUT),
+        new PluralResourceLoader(valuesPluralsData),
+        new ValueResourceLoader(valuesData, "/resources/string", "string", ResType.CHAR_SEQUENCE),
+        new ValueResourceLoader(valuesData, "/resources/item[@type='string']", "string", ResType.CHAR_SEQUENCE),
+        new ValueResourceLoader(valuesData, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
+        new AttrResourceLoader(valuesData),
+        new StyleResourceLoader(valuesData)
     );
 
+    if (snapshot != null) {
+      snapshot.save();
+    }
+
     documentLoader.load("layout", new OpaqueFileLoader(data, "layout"), new XmlBlockLoader(xmlDocuments, "layout"));
     documentLoader.load("menu", new OpaqueFileLoader(data, "menu"), new XmlBlockLoader(xmlDocuments, "menu"));
     documentLoader.load("drawable", new OpaqueFileLoader(data, "drawable"), new XmlBlockLoader(xmlDocuments, "drawable"));
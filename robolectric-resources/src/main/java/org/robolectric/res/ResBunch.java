@@ -7,7 +7,17 @@ import org.jetbrains.annotations.NotNull;
 public class ResBunch {
   private final Map<String, ResBundle<TypedResource>> types = new LinkedHashMap<>();
 
-  public void put(String attrType, String name, TypedResource value, XmlLoader.XmlContext xmlContext) {
+  public void put(final String attrType, final String name, final TypedResource value, final XmlLoader.XmlContext xmlContext) {
+    if (xmlContext.isDeferringPuts()) {
+      xmlContext.defer(new Runnable() {
+        @Override
+        public void run() {
+          put(attrType, name, value, xmlContext);
+        }
+      });
+      return;
+    }
+
     ResBundle<TypedResource> bundle = getBundle(attrType);
     bundle.put(attrType, name, value, xmlContext);
   }
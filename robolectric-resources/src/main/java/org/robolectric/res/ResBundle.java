@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,9 +24,21 @@ public class ResBundle<T> {
 
   private final ResMap<T> valuesMap = new ResMap<>();
   private final ResMap<List<T>> valuesArrayMap = new ResMap<>();
+  // The value picked for each name and qualifiers, once the bundle is immutable.
+  private final Map<PickKey, Value<T>> picks = new ConcurrentHashMap<>();
   private String overrideNamespace;
 
-  public void put(String attrType, String name, T value, XmlLoader.XmlContext xmlContext) {
+  public void put(final String attrType, final String name, final T value, final XmlLoader.XmlContext xmlContext) {
+    if (xmlContext.isDeferringPuts()) {
+      xmlContext.defer(new Runnable() {
+        @Override
+        public void run() {
+          put(attrType, name, value, xmlContext);
+        }
+      });
+      return;
+    }
+
     ResName resName = new ResName(maybeOverride(xmlContext.packageName), attrType, name);
     List<Value<T>> values = valuesMap.find(resName);
     values.add(new Value<>(xmlContext.getQualifiers(), value));
@@ -38,7 +51,23 @@ public class ResBundle<T> {
   }
 
   public Value<T> getValue(ResName resName, String qualifiers) {
-    List<Value<T>> values = valuesMap.find(maybeOverride(resName));
+    if (!valuesMap.isImmutable()) {
+      return pickValue(resName, qualifiers);
+    }
+
+    PickKey pickKey = new PickKey(resName, qualifiers);
+    Value<T> value = picks.get(pickKey);
+    if (value == null) {
+      value = pickValue(resName, qualifiers);
+      if (value != null) {
+        picks.put(pickKey, value);
+      }
+    }
+    return value;
+  }
+
+  private Value<T> pickValue(ResName resName, String qualifiers) {
+    List<Value<T>> values = valuesMap.get(maybeOverride(resName));
     return values != null ? pick(values, qualifiers) : null;
   }
 
@@ -60,11 +89,10 @@ public class ResBundle<T> {
     StringTokenizer st = new StringTokenizer(qualifiers, "-");
     while (st.hasMoreTokens()) {
       String qualifier = st.nextToken();
-      String paddedQualifier = "-" + qualifier + "-";
       BitSet matches = new BitSet(count);
 
       for (int i = possibles.nextSetBit(0); i != -1; i = possibles.nextSetBit(i + 1)) {
-        if (values.get(i).qualifiers.contains(paddedQualifier)) {
+        if (values.get(i).hasQualifier(qualifier)) {
           matches.set(i);
         }
       }
@@ -86,14 +114,12 @@ public class ResBundle<T> {
     if (qualifiers.length() > 0 && targetApiLevel != -1) {
       Value<T> bestMatch = null;
       int bestMatchDistance = Integer.MAX_VALUE;
+      // Remove the version part and see if they still match
+      String qualifierWithoutVersion = withoutVersion("-" + qualifiers + "-");
       for (int i = possibles.nextSetBit(0); i != -1; i = possibles.nextSetBit(i + 1)) {
         Value<T> value = values.get(i);
         int distance = getDistance(value, targetApiLevel);
-        // Remove the version part and see if they still match
-        String paddedQualifier = "-" + qualifiers + "-";
-        String valueWithoutVersion = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(value.qualifiers).replaceAll("--");
-        String qualifierWithoutVersion = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(paddedQualifier).replaceAll("--");
-        if (qualifierWithoutVersion.contains(valueWithoutVersion) && distance >= 0 && distance < bestMatchDistance) {
+        if (qualifierWithoutVersion.contains(value.qualifiersWithoutVersion) && distance >= 0 && distance < bestMatchDistance) {
           bestMatch = value;
           bestMatchDistance = distance;
         }
@@ -119,15 +145,10 @@ public class ResBundle<T> {
    */
   private static int getDistance(Value val, int targetApiLevel) {
     int distance = -1;
-    Matcher m = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(val.qualifiers);
-    if (m.find()) {
-      String match = m.group(1);
-      int resApiLevel = Integer.parseInt(match);
-      distance = targetApiLevel - resApiLevel;
-
-      if (m.find()) {
-        throw new IllegalStateException("A resource file was found that had two API level qualifiers: " + val);
-      }
+    if (val.apiLevel == Value.MULTIPLE_API_LEVELS) {
+      throw new IllegalStateException("A resource file was found that had two API level qualifiers: " + val);
+    } else if (val.apiLevel != -1) {
+      distance = targetApiLevel - val.apiLevel;
     } else {
       if (val.qualifiers.equals("--")) {
         distance = targetApiLevel;
@@ -136,6 +157,10 @@ public class ResBundle<T> {
     return distance;
   }
 
+  private static String withoutVersion(String paddedQualifiers) {
+    return VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(paddedQualifiers).replaceAll("--");
+  }
+
   public int size() {
     return valuesMap.size() + valuesArrayMap.size();
   }
@@ -164,9 +189,16 @@ public class ResBundle<T> {
   }
 
   public static class Value<T> implements Comparable<Value<T>> {
+    private static final int MULTIPLE_API_LEVELS = -2;
+
     private final String qualifiers;
     private final T value;
 
+    // Derived from the qualifiers up front, since values are picked far more often than they're created.
+    private final String[] qualifierTokens;
+    private final int apiLevel;
+    private final String qualifiersWithoutVersion;
+
     Value(String qualifiers, T value) {
       if (value == null) {
         throw new NullPointerException();
@@ -174,6 +206,28 @@ public class ResBundle<T> {
 
       this.qualifiers = qualifiers == null ? "--" : "-" + qualifiers + "-";
       this.value = value;
+
+      qualifierTokens = this.qualifiers.substring(1, this.qualifiers.length() - 1).split("-");
+      Matcher m = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(this.qualifiers);
+      if (m.find()) {
+        int resApiLevel = Integer.parseInt(m.group(1));
+        apiLevel = m.find() ? MULTIPLE_API_LEVELS : resApiLevel;
+      } else {
+        apiLevel = -1;
+      }
+      qualifiersWithoutVersion = withoutVersion(this.qualifiers);
+    }
+
+    /**
+     * @return True if the qualifier, which mustn't contain a dash, is one of this value's.
+     */
+    boolean hasQualifier(String qualifier) {
+      for (String qualifierToken : qualifierTokens) {
+        if (qualifierToken.equals(qualifier)) {
+          return true;
+        }
+      }
+      return false;
     }
 
     public String getQualifiers() {
@@ -199,14 +253,22 @@ public class ResBundle<T> {
 
   private static class ResMap<T> {
     private final Map<ResName, List<Value<T>>> map = new HashMap<>();
-    private boolean immutable;
+    private volatile boolean immutable;
 
     public List<Value<T>> find(ResName resName) {
+      if (immutable) {
+        throw new IllegalStateException("immutable!");
+      }
+
       List<Value<T>> values = map.get(resName);
       if (values == null) map.put(resName, values = new ArrayList<>());
       return values;
     }
 
+    public List<Value<T>> get(ResName resName) {
+      return map.get(resName);
+    }
+
     private void merge(String packageName, ResMap<T> sourceMap) {
       if (immutable) {
         throw new IllegalStateException("immutable!");
@@ -225,5 +287,33 @@ public class ResBundle<T> {
     public void makeImmutable() {
       immutable = true;
     }
+
+    public boolean isImmutable() {
+      return immutable;
+    }
+  }
+
+  private static class PickKey {
+    private final ResName resName;
+    private final String qualifiers;
+
+    PickKey(ResName resName, String qualifiers) {
+      this.resName = resName;
+      this.qualifiers = qualifiers;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof PickKey)) return false;
+      PickKey pickKey = (PickKey) o;
+      return resName.equals(pickKey.resName)
+          && (qualifiers == null ? pickKey.qualifiers == null : qualifiers.equals(pickKey.qualifiers));
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * resName.hashCode() + (qualifiers == null ? 0 : qualifiers.hashCode());
+    }
   }
 }
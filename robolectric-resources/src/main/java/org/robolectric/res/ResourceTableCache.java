@@ -0,0 +1,483 @@
+package org.robolectric.res;
+
+import org.robolectric.util.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of the resources parsed from {@code values*} directories, shared by every JVM on the machine.
+ *
+ * <p>Each resource directory gets a binary snapshot of the values, plurals, attrs and styles every file in its
+ * {@code values*} directories defined, together with a fingerprint of the file: its size and modification time, or
+ * for files in jars, the CRC of its contents. On the next load, files whose fingerprints still match are replayed
+ * from the snapshot instead of being parsed, and only changed files are parsed again. Snapshots are written to a
+ * temporary file and atomically renamed into place.</p>
+ *
+ * <p>The cache is disabled by default. It can be enabled by setting the property:
+ * {@code robolectric.resourceCache.enabled = true}. Its location is set with {@code robolectric.resourceCache.dir}.
+ * It's used by every {@link PackageResourceLoader}, so it covers both system and application resources.</p>
+ */
+public class ResourceTableCache {
+  public static final String ENABLED_PROPERTY = "robolectric.resourceCache.enabled";
+  public static final String DIR_PROPERTY = "robolectric.resourceCache.dir";
+
+  private static final int MAGIC = 0x52455342; // "RESB"
+  private static final byte FORMAT_VERSION = 1;
+
+  private static final byte KIND_DATA = 0;
+  private static final byte KIND_PLURALS = 1;
+
+  private static final byte VALUE_SCALAR = 0;
+  private static final byte VALUE_FILE = 1;
+  private static final byte VALUE_ARRAY = 2;
+  private static final byte VALUE_ATTR = 3;
+  private static final byte VALUE_STYLE = 4;
+
+  private static final ResourceTableCache DEFAULT = fromSystemProperties();
+
+  private final File dir;
+
+  public ResourceTableCache(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * @return The cache configured by system properties, or null if it's disabled.
+   */
+  public static ResourceTableCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Creates a cache configured from system properties.
+   *
+   * @return The cache, or null if the cache is disabled or its directory can't be created.
+   */
+  public static ResourceTableCache fromSystemProperties() {
+    if (!Boolean.getBoolean(ENABLED_PROPERTY)) {
+      return null;
+    }
+
+    File defaultDir = new File(new File(new File(System.getProperty("java.io.tmpdir")), "robolectric"), "resource-tables");
+    String dirProperty = System.getProperty(DIR_PROPERTY);
+    File dir = dirProperty == null ? defaultDir : new File(dirProperty);
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      Logger.error("Couldn't create resource table cache at %s, continuing without it", dir.getAbsolutePath());
+      return null;
+    }
+
+    Logger.info("Resource table cache location: %s", dir.getAbsolutePath());
+    return new ResourceTableCache(dir);
+  }
+
+  /**
+   * Opens the snapshot of a resource directory, or starts an empty one if there isn't a usable one.
+   *
+   * @param resourcePath The resource directory.
+   * @param data         The bunch that values, attrs and styles are loaded into.
+   * @param pluralsData  The bundle that plurals are loaded into.
+   * @return The snapshot.
+   */
+  Snapshot open(ResourcePath resourcePath, ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData) {
+    String packageName = resourcePath.getPackageName();
+    File file = new File(dir, sha1(packageName + "|" + resourcePath.resourceBase.getPath()) + ".bin");
+    Snapshot snapshot = new Snapshot(file, packageName, data, pluralsData);
+    try {
+      if (file.isFile()) {
+        snapshot.read(Files.readAllBytes(file.toPath()));
+      }
+    } catch (IOException | RuntimeException e) {
+      Logger.debug("Ignoring unreadable resource table snapshot %s: %s", file, e);
+      snapshot.previousFiles.clear();
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return A value that changes when the file does.
+   */
+  static long fingerprint(FsFile file) throws IOException {
+    if (file instanceof FileFsFile) {
+      File ioFile = ((FileFsFile) file).getFile();
+      return ioFile.lastModified() * 31 + ioFile.length();
+    }
+
+    byte[] bytes = file.getBytes();
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return crc.getValue() << 32 ^ bytes.length;
+  }
+
+  private static String sha1(String string) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      StringBuilder builder = new StringBuilder();
+      for (byte b : digest.digest(string.getBytes(StandardCharsets.UTF_8))) {
+        builder.append(String.format("%02x", b));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * The cached resources of one resource directory. Pass it to {@link DocumentLoader#load(String, Snapshot,
+   * XmlLoader...)} and have the loaders write to {@link #getRecordingData()} and {@link #getRecordingPluralsData()},
+   * then {@link #save()} it.
+   */
+  static class Snapshot {
+    private final File file;
+    private final String packageName;
+    private final ResBunch data;
+    private final ResBundle<PluralResourceLoader.PluralRules> pluralsData;
+    private final Map<String, FileEntries> previousFiles = new HashMap<>();
+    private final Map<String, FileEntries> files = new HashMap<>();
+    private int hits;
+    private int misses;
+
+    Snapshot(File file, String packageName, ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData) {
+      this.file = file;
+      this.packageName = packageName;
+      this.data = data;
+      this.pluralsData = pluralsData;
+    }
+
+    /**
+     * @return A bunch that passes values on to the real one and records them.
+     */
+    ResBunch getRecordingData() {
+      return new ResBunch() {
+        @Override
+        public void put(String attrType, String name, TypedResource value, XmlLoader.XmlContext xmlContext) {
+          record(KIND_DATA, attrType, name, value, xmlContext);
+          data.put(attrType, name, value, xmlContext);
+        }
+      };
+    }
+
+    /**
+     * @return A bundle that passes plurals on to the real one and records them.
+     */
+    ResBundle<PluralResourceLoader.PluralRules> getRecordingPluralsData() {
+      return new ResBundle<PluralResourceLoader.PluralRules>() {
+        @Override
+        public void put(String attrType, String name, PluralResourceLoader.PluralRules value, XmlLoader.XmlContext xmlContext) {
+          record(KIND_PLURALS, attrType, name, value, xmlContext);
+          pluralsData.put(attrType, name, value, xmlContext);
+        }
+      };
+    }
+
+    /**
+     * Loads a file's resources from the snapshot if it hasn't changed since it was recorded. Otherwise, starts
+     * recording the resources the loaders find in it.
+     *
+     * @param xmlFile    The file.
+     * @param xmlContext The context to put the file's resources with.
+     * @return True if the file was loaded from the snapshot and doesn't need parsing.
+     */
+    boolean replay(FsFile xmlFile, XmlLoader.XmlContext xmlContext) throws IOException {
+      String path = xmlFile.getPath();
+      long fingerprint = fingerprint(xmlFile);
+      FileEntries previous;
+      synchronized (this) {
+        previous = previousFiles.get(path);
+        if (previous == null || previous.fingerprint != fingerprint) {
+          misses++;
+          files.put(path, new FileEntries(fingerprint));
+          return false;
+        }
+        hits++;
+        files.put(path, previous);
+      }
+
+      for (Entry entry : previous.entries) {
+        if (entry.kind == KIND_PLURALS) {
+          pluralsData.put(entry.attrType, entry.name, (PluralResourceLoader.PluralRules) entry.value, xmlContext);
+        } else {
+          data.put(entry.attrType, entry.name, (TypedResource) entry.value, xmlContext);
+        }
+      }
+      return true;
+    }
+
+    private synchronized void record(byte kind, String attrType, String name, Object value, XmlLoader.XmlContext xmlContext) {
+      FileEntries fileEntries = files.get(xmlContext.getXmlFile().getPath());
+      if (fileEntries != null) {
+        fileEntries.entries.add(new Entry(kind, attrType, name, value));
+      }
+    }
+
+    /**
+     * Writes the snapshot if any file was parsed, added or removed since it was last written. Failures are logged
+     * and otherwise ignored.
+     */
+    synchronized void save() {
+      Logger.debug("Resource table cache for %s: %d files replayed, %d parsed", packageName, hits, misses);
+      if (misses == 0 && files.size() == previousFiles.size()) {
+        return;
+      }
+
+      File tempFile = null;
+      try {
+        byte[] bytes = write();
+        tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        Files.write(tempFile.toPath(), bytes);
+        try {
+          Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } catch (IOException | RuntimeException e) {
+        Logger.debug("Couldn't write resource table snapshot %s: %s", file, e);
+        if (tempFile != null) {
+          //noinspection ResultOfMethodCallIgnored
+          tempFile.delete();
+        }
+      }
+    }
+
+    private byte[] write() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeByte(FORMAT_VERSION);
+      writeString(out, packageName);
+
+      List<byte[]> fileBlocks = new ArrayList<>();
+      for (Map.Entry<String, FileEntries> fileEntry : files.entrySet()) {
+        try {
+          fileBlocks.add(writeFile(fileEntry.getKey(), fileEntry.getValue()));
+        } catch (IOException e) {
+          Logger.debug("Not caching resources from %s: %s", fileEntry.getKey(), e.getMessage());
+        }
+      }
+
+      out.writeInt(fileBlocks.size());
+      for (byte[] fileBlock : fileBlocks) {
+        out.write(fileBlock);
+      }
+      out.flush();
+      return bytes.toByteArray();
+    }
+
+    private static byte[] writeFile(String path, FileEntries fileEntries) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      writeString(out, path);
+      out.writeLong(fileEntries.fingerprint);
+      out.writeInt(fileEntries.entries.size());
+      for (Entry entry : fileEntries.entries) {
+        out.writeByte(entry.kind);
+        writeString(out, entry.attrType);
+        writeString(out, entry.name);
+        if (entry.kind == KIND_PLURALS) {
+          writePluralRules(out, (PluralResourceLoader.PluralRules) entry.value);
+        } else {
+          writeTypedResource(out, (TypedResource) entry.value);
+        }
+      }
+      out.flush();
+      return bytes.toByteArray();
+    }
+
+    private void read(byte[] bytes) throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION || !packageName.equals(readString(in))) {
+        return;
+      }
+
+      int fileCount = in.readInt();
+      for (int i = 0; i < fileCount; i++) {
+        String path = readString(in);
+        FileEntries fileEntries = new FileEntries(in.readLong());
+        int entryCount = in.readInt();
+        for (int j = 0; j < entryCount; j++) {
+          byte kind = in.readByte();
+          String attrType = readString(in);
+          String name = readString(in);
+          Object value = kind == KIND_PLURALS ? readPluralRules(in) : readTypedResource(in);
+          fileEntries.entries.add(new Entry(kind, attrType, name, value));
+        }
+        previousFiles.put(path, fileEntries);
+      }
+    }
+  }
+
+  private static void writeTypedResource(DataOutputStream out, TypedResource<?> typedResource) throws IOException {
+    Object data = typedResource.getData();
+    ResType resType = typedResource.getResType();
+    if (data instanceof String) {
+      out.writeByte(typedResource.isFile() ? VALUE_FILE : VALUE_SCALAR);
+      writeString(out, resType.name());
+      writeString(out, (String) data);
+    } else if (data instanceof TypedResource[]) {
+      out.writeByte(VALUE_ARRAY);
+      writeString(out, resType.name());
+      TypedResource[] items = (TypedResource[]) data;
+      out.writeInt(items.length);
+      for (TypedResource item : items) {
+        writeTypedResource(out, item);
+      }
+    } else if (data instanceof AttrData) {
+      AttrData attrData = (AttrData) data;
+      out.writeByte(VALUE_ATTR);
+      writeString(out, resType.name());
+      writeString(out, attrData.getName());
+      writeString(out, attrData.getFormat());
+      List<AttrData.Pair> pairs = attrData.getPairs();
+      out.writeInt(pairs == null ? -1 : pairs.size());
+      if (pairs != null) {
+        for (AttrData.Pair pair : pairs) {
+          writeString(out, pair.getName());
+          writeString(out, pair.getValue());
+        }
+      }
+    } else if (data instanceof StyleData) {
+      StyleData styleData = (StyleData) data;
+      out.writeByte(VALUE_STYLE);
+      writeString(out, resType.name());
+      writeString(out, styleData.getPackageName());
+      writeString(out, styleData.getName());
+      writeString(out, styleData.getParent());
+      out.writeInt(styleData.getItems().size());
+      for (Map.Entry<ResName, Attribute> item : styleData.getItems().entrySet()) {
+        writeResName(out, item.getKey());
+        writeResName(out, item.getValue().resName);
+        writeString(out, item.getValue().value);
+        writeString(out, item.getValue().contextPackageName);
+      }
+    } else {
+      throw new IOException("can't cache " + typedResource);
+    }
+  }
+
+  private static TypedResource<?> readTypedResource(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    ResType resType = ResType.valueOf(readString(in));
+    switch (type) {
+      case VALUE_SCALAR:
+        return new TypedResource<>(readString(in), resType);
+      case VALUE_FILE:
+        return new FileTypedResource<>(readString(in), resType);
+      case VALUE_ARRAY:
+        TypedResource[] items = new TypedResource[in.readInt()];
+        for (int i = 0; i < items.length; i++) {
+          items[i] = readTypedResource(in);
+        }
+        return new TypedResource<>(items, resType);
+      case VALUE_ATTR:
+        String name = readString(in);
+        String format = readString(in);
+        int pairCount = in.readInt();
+        List<AttrData.Pair> pairs = null;
+        if (pairCount >= 0) {
+          pairs = new ArrayList<>(pairCount);
+          for (int i = 0; i < pairCount; i++) {
+            pairs.add(new AttrData.Pair(readString(in), readString(in)));
+          }
+        }
+        return new TypedResource<>(new AttrData(name, format, pairs), resType);
+      case VALUE_STYLE:
+        StyleData styleData = new StyleData(readString(in), readString(in), readString(in));
+        int itemCount = in.readInt();
+        for (int i = 0; i < itemCount; i++) {
+          ResName attrName = readResName(in);
+          styleData.add(attrName, new Attribute(readResName(in), readString(in), readString(in)));
+        }
+        return new TypedResource<>(styleData, resType);
+      default:
+        throw new IOException("unknown value type " + type);
+    }
+  }
+
+  private static void writePluralRules(DataOutputStream out, PluralResourceLoader.PluralRules pluralRules) throws IOException {
+    out.writeInt(pluralRules.plurals.size());
+    for (Plural plural : pluralRules.plurals) {
+      writeString(out, plural.quantity);
+      writeString(out, plural.string);
+    }
+  }
+
+  private static PluralResourceLoader.PluralRules readPluralRules(DataInputStream in) throws IOException {
+    PluralResourceLoader.PluralRules pluralRules = new PluralResourceLoader.PluralRules();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      pluralRules.add(new Plural(readString(in), readString(in)));
+    }
+    return pluralRules;
+  }
+
+  private static void writeResName(DataOutputStream out, ResName resName) throws IOException {
+    writeString(out, resName.packageName);
+    writeString(out, resName.type);
+    writeString(out, resName.name);
+  }
+
+  private static ResName readResName(DataInputStream in) throws IOException {
+    return new ResName(readString(in), readString(in), readString(in));
+  }
+
+  /**
+   * Writes a nullable string of any length, unlike {@link DataOutputStream#writeUTF}.
+   */
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    if (string == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static class FileEntries {
+    private final long fingerprint;
+    private final List<Entry> entries = new ArrayList<>();
+
+    FileEntries(long fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+  }
+
+  private static class Entry {
+    private final byte kind;
+    private final String attrType;
+    private final String name;
+    private final Object value;
+
+    Entry(byte kind, String attrType, String name, Object value) {
+      this.kind = kind;
+      this.attrType = attrType;
+      this.name = name;
+      this.value = value;
+    }
+  }
+}
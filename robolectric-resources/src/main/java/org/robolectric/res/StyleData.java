@@ -25,6 +25,10 @@ public class StyleData implements Style {
     return parent;
   }
 
+  Map<ResName, Attribute> getItems() {
+    return items;
+  }
+
   public void add(ResName attrName, Attribute attribute) {
     attrName.mustBe("attr");
     items.put(attrName, attribute);
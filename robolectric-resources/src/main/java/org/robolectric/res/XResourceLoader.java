@@ -16,7 +16,7 @@ abstract class XResourceLoader implements ResourceLoader {
   final ResBundle<XmlBlock> xmlDocuments = new ResBundle<>();
   final ResBundle<FsFile> rawResources = new ResBundle<>();
   private final ResourceIndex resourceIndex;
-  boolean isInitialized = false;
+  private volatile boolean isInitialized = false;
 
   protected XResourceLoader(ResourceIndex resourceIndex) {
     this.resourceIndex = resourceIndex;
@@ -24,12 +24,18 @@ abstract class XResourceLoader implements ResourceLoader {
 
   abstract void doInitialize();
 
+  /**
+   * Loads the resources the first time it's called. Loaders can be shared by tests running on several threads, so the
+   * resources are loaded by one thread and made immutable before any other can see them.
+   */
   void initialize() {
     if (isInitialized) return;
-    doInitialize();
-    isInitialized = true;
-
-    makeImmutable();
+    synchronized (this) {
+      if (isInitialized) return;
+      doInitialize();
+      makeImmutable();
+      isInitialized = true;
+    }
   }
 
   protected void makeImmutable() {
@@ -1,8 +1,8 @@
 package org.robolectric.res;
 
 import android.content.res.XmlResourceParser;
+import com.ximpleware.VTDNav;
 import org.robolectric.res.builder.XmlBlock;
-import org.w3c.dom.Document;
 
 /**
  * Loader for xml property files.
@@ -20,9 +20,19 @@ public class XmlBlockLoader extends XmlLoader {
     this.resBundle = resBundle;
   }
 
+  @Override
+  void processResourceXml(FsFile xmlFile, VTDNav vtdNav, XmlContext xmlContext) throws Exception {
+    // Reuse the bytes the document loader already read rather than reading the file again.
+    put(xmlFile, vtdNav.getXML().getBytes(), xmlContext);
+  }
+
   @Override
   protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
-    XmlBlock block = XmlBlock.create(parse(xmlFile), xmlFile.getPath(), xmlContext.packageName);
+    put(xmlFile, xmlFile.getBytes(), xmlContext);
+  }
+
+  private void put(FsFile xmlFile, byte[] xml, XmlContext xmlContext) {
+    XmlBlock block = XmlBlock.create(xml, xmlFile.getPath(), xmlContext.packageName);
     resBundle.put(attrType, xmlFile.getBaseName(), block, xmlContext);
   }
 }
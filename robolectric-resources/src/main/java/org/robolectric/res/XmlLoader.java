@@ -9,6 +9,8 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,17 +23,15 @@ public abstract class XmlLoader {
     documentBuilderFactory.setIgnoringElementContentWhitespace(true);
   }
 
-  private DocumentBuilder documentBuilder;
+  // Document builders aren't thread-safe, and files may be parsed concurrently.
+  private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<>();
 
-  synchronized public Document parse(FsFile xmlFile) {
+  public Document parse(FsFile xmlFile) {
     InputStream inputStream = null;
     try {
-      if (documentBuilder == null) {
-        documentBuilder = documentBuilderFactory.newDocumentBuilder();
-      }
       inputStream = xmlFile.getInputStream();
-      return documentBuilder.parse(inputStream);
-    } catch (ParserConfigurationException | IOException | SAXException e) {
+      return parse(inputStream);
+    } catch (IOException e) {
       throw new RuntimeException(e);
     } finally {
       if (inputStream != null) try {
@@ -42,8 +42,30 @@ public abstract class XmlLoader {
     }
   }
 
+  /**
+   * Builds a DOM document with a builder belonging to the calling thread.
+   */
+  public static Document parse(InputStream inputStream) {
+    try {
+      DocumentBuilder builder = documentBuilder.get();
+      if (builder == null) {
+        synchronized (documentBuilderFactory) {
+          builder = documentBuilderFactory.newDocumentBuilder();
+        }
+        documentBuilder.set(builder);
+      }
+      return builder.parse(inputStream);
+    } catch (ParserConfigurationException | IOException | SAXException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   protected void processResourceXml(FsFile xmlFile, VTDNav vtdNav, String packageName) throws Exception {
-    processResourceXml(xmlFile, new XpathResourceXmlLoader.XmlNode(vtdNav), new XmlContext(packageName, xmlFile));
+    processResourceXml(xmlFile, vtdNav, new XmlContext(packageName, xmlFile));
+  }
+
+  void processResourceXml(FsFile xmlFile, VTDNav vtdNav, XmlContext xmlContext) throws Exception {
+    processResourceXml(xmlFile, new XpathResourceXmlLoader.XmlNode(vtdNav), xmlContext);
   }
 
   protected abstract void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception;
@@ -53,12 +75,40 @@ public abstract class XmlLoader {
 
     public final String packageName;
     private final FsFile xmlFile;
+    private List<Runnable> deferredPuts;
 
     public XmlContext(String packageName, FsFile xmlFile) {
       this.packageName = packageName;
       this.xmlFile = xmlFile;
     }
 
+    /**
+     * Makes {@link ResBundle}s and {@link ResBunch}es queue values put with this context until
+     * {@link #applyDeferredPuts()}, so a file can be processed on one thread and its values added on another.
+     */
+    void deferPuts() {
+      deferredPuts = new ArrayList<>();
+    }
+
+    boolean isDeferringPuts() {
+      return deferredPuts != null;
+    }
+
+    void defer(Runnable put) {
+      deferredPuts.add(put);
+    }
+
+    /**
+     * Adds the queued values, in the order they were put, and stops deferring.
+     */
+    void applyDeferredPuts() {
+      List<Runnable> puts = deferredPuts;
+      deferredPuts = null;
+      for (Runnable put : puts) {
+        put.run();
+      }
+    }
+
     public String getDirPrefix() {
       String parentDir = xmlFile.getParent().getName();
       return parentDir.split("-")[0];
@@ -0,0 +1,388 @@
+package org.robolectric.res.builder;
+
+import org.robolectric.res.ResourceIndex;
+import org.xmlpull.v1.XmlPullParser;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact form of a resource XML file, modeled on the binary XML aapt compiles resources into: a pool of the
+ * strings the file uses, and flat arrays of events, elements and attributes that refer to them by index.
+ *
+ * <p>It's built with a streaming parser, without a DOM, and {@link ResourceParser.CompiledXmlResourceParser} walks
+ * it without allocating anything per event. Events and attributes are reported the same way as the DOM-based
+ * {@link ResourceParser.XmlResourceParserImpl} reports them: namespace declarations count as attributes,
+ * attributes are in order of their qualified names, and whitespace-only text and CDATA sections are skipped.</p>
+ */
+public class CompiledXml {
+  /**
+   * Text that isn't reported as an event but is part of its elements' text.
+   */
+  static final int SKIPPED_TEXT = -1;
+
+  private static final int NONE = -1;
+
+  private static final ThreadLocal<XMLInputFactory> inputFactory = new ThreadLocal<XMLInputFactory>() {
+    @Override
+    protected XMLInputFactory initialValue() {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+      factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+      try {
+        // DOM keeps CDATA sections apart from the text around them, so tell them apart here too.
+        factory.setProperty("http://java.sun.com/xml/stream/properties/report-cdata-event", true);
+      } catch (IllegalArgumentException e) {
+        // Not supported by this implementation; CDATA will be treated as text.
+      }
+      return factory;
+    }
+  };
+
+  private final String[] strings;
+
+  // Pairs of event type and, for tags, the element's index or, for text, the text's string index.
+  private final int[] events;
+
+  private final int[] elementNames;
+  private final int[] elementNamespaces;
+  private final int[] elementStartEvents;
+  private final int[] elementEndEvents;
+  private final int[] elementFirstAttributes;
+  private final int[] elementAttributeCounts;
+
+  private final int[] attributeNames;
+  private final int[] attributeLocalNames;
+  private final int[] attributeNamespaces;
+  private final int[] attributeValues;
+
+  // Derived from the attributes on first use and shared by every parser over this file.
+  final String[] qualifiedAttributeValues;
+  volatile AttributeResources attributeResources;
+
+  private CompiledXml(Builder builder) {
+    strings = builder.strings.toArray(new String[builder.strings.size()]);
+    events = builder.events.toArray();
+    elementNames = builder.elementNames.toArray();
+    elementNamespaces = builder.elementNamespaces.toArray();
+    elementStartEvents = builder.elementStartEvents.toArray();
+    elementEndEvents = builder.elementEndEvents.toArray();
+    elementFirstAttributes = builder.elementFirstAttributes.toArray();
+    elementAttributeCounts = builder.elementAttributeCounts.toArray();
+    attributeNames = builder.attributeNames.toArray();
+    attributeLocalNames = builder.attributeLocalNames.toArray();
+    attributeNamespaces = builder.attributeNamespaces.toArray();
+    attributeValues = builder.attributeValues.toArray();
+    qualifiedAttributeValues = new String[attributeValues.length];
+  }
+
+  /**
+   * @param xml The contents of an XML file.
+   * @throws XMLStreamException If the file isn't well-formed.
+   */
+  public static CompiledXml compile(byte[] xml) throws XMLStreamException {
+    XMLStreamReader reader = inputFactory.get().createXMLStreamReader(new ByteArrayInputStream(xml));
+    try {
+      Builder builder = new Builder();
+      while (reader.hasNext()) {
+        builder.add(reader, reader.next());
+      }
+      return new CompiledXml(builder);
+    } finally {
+      reader.close();
+    }
+  }
+
+  int getEventCount() {
+    return events.length / 2;
+  }
+
+  /**
+   * @return {@link XmlPullParser#START_TAG}, {@link XmlPullParser#END_TAG}, {@link XmlPullParser#TEXT} or
+   *     {@link #SKIPPED_TEXT}.
+   */
+  int getEventType(int event) {
+    return events[event * 2];
+  }
+
+  int getElement(int event) {
+    return events[event * 2 + 1];
+  }
+
+  String getText(int event) {
+    return strings[events[event * 2 + 1]];
+  }
+
+  String getElementName(int element) {
+    return strings[elementNames[element]];
+  }
+
+  String getElementNamespace(int element) {
+    return string(elementNamespaces[element]);
+  }
+
+  /**
+   * @return All the text inside an element, the same as {@link org.w3c.dom.Node#getTextContent()}.
+   */
+  String getElementText(int element) {
+    StringBuilder builder = new StringBuilder();
+    for (int event = elementStartEvents[element] + 1; event < elementEndEvents[element]; event++) {
+      int eventType = getEventType(event);
+      if (eventType == XmlPullParser.TEXT || eventType == SKIPPED_TEXT) {
+        builder.append(getText(event));
+      }
+    }
+    return builder.toString();
+  }
+
+  int getAttributeCount(int element) {
+    return elementAttributeCounts[element];
+  }
+
+  /**
+   * @return The index of an element's attribute among all the attributes in the file.
+   * @throws IndexOutOfBoundsException If the element doesn't have that many attributes.
+   */
+  int getAttribute(int element, int index) {
+    if (index < 0 || index >= elementAttributeCounts[element]) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    return elementFirstAttributes[element] + index;
+  }
+
+  /**
+   * @return The index of an element's attribute among all the attributes in the file, or -1 if it doesn't have it.
+   */
+  int findAttribute(int element, String namespace, String localName) {
+    int first = elementFirstAttributes[element];
+    for (int attribute = first; attribute < first + elementAttributeCounts[element]; attribute++) {
+      if (strings[attributeLocalNames[attribute]].equals(localName)
+          && equal(string(attributeNamespaces[attribute]), namespace)) {
+        return attribute;
+      }
+    }
+    return NONE;
+  }
+
+  String getAttributeName(int attribute) {
+    return strings[attributeNames[attribute]];
+  }
+
+  String getAttributeLocalName(int attribute) {
+    return strings[attributeLocalNames[attribute]];
+  }
+
+  String getAttributeNamespace(int attribute) {
+    return string(attributeNamespaces[attribute]);
+  }
+
+  String getAttributeValue(int attribute) {
+    return strings[attributeValues[attribute]];
+  }
+
+  private String string(int index) {
+    return index == NONE ? null : strings[index];
+  }
+
+  private static boolean equal(String namespace, String otherNamespace) {
+    return namespace == null || namespace.isEmpty()
+        ? otherNamespace == null || otherNamespace.isEmpty()
+        : namespace.equals(otherNamespace);
+  }
+
+  /**
+   * @return True if the text only has characters {@code \s} matches.
+   */
+  static boolean isWhitespace(CharSequence text) {
+    for (int i = 0; i < text.length(); i++) {
+      switch (text.charAt(i)) {
+        case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+          break;
+        default:
+          return false;
+      }
+    }
+    return text.length() > 0;
+  }
+
+  /**
+   * The resource IDs of the attribute names, resolved as needed against one resource index.
+   */
+  static class AttributeResources {
+    static final int UNRESOLVED = -1;
+
+    final ResourceIndex resourceIndex;
+    final String applicationPackageName;
+    final int[] resourceIds;
+
+    AttributeResources(ResourceIndex resourceIndex, String applicationPackageName, int attributeCount) {
+      this.resourceIndex = resourceIndex;
+      this.applicationPackageName = applicationPackageName;
+      this.resourceIds = new int[attributeCount];
+      Arrays.fill(resourceIds, UNRESOLVED);
+    }
+  }
+
+  private static class Builder {
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final IntList events = new IntList();
+    private final IntList elementNames = new IntList();
+    private final IntList elementNamespaces = new IntList();
+    private final IntList elementStartEvents = new IntList();
+    private final IntList elementEndEvents = new IntList();
+    private final IntList elementFirstAttributes = new IntList();
+    private final IntList elementAttributeCounts = new IntList();
+    private final IntList attributeNames = new IntList();
+    private final IntList attributeLocalNames = new IntList();
+    private final IntList attributeNamespaces = new IntList();
+    private final IntList attributeValues = new IntList();
+    private final IntList openElements = new IntList();
+    private final StringBuilder text = new StringBuilder();
+
+    void add(XMLStreamReader reader, int eventType) {
+      switch (eventType) {
+        case XMLStreamConstants.START_ELEMENT:
+          flushText();
+          startElement(reader);
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          flushText();
+          int element = openElements.removeLast();
+          elementEndEvents.set(element, events.size() / 2);
+          addEvent(XmlPullParser.END_TAG, element);
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+          if (openElements.size() > 0) {
+            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+          }
+          break;
+        case XMLStreamConstants.CDATA:
+          flushText();
+          if (openElements.size() > 0) {
+            addEvent(SKIPPED_TEXT, intern(reader.getText()));
+          }
+          break;
+        default:
+          // Comments are dropped and the text around them joined, as when DOM parsing ignores comments.
+          break;
+      }
+    }
+
+    private void startElement(XMLStreamReader reader) {
+      int element = elementNames.size();
+      elementNames.add(intern(qualifiedName(reader.getPrefix(), reader.getLocalName())));
+      elementNamespaces.add(internNamespace(reader.getNamespaceURI()));
+      elementStartEvents.add(events.size() / 2);
+      elementEndEvents.add(NONE);
+      elementFirstAttributes.add(attributeNames.size());
+
+      List<String[]> attributes = new ArrayList<>();
+      for (int i = 0; i < reader.getNamespaceCount(); i++) {
+        String prefix = reader.getNamespacePrefix(i);
+        boolean isDefault = prefix == null || prefix.isEmpty();
+        attributes.add(new String[] {
+            isDefault ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+            isDefault ? XMLConstants.XMLNS_ATTRIBUTE : prefix,
+            XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+            reader.getNamespaceURI(i) == null ? "" : reader.getNamespaceURI(i)});
+      }
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        attributes.add(new String[] {
+            qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+            reader.getAttributeLocalName(i),
+            reader.getAttributeNamespace(i),
+            reader.getAttributeValue(i)});
+      }
+      Collections.sort(attributes, BY_NAME);
+      for (String[] attribute : attributes) {
+        attributeNames.add(intern(attribute[0]));
+        attributeLocalNames.add(intern(attribute[1]));
+        attributeNamespaces.add(internNamespace(attribute[2]));
+        attributeValues.add(intern(attribute[3]));
+      }
+      elementAttributeCounts.add(attributes.size());
+
+      openElements.add(element);
+      addEvent(XmlPullParser.START_TAG, element);
+    }
+
+    private void flushText() {
+      if (text.length() > 0) {
+        addEvent(isWhitespace(text) ? SKIPPED_TEXT : XmlPullParser.TEXT, intern(text.toString()));
+        text.setLength(0);
+      }
+    }
+
+    private void addEvent(int eventType, int value) {
+      events.add(eventType);
+      events.add(value);
+    }
+
+    private int intern(String string) {
+      Integer index = stringIndexes.get(string);
+      if (index == null) {
+        index = strings.size();
+        strings.add(string);
+        stringIndexes.put(string, index);
+      }
+      return index;
+    }
+
+    private int internNamespace(String namespace) {
+      return namespace == null || namespace.isEmpty() ? NONE : intern(namespace);
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+      return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    // DOM keeps attributes sorted by their qualified names.
+    private static final Comparator<String[]> BY_NAME = new Comparator<String[]>() {
+      @Override
+      public int compare(String[] attribute, String[] otherAttribute) {
+        return attribute[0].compareTo(otherAttribute[0]);
+      }
+    };
+  }
+
+  private static class IntList {
+    private int[] values = new int[16];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    void set(int index, int value) {
+      values[index] = value;
+    }
+
+    int removeLast() {
+      return values[--size];
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
@@ -12,7 +12,6 @@ import org.robolectric.res.Fs;
 import org.robolectric.res.FsFile;
 import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceIndex;
-import org.robolectric.res.XmlBlockLoader;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
@@ -35,18 +34,31 @@ public class ResourceParser {
       XmlResourceParser.FEATURE_VALIDATION
   };
 
+  /**
+   * Set to true to parse resource XML with {@link XmlResourceParserImpl}, which walks a DOM, rather than with
+   * {@link CompiledXmlResourceParser}.
+   */
+  public static final String DOM_PARSER_PROPERTY = "robolectric.resources.domParser";
+
   public static XmlResourceParser from(XmlBlock block, String applicationPackageName, ResourceIndex resourceIndex) {
+    CompiledXml compiledXml = Boolean.getBoolean(DOM_PARSER_PROPERTY) ? null : block.getCompiledXml();
+    if (compiledXml != null) {
+      return new CompiledXmlResourceParser(compiledXml, block.getFilename(), block.getPackageName(),
+          applicationPackageName, resourceIndex);
+    }
     return new XmlResourceParserImpl(block.getDocument(), block.getFilename(), block.getPackageName(),
         applicationPackageName, resourceIndex);
   }
 
   public static XmlResourceParser create(String file, String packageName, String applicationPackageName, ResourceIndex resourceIndex) {
     FsFile fsFile = Fs.fileFromPath(file);
-    Document document = new XmlBlockLoader(null, "xml").parse(fsFile);
-    if (document == null) {
+    byte[] xml;
+    try {
+      xml = fsFile.getBytes();
+    } catch (IOException e) {
       throw new Resources.NotFoundException("couldn't find resource " + fsFile.getPath());
     }
-    XmlBlock block = XmlBlock.create(document, file, packageName);
+    XmlBlock block = XmlBlock.create(xml, file, packageName);
     return from(block, applicationPackageName, resourceIndex);
   }
 
@@ -69,39 +81,25 @@ public class ResourceParser {
   }
 
   /**
-   * Concrete implementation of the {@link XmlResourceParser}.
-   *
-   * <p>Clients expects a pull parser while the resource loader
-   * initialise this object with a {@link Document}.
-   * This implementation navigates the dom and emulates a pull
-   * parser by raising all the opportune events.
-   *
-   * <p>Note that the original android implementation is based on
-   * a set of native methods calls. Here those methods are
-   * re-implemented in java when possible.
+   * The parts of an {@link XmlResourceParser} that don't depend on how the XML is represented.
    */
-  public static class XmlResourceParserImpl
-      implements XmlResourceParser {
+  public abstract static class BaseXmlResourceParser implements XmlResourceParser {
 
     private static final ResName FAKE_RES_NAME = new ResName("_robolectric_", "attr", "_fake_");
 
-    private final Document document;
-    private final String fileName;
-    private final String packageName;
-    private final String applicationPackageName;
-    private final ResourceIndex resourceIndex;
-    private final String applicationNamespace;
-
-    private Node currentNode;
+    final String fileName;
+    final String packageName;
+    final String applicationPackageName;
+    final ResourceIndex resourceIndex;
+    final String applicationNamespace;
 
-    private boolean mStarted = false;
-    private boolean mDecNextDepth = false;
-    private int mDepth = 0;
-    private int mEventType = START_DOCUMENT;
+    boolean mStarted = false;
+    boolean mDecNextDepth = false;
+    int mDepth = 0;
+    int mEventType = START_DOCUMENT;
 
-    public XmlResourceParserImpl(Document document, String fileName, String packageName,
-        String applicationPackageName, ResourceIndex resourceIndex) {
-      this.document = document;
+    BaseXmlResourceParser(String fileName, String packageName, String applicationPackageName,
+        ResourceIndex resourceIndex) {
       this.fileName = fileName;
       this.packageName = packageName;
       this.applicationPackageName = applicationPackageName;
@@ -203,14 +201,6 @@ public class ResourceParser {
       return mDepth;
     }
 
-    @Override
-    public String getText() {
-      if (currentNode == null) {
-        return "";
-      }
-      return currentNode.getTextContent();
-    }
-
     @Override
     public int getLineNumber() {
       // TODO(msama): The current implementation is
@@ -259,61 +249,7 @@ public class ResourceParser {
       return chars;
     }
 
-    @Override
-    public String getNamespace() {
-      String namespace = currentNode != null ? currentNode.getNamespaceURI() : null;
-      if (namespace == null) {
-        return "";
-      }
-
-      return maybeReplaceNamespace(namespace);
-    }
-
-    @Override
-    public String getName() {
-      if (currentNode == null) {
-        return "";
-      }
-      return currentNode.getNodeName();
-    }
-
-    Node getAttributeAt(int index) {
-      if (currentNode == null) {
-        throw new IndexOutOfBoundsException(String.valueOf(index));
-      }
-      NamedNodeMap map = currentNode.getAttributes();
-      if (index >= map.getLength()) {
-        throw new IndexOutOfBoundsException(String.valueOf(index));
-      }
-      return map.item(index);
-    }
-
-    String getAttribute(String namespace, String name) {
-      if (currentNode == null) {
-        return null;
-      }
-
-      Element element = (Element) currentNode;
-      if (element.hasAttributeNS(namespace, name)) {
-        return element.getAttributeNS(namespace, name);
-      } else if (applicationNamespace.equals(namespace)
-          && element.hasAttributeNS(Attribute.RES_AUTO_NS_URI, name)) {
-        return element.getAttributeNS(Attribute.RES_AUTO_NS_URI, name);
-      }
-
-      return null;
-    }
-
-    @Override
-    public String getAttributeNamespace(int index) {
-      Node attr = getAttributeAt(index);
-      if (attr == null) {
-        return null;
-      }
-      return maybeReplaceNamespace(attr.getNamespaceURI());
-    }
-
-    private String maybeReplaceNamespace(String namespace) {
+    String maybeReplaceNamespace(String namespace) {
       if (Attribute.RES_AUTO_NS_URI.equals(namespace)) {
         return applicationNamespace;
       } else {
@@ -321,19 +257,6 @@ public class ResourceParser {
       }
     }
 
-    @Override
-    public String getAttributeName(int index) {
-      try {
-        Node attr = getAttributeAt(index);
-        String namespace = maybeReplaceNamespace(attr.getNamespaceURI());
-        return (Attribute.ANDROID_RES_NS_PREFIX + packageName).equals(namespace) ?
-          attr.getLocalName() :
-          attr.getNodeName();
-      } catch (IndexOutOfBoundsException ex) {
-        return null;
-      }
-    }
-
     @Override
     public String getAttributePrefix(int index) {
       throw new RuntimeException("getAttributePrefix not supported");
@@ -346,26 +269,13 @@ public class ResourceParser {
       return false;
     }
 
-    @Override
-    public int getAttributeCount() {
-      if (currentNode == null) {
-        return -1;
-      }
-      return currentNode.getAttributes().getLength();
-    }
-
-    @Override
-    public String getAttributeValue(int index) {
-      return qualify(getAttributeAt(index).getNodeValue());
-    }
-
-    private String qualify(String value) {
+    String qualify(String value) {
       Attribute attribute = asAttribute(value);
       if (attribute == null) return null;
       return attribute.qualifiedValue();
     }
 
-    private Attribute asAttribute(String value) {
+    Attribute asAttribute(String value) {
       if (value == null) return null;
       return new Attribute(FAKE_RES_NAME, value, packageName);
     }
@@ -431,154 +341,12 @@ public class ResourceParser {
      *
      * @throws XmlPullParserException
      */
-    private int nativeNext() throws XmlPullParserException {
-      switch (mEventType) {
-        case (CDSECT): {
-          throw new IllegalArgumentException(
-              "CDSECT is not handled by Android");
-        }
-        case (COMMENT): {
-          throw new IllegalArgumentException(
-              "COMMENT is not handled by Android");
-        }
-        case (DOCDECL): {
-          throw new IllegalArgumentException(
-              "DOCDECL is not handled by Android");
-        }
-        case (ENTITY_REF): {
-          throw new IllegalArgumentException(
-              "ENTITY_REF is not handled by Android");
-        }
-        case (END_DOCUMENT): {
-          // The end document event should have been filtered
-          // from the invoker. This should never happen.
-          throw new IllegalArgumentException(
-              "END_DOCUMENT should not be found here.");
-        }
-        case (END_TAG): {
-          return navigateToNextNode(currentNode);
-        }
-        case (IGNORABLE_WHITESPACE): {
-          throw new IllegalArgumentException(
-              "IGNORABLE_WHITESPACE");
-        }
-        case (PROCESSING_INSTRUCTION): {
-          throw new IllegalArgumentException(
-              "PROCESSING_INSTRUCTION");
-        }
-        case (START_DOCUMENT): {
-          currentNode = document.getDocumentElement();
-          return START_TAG;
-        }
-        case (START_TAG): {
-          if (currentNode.hasChildNodes()) {
-            // The node has children, navigate down
-            return processNextNodeType(
-                currentNode.getFirstChild());
-          } else {
-            // The node has no children
-            return END_TAG;
-          }
-        }
-        case (TEXT): {
-          return navigateToNextNode(currentNode);
-        }
-        default: {
-          // This can only happen if mEventType is
-          // assigned with an unmapped integer.
-          throw new RuntimeException(
-              "Robolectric-> Uknown XML event type: " + mEventType);
-        }
-      }
-
-    }
-
-    /*protected*/ int processNextNodeType(Node node)
-        throws XmlPullParserException {
-      switch (node.getNodeType()) {
-        case (Node.ATTRIBUTE_NODE): {
-          throw new IllegalArgumentException("ATTRIBUTE_NODE");
-        }
-        case (Node.CDATA_SECTION_NODE): {
-          return navigateToNextNode(node);
-        }
-        case (Node.COMMENT_NODE): {
-          return navigateToNextNode(node);
-        }
-        case (Node.DOCUMENT_FRAGMENT_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_FRAGMENT_NODE");
-        }
-        case (Node.DOCUMENT_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_NODE");
-        }
-        case (Node.DOCUMENT_TYPE_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.ELEMENT_NODE): {
-          currentNode = node;
-          return START_TAG;
-        }
-        case (Node.ENTITY_NODE): {
-          throw new IllegalArgumentException("ENTITY_NODE");
-        }
-        case (Node.ENTITY_REFERENCE_NODE): {
-          throw new IllegalArgumentException("ENTITY_REFERENCE_NODE");
-        }
-        case (Node.NOTATION_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.PROCESSING_INSTRUCTION_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.TEXT_NODE): {
-          if (isWhitespace(node.getNodeValue())) {
-            // Skip whitespaces
-            return navigateToNextNode(node);
-          } else {
-            currentNode = node;
-            return TEXT;
-          }
-        }
-        default: {
-          throw new RuntimeException(
-              "Robolectric -> Unknown node type: " +
-                  node.getNodeType() + ".");
-        }
-      }
-    }
+    abstract int nativeNext() throws XmlPullParserException;
 
     /**
-     * Navigate to the next node after a node and all of his
-     * children have been explored.
-     *
-     * <p>If the node has unexplored siblings navigate to the
-     * next sibling. Otherwise return to its parent.
-     *
-     * @param node the node which was just explored.
-     * @return {@link XmlPullParserException#START_TAG} if the given
-     *         node has siblings, {@link XmlPullParserException#END_TAG}
-     *         if the node has no unexplored siblings or
-     *         {@link XmlPullParserException#END_DOCUMENT} if the explored
-     *         was the root document.
-     * @throws XmlPullParserException if the parser fails to
-     *                                parse the next node.
+     * @return The attribute's value as written, or null if the current element doesn't have it.
      */
-    int navigateToNextNode(Node node)
-        throws XmlPullParserException {
-      Node nextNode = node.getNextSibling();
-      if (nextNode != null) {
-        // Move to the next siblings
-        return processNextNodeType(nextNode);
-      } else {
-        // Goes back to the parent
-        if (document.getDocumentElement().equals(node)) {
-          currentNode = null;
-          return END_DOCUMENT;
-        }
-        currentNode = node.getParentNode();
-        return END_TAG;
-      }
-    }
+    abstract String getAttribute(String namespace, String name);
 
     @Override
     public void require(int type, String namespace, String name)
@@ -838,4 +606,412 @@ public class ResourceParser {
       return resourceId == null ? 0 : resourceId;
     }
   }
+
+  /**
+   * Concrete implementation of the {@link XmlResourceParser}.
+   *
+   * <p>Clients expects a pull parser while the resource loader
+   * initialise this object with a {@link Document}.
+   * This implementation navigates the dom and emulates a pull
+   * parser by raising all the opportune events.
+   *
+   * <p>Note that the original android implementation is based on
+   * a set of native methods calls. Here those methods are
+   * re-implemented in java when possible.
+   */
+  public static class XmlResourceParserImpl extends BaseXmlResourceParser {
+
+    private final Document document;
+
+    private Node currentNode;
+
+    public XmlResourceParserImpl(Document document, String fileName, String packageName,
+        String applicationPackageName, ResourceIndex resourceIndex) {
+      super(fileName, packageName, applicationPackageName, resourceIndex);
+      this.document = document;
+    }
+
+    @Override
+    public String getText() {
+      if (currentNode == null) {
+        return "";
+      }
+      return currentNode.getTextContent();
+    }
+
+    @Override
+    public String getNamespace() {
+      String namespace = currentNode != null ? currentNode.getNamespaceURI() : null;
+      if (namespace == null) {
+        return "";
+      }
+
+      return maybeReplaceNamespace(namespace);
+    }
+
+    @Override
+    public String getName() {
+      if (currentNode == null) {
+        return "";
+      }
+      return currentNode.getNodeName();
+    }
+
+    Node getAttributeAt(int index) {
+      if (currentNode == null) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      NamedNodeMap map = currentNode.getAttributes();
+      if (index >= map.getLength()) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      return map.item(index);
+    }
+
+    @Override
+    String getAttribute(String namespace, String name) {
+      if (currentNode == null) {
+        return null;
+      }
+
+      Element element = (Element) currentNode;
+      if (element.hasAttributeNS(namespace, name)) {
+        return element.getAttributeNS(namespace, name);
+      } else if (applicationNamespace.equals(namespace)
+          && element.hasAttributeNS(Attribute.RES_AUTO_NS_URI, name)) {
+        return element.getAttributeNS(Attribute.RES_AUTO_NS_URI, name);
+      }
+
+      return null;
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+      Node attr = getAttributeAt(index);
+      if (attr == null) {
+        return null;
+      }
+      return maybeReplaceNamespace(attr.getNamespaceURI());
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+      try {
+        Node attr = getAttributeAt(index);
+        String namespace = maybeReplaceNamespace(attr.getNamespaceURI());
+        return (Attribute.ANDROID_RES_NS_PREFIX + packageName).equals(namespace) ?
+          attr.getLocalName() :
+          attr.getNodeName();
+      } catch (IndexOutOfBoundsException ex) {
+        return null;
+      }
+    }
+
+    @Override
+    public int getAttributeCount() {
+      if (currentNode == null) {
+        return -1;
+      }
+      return currentNode.getAttributes().getLength();
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+      return qualify(getAttributeAt(index).getNodeValue());
+    }
+
+    @Override
+    int nativeNext() throws XmlPullParserException {
+      switch (mEventType) {
+        case (CDSECT): {
+          throw new IllegalArgumentException(
+              "CDSECT is not handled by Android");
+        }
+        case (COMMENT): {
+          throw new IllegalArgumentException(
+              "COMMENT is not handled by Android");
+        }
+        case (DOCDECL): {
+          throw new IllegalArgumentException(
+              "DOCDECL is not handled by Android");
+        }
+        case (ENTITY_REF): {
+          throw new IllegalArgumentException(
+              "ENTITY_REF is not handled by Android");
+        }
+        case (END_DOCUMENT): {
+          // The end document event should have been filtered
+          // from the invoker. This should never happen.
+          throw new IllegalArgumentException(
+              "END_DOCUMENT should not be found here.");
+        }
+        case (END_TAG): {
+          return navigateToNextNode(currentNode);
+        }
+        case (IGNORABLE_WHITESPACE): {
+          throw new IllegalArgumentException(
+              "IGNORABLE_WHITESPACE");
+        }
+        case (PROCESSING_INSTRUCTION): {
+          throw new IllegalArgumentException(
+              "PROCESSING_INSTRUCTION");
+        }
+        case (START_DOCUMENT): {
+          currentNode = document.getDocumentElement();
+          return START_TAG;
+        }
+        case (START_TAG): {
+          if (currentNode.hasChildNodes()) {
+            // The node has children, navigate down
+            return processNextNodeType(
+                currentNode.getFirstChild());
+          } else {
+            // The node has no children
+            return END_TAG;
+          }
+        }
+        case (TEXT): {
+          return navigateToNextNode(currentNode);
+        }
+        default: {
+          // This can only happen if mEventType is
+          // assigned with an unmapped integer.
+          throw new RuntimeException(
+              "Robolectric-> Uknown XML event type: " + mEventType);
+        }
+      }
+
+    }
+
+    /*protected*/ int processNextNodeType(Node node)
+        throws XmlPullParserException {
+      switch (node.getNodeType()) {
+        case (Node.ATTRIBUTE_NODE): {
+          throw new IllegalArgumentException("ATTRIBUTE_NODE");
+        }
+        case (Node.CDATA_SECTION_NODE): {
+          return navigateToNextNode(node);
+        }
+        case (Node.COMMENT_NODE): {
+          return navigateToNextNode(node);
+        }
+        case (Node.DOCUMENT_FRAGMENT_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_FRAGMENT_NODE");
+        }
+        case (Node.DOCUMENT_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_NODE");
+        }
+        case (Node.DOCUMENT_TYPE_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
+        }
+        case (Node.ELEMENT_NODE): {
+          currentNode = node;
+          return START_TAG;
+        }
+        case (Node.ENTITY_NODE): {
+          throw new IllegalArgumentException("ENTITY_NODE");
+        }
+        case (Node.ENTITY_REFERENCE_NODE): {
+          throw new IllegalArgumentException("ENTITY_REFERENCE_NODE");
+        }
+        case (Node.NOTATION_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
+        }
+        case (Node.PROCESSING_INSTRUCTION_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
+        }
+        case (Node.TEXT_NODE): {
+          if (isWhitespace(node.getNodeValue())) {
+            // Skip whitespaces
+            return navigateToNextNode(node);
+          } else {
+            currentNode = node;
+            return TEXT;
+          }
+        }
+        default: {
+          throw new RuntimeException(
+              "Robolectric -> Unknown node type: " +
+                  node.getNodeType() + ".");
+        }
+      }
+    }
+
+    /**
+     * Navigate to the next node after a node and all of his
+     * children have been explored.
+     *
+     * <p>If the node has unexplored siblings navigate to the
+     * next sibling. Otherwise return to its parent.
+     *
+     * @param node the node which was just explored.
+     * @return {@link XmlPullParserException#START_TAG} if the given
+     *         node has siblings, {@link XmlPullParserException#END_TAG}
+     *         if the node has no unexplored siblings or
+     *         {@link XmlPullParserException#END_DOCUMENT} if the explored
+     *         was the root document.
+     * @throws XmlPullParserException if the parser fails to
+     *                                parse the next node.
+     */
+    int navigateToNextNode(Node node)
+        throws XmlPullParserException {
+      Node nextNode = node.getNextSibling();
+      if (nextNode != null) {
+        // Move to the next siblings
+        return processNextNodeType(nextNode);
+      } else {
+        // Goes back to the parent
+        if (document.getDocumentElement().equals(node)) {
+          currentNode = null;
+          return END_DOCUMENT;
+        }
+        currentNode = node.getParentNode();
+        return END_TAG;
+      }
+    }
+  }
+
+  /**
+   * An {@link XmlResourceParser} over a {@link CompiledXml}. It reports the same events and attributes as
+   * {@link XmlResourceParserImpl}, but moving from event to event and reading names and values doesn't allocate.
+   */
+  public static class CompiledXmlResourceParser extends BaseXmlResourceParser {
+    private final CompiledXml compiledXml;
+
+    private int event = -1;
+    private int element = -1;
+
+    public CompiledXmlResourceParser(CompiledXml compiledXml, String fileName, String packageName,
+        String applicationPackageName, ResourceIndex resourceIndex) {
+      super(fileName, packageName, applicationPackageName, resourceIndex);
+      this.compiledXml = compiledXml;
+    }
+
+    @Override
+    int nativeNext() throws XmlPullParserException {
+      int eventCount = compiledXml.getEventCount();
+      do {
+        event++;
+      } while (event < eventCount && compiledXml.getEventType(event) == CompiledXml.SKIPPED_TEXT);
+
+      if (event >= eventCount) {
+        element = -1;
+        return END_DOCUMENT;
+      }
+      int eventType = compiledXml.getEventType(event);
+      element = eventType == TEXT ? -1 : compiledXml.getElement(event);
+      return eventType;
+    }
+
+    private boolean isOnText() {
+      return element == -1 && mEventType == TEXT;
+    }
+
+    @Override
+    public String getText() {
+      if (isOnText()) {
+        return compiledXml.getText(event);
+      }
+      return element == -1 ? "" : compiledXml.getElementText(element);
+    }
+
+    @Override
+    public String getNamespace() {
+      String namespace = element != -1 ? compiledXml.getElementNamespace(element) : null;
+      if (namespace == null) {
+        return "";
+      }
+
+      return maybeReplaceNamespace(namespace);
+    }
+
+    @Override
+    public String getName() {
+      if (isOnText()) {
+        return "#text";
+      }
+      return element == -1 ? "" : compiledXml.getElementName(element);
+    }
+
+    private int getAttributeAt(int index) {
+      if (element == -1) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      return compiledXml.getAttribute(element, index);
+    }
+
+    @Override
+    String getAttribute(String namespace, String name) {
+      if (element == -1) {
+        return null;
+      }
+
+      int attribute = compiledXml.findAttribute(element, namespace, name);
+      if (attribute == -1 && applicationNamespace.equals(namespace)) {
+        attribute = compiledXml.findAttribute(element, Attribute.RES_AUTO_NS_URI, name);
+      }
+      return attribute == -1 ? null : compiledXml.getAttributeValue(attribute);
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+      return maybeReplaceNamespace(compiledXml.getAttributeNamespace(getAttributeAt(index)));
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+      try {
+        int attribute = getAttributeAt(index);
+        String namespace = maybeReplaceNamespace(compiledXml.getAttributeNamespace(attribute));
+        return (Attribute.ANDROID_RES_NS_PREFIX + packageName).equals(namespace) ?
+          compiledXml.getAttributeLocalName(attribute) :
+          compiledXml.getAttributeName(attribute);
+      } catch (IndexOutOfBoundsException ex) {
+        return null;
+      }
+    }
+
+    @Override
+    public int getAttributeCount() {
+      if (element == -1) {
+        return -1;
+      }
+      return compiledXml.getAttributeCount(element);
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+      int attribute = getAttributeAt(index);
+      String qualifiedValue = compiledXml.qualifiedAttributeValues[attribute];
+      if (qualifiedValue == null) {
+        qualifiedValue = qualify(compiledXml.getAttributeValue(attribute));
+        compiledXml.qualifiedAttributeValues[attribute] = qualifiedValue;
+      }
+      return qualifiedValue;
+    }
+
+    @Override
+    public int getAttributeNameResource(int index) {
+      int attribute;
+      try {
+        attribute = getAttributeAt(index);
+      } catch (IndexOutOfBoundsException e) {
+        return super.getAttributeNameResource(index);
+      }
+
+      CompiledXml.AttributeResources attributeResources = compiledXml.attributeResources;
+      if (attributeResources == null || attributeResources.resourceIndex != resourceIndex
+          || !attributeResources.applicationPackageName.equals(applicationPackageName)) {
+        attributeResources = new CompiledXml.AttributeResources(resourceIndex, applicationPackageName,
+            compiledXml.qualifiedAttributeValues.length);
+        compiledXml.attributeResources = attributeResources;
+      }
+      int resourceId = attributeResources.resourceIds[attribute];
+      if (resourceId == CompiledXml.AttributeResources.UNRESOLVED) {
+        resourceId = super.getAttributeNameResource(index);
+        attributeResources.resourceIds[attribute] = resourceId;
+      }
+      return resourceId;
+    }
+  }
 }
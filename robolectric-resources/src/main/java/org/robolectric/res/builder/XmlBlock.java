@@ -1,24 +1,58 @@
 package org.robolectric.res.builder;
 
+import org.robolectric.res.XmlLoader;
 import org.w3c.dom.Document;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+
 /**
  * An XML block is a parsed representation of a resource XML file. Similar in nature
  * to Android's XmlBlock class.
+ *
+ * <p>Blocks created from the bytes of a file hold on to them and only build the document the first time it's needed,
+ * since most resource files are never inflated. They can also be compiled into a {@link CompiledXml}, which is
+ * smaller than a document and quicker to parse.</p>
  */
 public class XmlBlock {
-  private final Document document;
   private final String filename;
   private final String packageName;
+  private final byte[] xml;
+  private Document document;
+  private CompiledXml compiledXml;
 
   public static XmlBlock create(Document document, String file, String packageName) {
-    return new XmlBlock(document, file, packageName);
+    return new XmlBlock(document, null, file, packageName);
+  }
+
+  /**
+   * @param xml The contents of the file, which mustn't be changed afterwards.
+   */
+  public static XmlBlock create(byte[] xml, String file, String packageName) {
+    return new XmlBlock(null, xml, file, packageName);
   }
 
-  public Document getDocument() {
+  public synchronized Document getDocument() {
+    if (document == null) {
+      document = XmlLoader.parse(new ByteArrayInputStream(xml));
+    }
     return document;
   }
 
+  /**
+   * @return The compiled file, or null if the block was created from a document.
+   */
+  public synchronized CompiledXml getCompiledXml() {
+    if (compiledXml == null && xml != null) {
+      try {
+        compiledXml = CompiledXml.compile(xml);
+      } catch (XMLStreamException e) {
+        throw new RuntimeException("couldn't parse " + filename, e);
+      }
+    }
+    return compiledXml;
+  }
+
   public String getFilename() {
     return filename;
   }
@@ -27,8 +61,9 @@ public class XmlBlock {
     return packageName;
   }
 
-  private XmlBlock(Document document, String filename, String packageName) {
+  private XmlBlock(Document document, byte[] xml, String filename, String packageName) {
     this.document = document;
+    this.xml = xml;
     this.filename = filename;
     this.packageName = packageName;
   }
@@ -0,0 +1,341 @@
+package org.robolectric.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only, memory-mapped view of a jar, shared by everything that reads the same file.
+ *
+ * <p>The zip central directory is parsed once into a sorted index of entry names, and entry data is read straight
+ * from the mapped file, inflating deflated entries with pooled {@link Inflater}s. This lets class loading and
+ * resource loading share a single open copy of large jars such as android-all.</p>
+ */
+public class MappedJar {
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+  private static final int END_SIZE = 22;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  private static final ConcurrentMap<String, MappedJar> openJars = new ConcurrentHashMap<>();
+  private static final Queue<InflaterHolder> inflaters = new ConcurrentLinkedQueue<>();
+
+  private final File file;
+  private final long length;
+  private final long lastModified;
+  private final MappedByteBuffer buffer;
+  private final String[] names;
+  private final int[] localHeaderOffsets;
+  private final int[] compressedSizes;
+  private final int[] uncompressedSizes;
+  private final byte[] methods;
+
+  /**
+   * Returns the shared view of a jar, mapping and indexing it on first use. A jar that has been rewritten since it
+   * was last opened is mapped again, and the view of its old contents is dropped from the cache, so it can be
+   * reclaimed once nothing reads it any more.
+   *
+   * @param file The jar file.
+   * @return The mapped jar.
+   * @throws IOException If the file can't be read, isn't a zip file, or is too large to map.
+   */
+  public static MappedJar open(File file) throws IOException {
+    File absoluteFile = file.getAbsoluteFile();
+    String path = absoluteFile.getPath();
+    long length = absoluteFile.length();
+    long lastModified = absoluteFile.lastModified();
+    MappedJar jar = openJars.get(path);
+    if (jar == null || !jar.isVersion(length, lastModified)) {
+      synchronized (openJars) {
+        jar = openJars.get(path);
+        if (jar == null || !jar.isVersion(length, lastModified)) {
+          jar = new MappedJar(absoluteFile, length, lastModified);
+          openJars.put(path, jar);
+        }
+      }
+    }
+    return jar;
+  }
+
+  /**
+   * @return True if the cache holds a jar, i.e. {@link #open} would return it while its file is unchanged.
+   */
+  static boolean isCached(MappedJar jar) {
+    return openJars.get(jar.file.getPath()) == jar;
+  }
+
+  private MappedJar(File file, long length, long lastModified) throws IOException {
+    this.file = file;
+    this.length = length;
+    this.lastModified = lastModified;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+         FileChannel channel = randomAccessFile.getChannel()) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(file + " is too large to map");
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    ByteBuffer buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int endOffset = findEndOfCentralDirectory(buf);
+    long entryCount = buf.getShort(endOffset + 10) & 0xffff;
+    long centralDirectoryOffset = buf.getInt(endOffset + 16) & 0xffffffffL;
+    if (entryCount == 0xffff || centralDirectoryOffset == 0xffffffffL) {
+      int locatorOffset = endOffset - 20;
+      if (locatorOffset >= 0 && buf.getInt(locatorOffset) == ZIP64_LOCATOR_SIGNATURE) {
+        int zip64EndOffset = checkedOffset(buf.getLong(locatorOffset + 8));
+        if (buf.getInt(zip64EndOffset) != ZIP64_END_SIGNATURE) {
+          throw new IOException(file + ": bad zip64 end of central directory");
+        }
+        entryCount = buf.getLong(zip64EndOffset + 32);
+        centralDirectoryOffset = buf.getLong(zip64EndOffset + 48);
+      }
+    }
+
+    int count = checkedOffset(entryCount);
+    Integer[] order = new Integer[count];
+    String[] unsortedNames = new String[count];
+    int[] unsortedLocalHeaderOffsets = new int[count];
+    int[] unsortedCompressedSizes = new int[count];
+    int[] unsortedUncompressedSizes = new int[count];
+    byte[] unsortedMethods = new byte[count];
+
+    int position = checkedOffset(centralDirectoryOffset);
+    for (int i = 0; i < count; i++) {
+      if (buf.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+        throw new IOException(file + ": bad central directory entry");
+      }
+      int method = buf.getShort(position + 10) & 0xffff;
+      long compressedSize = buf.getInt(position + 20) & 0xffffffffL;
+      long uncompressedSize = buf.getInt(position + 24) & 0xffffffffL;
+      int nameLength = buf.getShort(position + 28) & 0xffff;
+      int extraLength = buf.getShort(position + 30) & 0xffff;
+      int commentLength = buf.getShort(position + 32) & 0xffff;
+      long localHeaderOffset = buf.getInt(position + 42) & 0xffffffffL;
+
+      byte[] nameBytes = new byte[nameLength];
+      ByteBuffer nameBuf = buffer.duplicate();
+      nameBuf.position(position + CENTRAL_HEADER_SIZE);
+      nameBuf.get(nameBytes);
+
+      if (uncompressedSize == 0xffffffffL || compressedSize == 0xffffffffL || localHeaderOffset == 0xffffffffL) {
+        int extra = position + CENTRAL_HEADER_SIZE + nameLength;
+        int extraEnd = extra + extraLength;
+        while (extra + 4 <= extraEnd) {
+          int id = buf.getShort(extra) & 0xffff;
+          int size = buf.getShort(extra + 2) & 0xffff;
+          if (id == ZIP64_EXTRA_ID) {
+            int field = extra + 4;
+            if (uncompressedSize == 0xffffffffL) {
+              uncompressedSize = buf.getLong(field);
+              field += 8;
+            }
+            if (compressedSize == 0xffffffffL) {
+              compressedSize = buf.getLong(field);
+              field += 8;
+            }
+            if (localHeaderOffset == 0xffffffffL) {
+              localHeaderOffset = buf.getLong(field);
+            }
+            break;
+          }
+          extra += 4 + size;
+        }
+      }
+
+      order[i] = i;
+      unsortedNames[i] = new String(nameBytes, StandardCharsets.UTF_8);
+      unsortedMethods[i] = (byte) method;
+      unsortedCompressedSizes[i] = checkedOffset(compressedSize);
+      unsortedUncompressedSizes[i] = checkedOffset(uncompressedSize);
+      unsortedLocalHeaderOffsets[i] = checkedOffset(localHeaderOffset);
+
+      position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+
+    final String[] namesToSort = unsortedNames;
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return namesToSort[a].compareTo(namesToSort[b]);
+      }
+    });
+
+    names = new String[count];
+    localHeaderOffsets = new int[count];
+    compressedSizes = new int[count];
+    uncompressedSizes = new int[count];
+    methods = new byte[count];
+    for (int i = 0; i < count; i++) {
+      int from = order[i];
+      names[i] = unsortedNames[from];
+      localHeaderOffsets[i] = unsortedLocalHeaderOffsets[from];
+      compressedSizes[i] = unsortedCompressedSizes[from];
+      uncompressedSizes[i] = unsortedUncompressedSizes[from];
+      methods[i] = unsortedMethods[from];
+    }
+  }
+
+  private boolean isVersion(long length, long lastModified) {
+    return this.length == length && this.lastModified == lastModified;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  public boolean contains(String name) {
+    return Arrays.binarySearch(names, name) >= 0;
+  }
+
+  /**
+   * Lists entry names in sorted order.
+   *
+   * @param fromExclusive Names must sort after this.
+   * @param toExclusive   Names must sort before this.
+   * @return Entry names strictly between the bounds.
+   */
+  public List<String> getNamesBetween(String fromExclusive, String toExclusive) {
+    int start = Arrays.binarySearch(names, fromExclusive);
+    start = start >= 0 ? start + 1 : -start - 1;
+    List<String> result = new ArrayList<>();
+    for (int i = start; i < names.length && names[i].compareTo(toExclusive) < 0; i++) {
+      result.add(names[i]);
+    }
+    return result;
+  }
+
+  /**
+   * @param name The entry name.
+   * @return The entry's uncompressed contents, or null if there is no such entry.
+   * @throws IOException If the entry is corrupt or uses an unsupported compression method.
+   */
+  public byte[] getBytes(String name) throws IOException {
+    int index = Arrays.binarySearch(names, name);
+    if (index < 0) {
+      return null;
+    }
+
+    int localHeaderOffset = localHeaderOffsets[index];
+    if (buffer.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+      throw new IOException(file + ": bad local header for " + name);
+    }
+    int nameLength = buffer.getShort(localHeaderOffset + 26) & 0xffff;
+    int extraLength = buffer.getShort(localHeaderOffset + 28) & 0xffff;
+    int dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+    ByteBuffer data = buffer.duplicate();
+    data.position(dataOffset);
+    byte[] bytes = new byte[uncompressedSizes[index]];
+    switch (methods[index] & 0xff) {
+      case STORED:
+        data.get(bytes);
+        return bytes;
+
+      case DEFLATED:
+        inflate(data, compressedSizes[index], bytes, name);
+        return bytes;
+
+      default:
+        throw new IOException(file + ": unsupported compression method for " + name);
+    }
+  }
+
+  /**
+   * @param name The entry name.
+   * @return A stream over the entry's uncompressed contents, or null if there is no such entry.
+   * @throws IOException If the entry can't be read.
+   */
+  public InputStream getInputStream(String name) throws IOException {
+    byte[] bytes = getBytes(name);
+    return bytes == null ? null : new ByteArrayInputStream(bytes);
+  }
+
+  @Override
+  public String toString() {
+    return "MappedJar{" + file + ", " + names.length + " entries}";
+  }
+
+  private void inflate(ByteBuffer data, int compressedSize, byte[] out, String name) throws IOException {
+    InflaterHolder holder = inflaters.poll();
+    if (holder == null) {
+      holder = new InflaterHolder();
+    }
+
+    try {
+      // Inflater can't read from a ByteBuffer before Java 11, so copy the compressed bytes into a reusable array.
+      if (holder.input.length < compressedSize + 1) {
+        holder.input = new byte[Math.max(compressedSize + 1, holder.input.length * 2)];
+      }
+      data.get(holder.input, 0, compressedSize);
+      holder.input[compressedSize] = 0; // nowrap inflaters need an extra dummy byte
+
+      holder.inflater.reset();
+      holder.inflater.setInput(holder.input, 0, compressedSize + 1);
+      int total = 0;
+      while (total < out.length) {
+        int n = holder.inflater.inflate(out, total, out.length - total);
+        if (n == 0 && (holder.inflater.finished() || holder.inflater.needsInput() || holder.inflater.needsDictionary())) {
+          throw new IOException(file + ": truncated entry " + name);
+        }
+        total += n;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(file + ": corrupt entry " + name, e);
+    } finally {
+      inflaters.offer(holder);
+    }
+  }
+
+  private int findEndOfCentralDirectory(ByteBuffer buf) throws IOException {
+    int limit = buf.limit();
+    int lowest = Math.max(0, limit - END_SIZE - 0xffff);
+    for (int i = limit - END_SIZE; i >= lowest; i--) {
+      if (buf.getInt(i) == END_SIGNATURE) {
+        return i;
+      }
+    }
+    throw new IOException(file + " is not a zip file");
+  }
+
+  private int checkedOffset(long value) throws IOException {
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new IOException(file + " is too large to map");
+    }
+    return (int) value;
+  }
+
+  private static class InflaterHolder {
+    final Inflater inflater = new Inflater(true);
+    byte[] input = new byte[8192];
+  }
+}
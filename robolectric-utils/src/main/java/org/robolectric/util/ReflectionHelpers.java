@@ -1,15 +1,33 @@
 package org.robolectric.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Collection of helper methods for calling methods and accessing fields reflectively.
+ *
+ * <p>Resolved methods and fields are cached per class, so repeated calls don't search the class hierarchy or
+ * go through {@link Method#invoke}.</p>
  */
 public class ReflectionHelpers {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final Object[] NO_VALUES = new Object[0];
+  private static final Class<?>[] NO_CLASSES = new Class<?>[0];
+
+  private static final ClassValue<MemberCache> MEMBER_CACHES = new ClassValue<MemberCache>() {
+    @Override
+    protected MemberCache computeValue(Class<?> type) {
+      return new MemberCache(type);
+    }
+  };
 
   /**
    * Reflectively get the value of a field.
@@ -22,14 +40,7 @@ public class ReflectionHelpers {
   @SuppressWarnings("unchecked")
   public static <R> R getField(final Object object, final String fieldName) {
     try {
-      return traverseClassHierarchy(object.getClass(), NoSuchFieldException.class, new InsideTraversal<R>() {
-        @Override
-        public R run(Class<?> traversalClass) throws Exception {
-          Field field = traversalClass.getDeclaredField(fieldName);
-          field.setAccessible(true);
-          return (R) field.get(object);
-        }
-      });
+      return (R) MEMBER_CACHES.get(object.getClass()).getField(fieldName).get(object);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -44,15 +55,7 @@ public class ReflectionHelpers {
    */
   public static void setField(final Object object, final String fieldName, final Object fieldNewValue) {
     try {
-      traverseClassHierarchy(object.getClass(), NoSuchFieldException.class, new InsideTraversal<Void>() {
-        @Override
-        public Void run(Class<?> traversalClass) throws Exception {
-          Field field = traversalClass.getDeclaredField(fieldName);
-          field.setAccessible(true);
-          field.set(object, fieldNewValue);
-          return null;
-        }
-      });
+      MEMBER_CACHES.get(object.getClass()).getField(fieldName).set(object, fieldNewValue);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -149,30 +152,22 @@ public class ReflectionHelpers {
    * @return The return value of the method.
    */
   public static <R> R callInstanceMethod(final Object instance, final String methodName, ClassParameter<?>... classParameters) {
-    try {
-      final Class<?>[] classes = ClassParameter.getClasses(classParameters);
-      final Object[] values = ClassParameter.getValues(classParameters);
+    MethodHandle methodHandle = MEMBER_CACHES.get(instance.getClass())
+        .getSpreadMethod(methodName, ClassParameter.getClasses(classParameters), true);
+    return invoke(methodHandle, instance, ClassParameter.getValues(classParameters));
+  }
 
-      return traverseClassHierarchy(instance.getClass(), NoSuchMethodException.class, new InsideTraversal<R>() {
-        @Override
-        @SuppressWarnings("unchecked")
-        public R run(Class<?> traversalClass) throws Exception {
-          Method declaredMethod = traversalClass.getDeclaredMethod(methodName, classes);
-          declaredMethod.setAccessible(true);
-          return (R) declaredMethod.invoke(instance, values);
-        }
-      });
-    } catch (InvocationTargetException e) {
-      if (e.getTargetException() instanceof RuntimeException) {
-        throw (RuntimeException) e.getTargetException();
-      }
-      if (e.getTargetException() instanceof Error) {
-        throw (Error) e.getTargetException();
-      }
-      throw new RuntimeException(e.getTargetException());
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+  /**
+   * Reflectively call an instance method with no parameters on an object.
+   *
+   * @param instance Target object.
+   * @param methodName The method name to call.
+   * @param <R> The return type.
+   * @return The return value of the method.
+   */
+  public static <R> R callInstanceMethod(final Object instance, final String methodName) {
+    MethodHandle methodHandle = MEMBER_CACHES.get(instance.getClass()).getSpreadMethod(methodName, NO_CLASSES, true);
+    return invoke(methodHandle, instance, NO_VALUES);
   }
 
   /**
@@ -186,24 +181,8 @@ public class ReflectionHelpers {
    * @return The return value of the method.
    */
   public static <R> R callInstanceMethod(Class<?> cl, final Object instance, final String methodName, ClassParameter<?>... classParameters) {
-    try {
-      final Class<?>[] classes = ClassParameter.getClasses(classParameters);
-      final Object[] values = ClassParameter.getValues(classParameters);
-
-      Method declaredMethod = cl.getDeclaredMethod(methodName, classes);
-      declaredMethod.setAccessible(true);
-      return (R) declaredMethod.invoke(instance, values);
-    } catch (InvocationTargetException e) {
-      if (e.getTargetException() instanceof RuntimeException) {
-        throw (RuntimeException) e.getTargetException();
-      }
-      if (e.getTargetException() instanceof Error) {
-        throw (Error) e.getTargetException();
-      }
-      throw new RuntimeException(e.getTargetException());
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    MethodHandle methodHandle = MEMBER_CACHES.get(cl).getSpreadMethod(methodName, ClassParameter.getClasses(classParameters), false);
+    return invoke(methodHandle, instance, ClassParameter.getValues(classParameters));
   }
 
   /**
@@ -215,26 +194,48 @@ public class ReflectionHelpers {
    * @param <R> The return type.
    * @return The return value of the method.
    */
-  @SuppressWarnings("unchecked")
   public static <R> R callStaticMethod(Class<?> clazz, String methodName, ClassParameter<?>... classParameters) {
-    try {
-      Class<?>[] classes = ClassParameter.getClasses(classParameters);
-      Object[] values = ClassParameter.getValues(classParameters);
+    MethodHandle methodHandle = MEMBER_CACHES.get(clazz).getSpreadMethod(methodName, ClassParameter.getClasses(classParameters), false);
+    return invoke(methodHandle, null, ClassParameter.getValues(classParameters));
+  }
 
-      Method method = clazz.getDeclaredMethod(methodName, classes);
-      method.setAccessible(true);
-      return (R) method.invoke(null, values);
-    } catch (InvocationTargetException e) {
-      if (e.getTargetException() instanceof RuntimeException) {
-        throw (RuntimeException) e.getTargetException();
-      }
-      if (e.getTargetException() instanceof Error) {
-        throw (Error) e.getTargetException();
-      }
-      throw new RuntimeException(e.getTargetException());
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+  /**
+   * Reflectively call a static method with no parameters on a class.
+   *
+   * @param clazz Target class.
+   * @param methodName The method name to call.
+   * @param <R> The return type.
+   * @return The return value of the method.
+   */
+  public static <R> R callStaticMethod(Class<?> clazz, String methodName) {
+    MethodHandle methodHandle = MEMBER_CACHES.get(clazz).getSpreadMethod(methodName, NO_CLASSES, false);
+    return invoke(methodHandle, null, NO_VALUES);
+  }
+
+  /**
+   * Look up an instance method, searching superclasses, and return a method handle for it with its exact type, e.g.
+   * {@code (View, int)boolean}. Handles are cached, but callers on hot paths should keep the handle and call
+   * {@link MethodHandle#invokeExact} to avoid boxing.
+   *
+   * @param clazz The class to start searching from.
+   * @param methodName The method name.
+   * @param parameterTypes The method's parameter types.
+   * @return A method handle that takes the receiver as its first argument.
+   */
+  public static MethodHandle getInstanceMethodHandle(Class<?> clazz, String methodName, Class<?>... parameterTypes) {
+    return MEMBER_CACHES.get(clazz).getMethod(methodName, parameterTypes, true).exact;
+  }
+
+  /**
+   * Look up a static method declared by a class and return a method handle for it with its exact type.
+   *
+   * @param clazz The class declaring the method.
+   * @param methodName The method name.
+   * @param parameterTypes The method's parameter types.
+   * @return A method handle for the method.
+   */
+  public static MethodHandle getStaticMethodHandle(Class<?> clazz, String methodName, Class<?>... parameterTypes) {
+    return MEMBER_CACHES.get(clazz).getMethod(methodName, parameterTypes, false).exact;
   }
 
   /**
@@ -280,8 +281,8 @@ public class ReflectionHelpers {
       final Class<?>[] classes = ClassParameter.getClasses(classParameters);
       final Object[] values = ClassParameter.getValues(classParameters);
 
-      Constructor<? extends R> constructor = clazz.getDeclaredConstructor(classes);
-      constructor.setAccessible(true);
+      @SuppressWarnings("unchecked")
+      Constructor<? extends R> constructor = (Constructor<? extends R>) MEMBER_CACHES.get(clazz).getConstructor(classes);
       return constructor.newInstance(values);
     } catch (InstantiationException e) {
       throw new RuntimeException("error instantiating " + clazz.getName(), e);
@@ -298,20 +299,14 @@ public class ReflectionHelpers {
     }
   }
 
-  private static <R, E extends Exception> R traverseClassHierarchy(Class<?> targetClass, Class<? extends E> exceptionClass, InsideTraversal<R> insideTraversal) throws Exception {
-    Class<?> hierarchyTraversalClass = targetClass;
-    while (true) {
-      try {
-        return insideTraversal.run(hierarchyTraversalClass);
-      } catch (Exception e) {
-        if (!exceptionClass.isInstance(e)) {
-          throw e;
-        }
-        hierarchyTraversalClass = hierarchyTraversalClass.getSuperclass();
-        if (hierarchyTraversalClass == null) {
-          throw new RuntimeException(e);
-        }
-      }
+  @SuppressWarnings("unchecked")
+  private static <R> R invoke(MethodHandle spreadMethodHandle, Object instance, Object[] values) {
+    try {
+      return (R) (Object) spreadMethodHandle.invokeExact(instance, values);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
     }
   }
 
@@ -323,8 +318,125 @@ public class ReflectionHelpers {
     modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
   }
 
-  private interface InsideTraversal<R> {
-    R run(Class<?> traversalClass) throws Exception;
+  /**
+   * Methods and fields of a class, resolved once and made accessible.
+   */
+  private static class MemberCache {
+    private final Class<?> type;
+    private final ConcurrentMap<MethodKey, ResolvedMethod> methods = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MethodKey, ResolvedMethod> declaredMethods = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Field> fields = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MethodKey, Constructor<?>> constructors = new ConcurrentHashMap<>();
+
+    MemberCache(Class<?> type) {
+      this.type = type;
+    }
+
+    MethodHandle getSpreadMethod(String name, Class<?>[] parameterTypes, boolean searchSuperclasses) {
+      return getMethod(name, parameterTypes, searchSuperclasses).spread;
+    }
+
+    ResolvedMethod getMethod(String name, Class<?>[] parameterTypes, boolean searchSuperclasses) {
+      ConcurrentMap<MethodKey, ResolvedMethod> cache = searchSuperclasses ? methods : declaredMethods;
+      MethodKey key = new MethodKey(name, parameterTypes);
+      ResolvedMethod method = cache.get(key);
+      if (method == null) {
+        try {
+          method = new ResolvedMethod(findMethod(name, parameterTypes, searchSuperclasses));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+          throw new RuntimeException(e);
+        }
+        cache.putIfAbsent(new MethodKey(name, parameterTypes.clone()), method);
+      }
+      return method;
+    }
+
+    Field getField(String name) throws NoSuchFieldException {
+      Field field = fields.get(name);
+      if (field == null) {
+        field = findField(name);
+        field.setAccessible(true);
+        fields.putIfAbsent(name, field);
+      }
+      return field;
+    }
+
+    Constructor<?> getConstructor(Class<?>[] parameterTypes) throws NoSuchMethodException {
+      MethodKey key = new MethodKey("<init>", parameterTypes);
+      Constructor<?> constructor = constructors.get(key);
+      if (constructor == null) {
+        constructor = type.getDeclaredConstructor(parameterTypes);
+        constructor.setAccessible(true);
+        constructors.putIfAbsent(new MethodKey("<init>", parameterTypes.clone()), constructor);
+      }
+      return constructor;
+    }
+
+    private Method findMethod(String name, Class<?>[] parameterTypes, boolean searchSuperclasses) throws NoSuchMethodException {
+      NoSuchMethodException firstException = null;
+      for (Class<?> c = type; c != null; c = searchSuperclasses ? c.getSuperclass() : null) {
+        try {
+          return c.getDeclaredMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+          if (firstException == null) firstException = e;
+        }
+      }
+      throw firstException;
+    }
+
+    private Field findField(String name) throws NoSuchFieldException {
+      NoSuchFieldException firstException = null;
+      for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+        try {
+          return c.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+          if (firstException == null) firstException = e;
+        }
+      }
+      throw firstException;
+    }
+  }
+
+  private static class ResolvedMethod {
+    /** The method handle with the method's exact type. */
+    final MethodHandle exact;
+    /** The method handle adapted to {@code (Object instance, Object[] args)Object}; static methods ignore the instance. */
+    final MethodHandle spread;
+
+    ResolvedMethod(Method method) throws IllegalAccessException {
+      method.setAccessible(true);
+      exact = LOOKUP.unreflect(method);
+      MethodHandle mh = exact;
+      if (Modifier.isStatic(method.getModifiers())) {
+        mh = MethodHandles.dropArguments(mh, 0, Object.class);
+      }
+      spread = mh.asType(mh.type().generic()).asSpreader(Object[].class, method.getParameterTypes().length);
+    }
+  }
+
+  private static class MethodKey {
+    private final String name;
+    private final Class<?>[] parameterTypes;
+    private final int hashCode;
+
+    MethodKey(String name, Class<?>[] parameterTypes) {
+      this.name = name;
+      this.parameterTypes = parameterTypes;
+      this.hashCode = 31 * name.hashCode() + Arrays.hashCode(parameterTypes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof MethodKey)) return false;
+      MethodKey that = (MethodKey) o;
+      return name.equals(that.name) && Arrays.equals(parameterTypes, that.parameterTypes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
   }
 
   /**
@@ -354,6 +466,7 @@ public class ReflectionHelpers {
     }
 
     public static Class<?>[] getClasses(ClassParameter<?>... classParameters) {
+      if (classParameters.length == 0) return NO_CLASSES;
       Class<?>[] classes = new Class[classParameters.length];
       for (int i = 0; i < classParameters.length; i++) {
         Class<?> paramClass = classParameters[i].clazz;
@@ -363,6 +476,7 @@ public class ReflectionHelpers {
     }
 
     public static Object[] getValues(ClassParameter<?>... classParameters) {
+      if (classParameters.length == 0) return NO_VALUES;
       Object[] values = new Object[classParameters.length];
       for (int i = 0; i < classParameters.length; i++) {
         Object paramValue = classParameters[i].val;
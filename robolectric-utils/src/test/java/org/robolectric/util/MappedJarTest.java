@@ -0,0 +1,100 @@
+package org.robolectric.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedJarTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File jarFile;
+  private byte[] largeContents;
+
+  @Before
+  public void setUp() throws Exception {
+    largeContents = new byte[100000];
+    for (int i = 0; i < largeContents.length; i++) {
+      largeContents[i] = (byte) (i % 37);
+    }
+
+    jarFile = temporaryFolder.newFile("test.jar");
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile))) {
+      out.putNextEntry(new JarEntry("res/"));
+      out.closeEntry();
+      out.putNextEntry(new JarEntry("res/values/"));
+      out.closeEntry();
+      out.putNextEntry(new JarEntry("res/values/strings.xml"));
+      out.write("<resources/>".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+      out.putNextEntry(new JarEntry("res/large.bin"));
+      out.write(largeContents);
+      out.closeEntry();
+
+      byte[] stored = "stored".getBytes(StandardCharsets.UTF_8);
+      CRC32 crc = new CRC32();
+      crc.update(stored);
+      JarEntry storedEntry = new JarEntry("stored.txt");
+      storedEntry.setMethod(ZipEntry.STORED);
+      storedEntry.setSize(stored.length);
+      storedEntry.setCrc(crc.getValue());
+      out.putNextEntry(storedEntry);
+      out.write(stored);
+      out.closeEntry();
+    }
+  }
+
+  @Test
+  public void shouldReadStoredAndDeflatedEntries() throws Exception {
+    MappedJar mappedJar = MappedJar.open(jarFile);
+
+    assertThat(new String(mappedJar.getBytes("res/values/strings.xml"), StandardCharsets.UTF_8)).isEqualTo("<resources/>");
+    assertThat(new String(mappedJar.getBytes("stored.txt"), StandardCharsets.UTF_8)).isEqualTo("stored");
+    assertThat(Arrays.equals(mappedJar.getBytes("res/large.bin"), largeContents)).isTrue();
+    assertThat(mappedJar.getBytes("missing.txt")).isNull();
+  }
+
+  @Test
+  public void shouldListNamesInOrder() throws Exception {
+    MappedJar mappedJar = MappedJar.open(jarFile);
+
+    assertThat(mappedJar.size()).isEqualTo(5);
+    assertThat(mappedJar.contains("res/values/")).isTrue();
+    assertThat(mappedJar.contains("res/values")).isFalse();
+    assertThat(mappedJar.getNamesBetween("res/", "res0"))
+        .containsExactly("res/large.bin", "res/values/", "res/values/strings.xml");
+  }
+
+  @Test
+  public void shouldShareInstancesForTheSameFile() throws Exception {
+    assertThat(MappedJar.open(jarFile)).isSameAs(MappedJar.open(new File(jarFile.getPath())));
+  }
+
+  @Test
+  public void shouldReplaceTheCachedInstanceWhenTheFileIsRewritten() throws Exception {
+    MappedJar oldJar = MappedJar.open(jarFile);
+
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile))) {
+      out.putNextEntry(new JarEntry("new.txt"));
+      out.write("new".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    MappedJar newJar = MappedJar.open(jarFile);
+
+    assertThat(newJar).isNotSameAs(oldJar);
+    assertThat(new String(newJar.getBytes("new.txt"), StandardCharsets.UTF_8)).isEqualTo("new");
+    assertThat(MappedJar.open(jarFile)).isSameAs(newJar);
+    assertThat(MappedJar.isCached(oldJar)).isFalse();
+  }
+}
@@ -4,6 +4,7 @@ import org.assertj.core.api.Assertions;
 import org.junit.Test;
 import org.robolectric.util.ReflectionHelpers.ClassParameter;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -171,6 +172,21 @@ public class ReflectionHelpersTest {
     }
   }
 
+  @Test
+  public void getInstanceMethodHandle_findsInheritedPrivateMethods() throws Throwable {
+    MethodHandle methodHandle = ReflectionHelpers.getInstanceMethodHandle(ExampleDescendant.class, "returnNegativeNumber");
+
+    assertThat((int) methodHandle.invoke(new ExampleDescendant())).isEqualTo(-46);
+    assertThat(ReflectionHelpers.getInstanceMethodHandle(ExampleDescendant.class, "returnNegativeNumber")).isSameAs(methodHandle);
+  }
+
+  @Test
+  public void getStaticMethodHandle_hasExactType() throws Throwable {
+    MethodHandle methodHandle = ReflectionHelpers.getStaticMethodHandle(ExampleDescendant.class, "getConstantNumber");
+
+    assertThat((int) methodHandle.invokeExact()).isEqualTo(1);
+  }
+
   @Test
   public void callStaticMethodReflectively_callsPrivateStaticMethodsReflectively() {
     assertThat(ReflectionHelpers.callStaticMethod(ExampleDescendant.class, "getConstantNumber")).isEqualTo(1);
@@ -3,10 +3,13 @@ package org.robolectric;
 import android.os.Build;
 
 import org.junit.runner.Runner;
+import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.Suite;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
 import org.robolectric.annotation.Config;
+import org.robolectric.internal.BufferedRunNotifier;
+import org.robolectric.internal.ParallelRunnerScheduler;
 import org.robolectric.internal.SdkConfig;
 import org.robolectric.manifest.AndroidManifest;
 
@@ -17,8 +20,15 @@ import java.util.Set;
 
 /**
  * A test runner for Robolectric that will run a test against multiple API versions.
+ *
+ * <p>Each API version runs in its own class loader, so the versions can run concurrently. Set
+ * {@code robolectric.multiApi.threads} to the number of versions to run at once, or to 0 to use one thread per
+ * processor. Their events are then passed on so that tests don't interleave: a test that starts while no other is
+ * being reported is reported as it runs, and tests that start meanwhile are reported in one go once they finish, so
+ * listeners that time tests see them take no time.</p>
  */
 public class MultiApiRobolectricTestRunner extends Suite {
+  public static final String THREADS_PROPERTY = "robolectric.multiApi.threads";
 
   protected static class TestRunnerForApiVersion extends RobolectricTestRunner {
 
@@ -90,6 +100,7 @@ public class MultiApiRobolectricTestRunner extends Suite {
   }
 
   private final ArrayList<Runner> runners = new ArrayList<>();
+  private final boolean concurrent;
 
   /*
    * Only called reflectively. Do not use programmatically.
@@ -100,8 +111,25 @@ public class MultiApiRobolectricTestRunner extends Suite {
     for (Integer integer : getSupportedApis()) {
       runners.add(createTestRunner(integer));
     }
+
+    int threadCount = Math.min(getThreadCount(), runners.size());
+    concurrent = threadCount > 1;
+    if (concurrent) {
+      setScheduler(new ParallelRunnerScheduler(threadCount, "robolectric-api-", false));
+    }
    }
 
+  /**
+   * @return The number of API versions to run at once, as requested with {@code robolectric.multiApi.threads}.
+   */
+  public static int getThreadCount() {
+    Integer threads = Integer.getInteger(THREADS_PROPERTY);
+    if (threads == null) {
+      return 1;
+    }
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
   protected Set<Integer> getSupportedApis() {
     return SdkConfig.getSupportedApis();
   }
@@ -114,4 +142,14 @@ public class MultiApiRobolectricTestRunner extends Suite {
   protected List<Runner> getChildren() {
     return runners;
   }
+
+  @Override
+  protected void runChild(Runner runner, RunNotifier notifier) {
+    if (!concurrent) {
+      super.runChild(runner, notifier);
+      return;
+    }
+
+    super.runChild(runner, new BufferedRunNotifier(notifier));
+  }
 }
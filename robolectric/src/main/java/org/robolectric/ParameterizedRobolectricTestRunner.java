@@ -11,8 +11,10 @@ import org.junit.runners.model.Statement;
 import org.junit.runners.model.TestClass;
 import org.robolectric.annotation.Config;
 import org.robolectric.internal.DeepCloner;
+import org.robolectric.internal.ObjectGraphCloner;
 import org.robolectric.internal.SdkEnvironment;
 import org.robolectric.manifest.AndroidManifest;
+import org.robolectric.util.Logger;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -62,10 +64,12 @@ public final class ParameterizedRobolectricTestRunner extends Suite {
   private static class TestClassRunnerForParameters extends RobolectricTestRunner {
 
     private final String name;
+    private final Object[] originalParameters;
     private Object[] parameters;
 
     TestClassRunnerForParameters(Class<?> type, Object[] parameters, String name) throws InitializationError {
       super(type);
+      this.originalParameters = parameters;
       this.parameters = parameters;
       this.name = name;
     }
@@ -105,12 +109,25 @@ public final class ParameterizedRobolectricTestRunner extends Suite {
     Statement methodBlock(FrameworkMethod method, Config config, AndroidManifest appManifest, SdkEnvironment sdkEnvironment) {
       configureShadows(sdkEnvironment, config);
 
-      DeepCloner deepCloner = new DeepCloner(sdkEnvironment.getRobolectricClassLoader());
-      parameters = deepCloner.clone(parameters);
+      parameters = cloneParameters(sdkEnvironment.getRobolectricClassLoader());
 
       return super.methodBlock(method, config, appManifest, sdkEnvironment);
     }
 
+    /**
+     * Copies the parameters into the Robolectric class loader, in memory where possible, and through XStream for
+     * graphs the in-memory copy can't handle.
+     */
+    private Object[] cloneParameters(ClassLoader robolectricClassLoader) {
+      ClassLoader testClassLoader = getTestClass().getJavaClass().getClassLoader();
+      try {
+        return new ObjectGraphCloner(testClassLoader, robolectricClassLoader).copy(originalParameters);
+      } catch (RuntimeException | LinkageError e) {
+        Logger.debug("Cloning parameters of %s through XStream: %s", name, e);
+        return new DeepCloner(robolectricClassLoader).clone(originalParameters);
+      }
+    }
+
     @Override
     public String toString() {
       return "TestClassRunnerForParameters " + name;
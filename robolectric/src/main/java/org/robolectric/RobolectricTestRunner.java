@@ -17,14 +17,20 @@ import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.Statement;
 import org.junit.runners.model.TestClass;
 import org.robolectric.annotation.*;
+import org.robolectric.internal.ConfigSorter;
 import org.robolectric.internal.InstrumentingClassLoaderFactory;
 import org.robolectric.internal.bytecode.*;
 import org.robolectric.internal.dependency.CachedDependencyResolver;
 import org.robolectric.internal.dependency.DependencyResolver;
 import org.robolectric.internal.dependency.LocalDependencyResolver;
 import org.robolectric.internal.dependency.MavenDependencyResolver;
+import org.robolectric.internal.timing.Phase;
+import org.robolectric.internal.timing.TestTimeline;
+import org.robolectric.internal.timing.Timings;
+import org.robolectric.internal.ParallelRunnerScheduler;
 import org.robolectric.internal.ParallelUniverse;
 import org.robolectric.internal.ParallelUniverseInterface;
+import org.robolectric.internal.Prewarmer;
 import org.robolectric.internal.SdkConfig;
 import org.robolectric.internal.SdkEnvironment;
 import org.robolectric.manifest.AndroidManifest;
@@ -46,6 +52,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.Future;
 
 /**
  * Installs a {@link org.robolectric.internal.bytecode.InstrumentingClassLoader} and
@@ -59,14 +66,18 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   private static ShadowMap mainShadowMap;
 
   private InstrumentingClassLoaderFactory instrumentingClassLoaderFactory;
-  private TestLifecycle<Application> testLifecycle;
+  private final ThreadLocal<TestLifecycle<Application>> testLifecycle = new ThreadLocal<>();
   private DependencyResolver dependencyResolver;
+  private List<FrameworkMethod> childrenGroupedByConfig;
+  private final Map<Class<?>, Config> classConfigs = new HashMap<>();
+  private Config globalConfig;
+  private Future<?> prewarming;
 
   static {
     new SecureRandom(); // this starts up the Poller SunPKCS11-Darwin thread early, outside of any Robolectric classloader
   }
 
-  private final HashSet<Class<?>> loadedTestClasses = new HashSet<>();
+  private final Set<Class<?>> loadedTestClasses = Collections.synchronizedSet(new HashSet<Class<?>>());
 
   /**
    * Creates a runner to run {@code testClass}. Looks in your working directory for your AndroidManifest.xml file
@@ -77,19 +88,24 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
    */
   public RobolectricTestRunner(final Class<?> testClass) throws InitializationError {
     super(testClass);
+
+    int threadCount = ParallelRunnerScheduler.getThreadCount();
+    if (threadCount > 1) {
+      setScheduler(new ParallelRunnerScheduler(threadCount));
+    }
   }
 
   @SuppressWarnings("unchecked")
   private void assureTestLifecycle(SdkEnvironment sdkEnvironment) {
     try {
       ClassLoader robolectricClassLoader = sdkEnvironment.getRobolectricClassLoader();
-      testLifecycle = (TestLifecycle) robolectricClassLoader.loadClass(getTestLifecycleClass().getName()).newInstance();
+      testLifecycle.set((TestLifecycle) robolectricClassLoader.loadClass(getTestLifecycleClass().getName()).newInstance());
     } catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
       throw new RuntimeException(e);
     }
   }
 
-  protected DependencyResolver getJarResolver() {
+  protected synchronized DependencyResolver getJarResolver() {
     if (dependencyResolver == null) {
       if (Boolean.getBoolean("robolectric.offline")) {
         String dependencyDir = System.getProperty("robolectric.dependency.dir", ".");
@@ -150,14 +166,22 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
+        Future<?> prewarming = getPrewarming();
+        if (prewarming != null) {
+          Prewarmer.await(prewarming);
+        }
+
         try {
           statement.evaluate();
-          for (Class<?> testClass : loadedTestClasses) {
-            invokeAfterClass(testClass);
+          synchronized (loadedTestClasses) {
+            for (Class<?> testClass : loadedTestClasses) {
+              invokeAfterClass(testClass);
+            }
           }
         } finally {
           afterClass();
           loadedTestClasses.clear();
+          Timings.testClassFinished(getTestClass().getJavaClass().getName());
         }
       }
     };
@@ -171,6 +195,89 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     }
   }
 
+  @Override
+  public Description getDescription() {
+    startPrewarming();
+    return super.getDescription();
+  }
+
+  private synchronized Future<?> getPrewarming() {
+    return prewarming;
+  }
+
+  /**
+   * Starts building the environments and resource loaders the tests will need in the background, if enabled. This
+   * happens when JUnit first asks for the runner's description, by which time subclasses are fully constructed, and
+   * the tests wait for it to finish before they start. Pre-warming never changes an environment's shadows, since
+   * other runners' tests may be using it at the same time.
+   */
+  private synchronized void startPrewarming() {
+    if (prewarming != null || !Prewarmer.isEnabled()) {
+      return;
+    }
+
+    final List<FrameworkMethod> children = new ArrayList<>(getChildren());
+    prewarming = Prewarmer.submit(new Runnable() {
+      @Override
+      public void run() {
+        Set<String> configKeys = new HashSet<>();
+        for (FrameworkMethod child : children) {
+          Config config = getConfig(child.getMethod());
+          if (!shouldIgnore(child, config) && shouldRunApiVersion(config) && configKeys.add(ConfigSorter.configKey(config))) {
+            prewarm(config);
+          }
+        }
+      }
+    });
+  }
+
+  private void prewarm(Config config) {
+    AndroidManifest appManifest = getAppManifest(config);
+    SdkConfig sdkConfig = new SdkConfig(pickSdkVersion(config, appManifest));
+    InstrumentingClassLoaderFactory instrumentingClassLoaderFactory = new InstrumentingClassLoaderFactory(createClassLoaderConfig(config), getJarResolver());
+    SdkEnvironment sdkEnvironment = instrumentingClassLoaderFactory.getSdkEnvironment(sdkConfig);
+
+    // The environment may be shared with runners whose tests are running right now, so leave its shadows and class
+    // handler alone. Loading resources doesn't need them.
+    ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(getJarResolver());
+    if (appManifest != null) {
+      getAppResourceLoader(sdkConfig, systemResourceLoader, appManifest);
+    }
+    if (Prewarmer.shouldPreloadClasses()) {
+      Prewarmer.preloadClasses(sdkEnvironment.getRobolectricClassLoader());
+    }
+  }
+
+  @Override
+  protected List<FrameworkMethod> getChildren() {
+    if (!ConfigSorter.isEnabled()) {
+      return super.getChildren();
+    }
+
+    if (childrenGroupedByConfig == null) {
+      List<FrameworkMethod> children = new ArrayList<>(super.getChildren());
+      final Map<FrameworkMethod, Description> descriptions = new HashMap<>();
+      Map<Description, Config> configs = new LinkedHashMap<>();
+      for (FrameworkMethod child : children) {
+        Description description = describeChild(child);
+        descriptions.put(child, description);
+        configs.put(description, getConfig(child.getMethod()));
+      }
+
+      final ConfigSorter sorter = new ConfigSorter(configs);
+      Collections.sort(children, new Comparator<FrameworkMethod>() {
+        @Override
+        public int compare(FrameworkMethod o1, FrameworkMethod o2) {
+          return sorter.compare(descriptions.get(o1), descriptions.get(o2));
+        }
+      });
+      Logger.info("%s: grouped tests by config, avoiding %d environment and %d shadow map switches",
+          getName(), sorter.getEnvironmentSwitchesAvoided(), sorter.getShadowMapSwitchesAvoided());
+      childrenGroupedByConfig = children;
+    }
+    return childrenGroupedByConfig;
+  }
+
   @Override
   protected void runChild(FrameworkMethod method, RunNotifier notifier) {
     Description description = describeChild(method);
@@ -181,17 +288,31 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       eachNotifier.fireTestIgnored();
     } else if(shouldRunApiVersion(config)) {
       eachNotifier.fireTestStarted();
+      TestTimeline timeline = TestTimeline.start(getTestClass().getJavaClass().getName(), description);
       try {
+        long start = System.nanoTime();
         AndroidManifest appManifest = getAppManifest(config);
+        timeline.record(Phase.APP_MANIFEST, start, null);
+
+        start = System.nanoTime();
         InstrumentingClassLoaderFactory instrumentingClassLoaderFactory = new InstrumentingClassLoaderFactory(createClassLoaderConfig(config), getJarResolver());
-        SdkEnvironment sdkEnvironment = instrumentingClassLoaderFactory.getSdkEnvironment(new SdkConfig(pickSdkVersion(config, appManifest)));
+        SdkConfig sdkConfig = new SdkConfig(pickSdkVersion(config, appManifest));
+        int workerIndex = ParallelRunnerScheduler.getWorkerIndex();
+        String cacheResult = instrumentingClassLoaderFactory.hasSdkEnvironment(sdkConfig, workerIndex) ? "hit" : "miss";
+        SdkEnvironment sdkEnvironment = instrumentingClassLoaderFactory.getSdkEnvironment(sdkConfig, workerIndex);
+        timeline.record(Phase.SDK_ENVIRONMENT, start, cacheResult);
+
         methodBlock(method, config, appManifest, sdkEnvironment).evaluate();
       } catch (AssumptionViolatedException e) {
         eachNotifier.addFailedAssumption(e);
       } catch (Throwable e) {
         eachNotifier.addFailure(e);
       } finally {
-        eachNotifier.fireTestFinished();
+        try {
+          timeline.finish();
+        } finally {
+          eachNotifier.fireTestFinished();
+        }
       }
     }
   }
@@ -204,7 +325,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return method.getAnnotation(Ignore.class) != null;
   }
 
-  private ParallelUniverseInterface parallelUniverseInterface;
+  private final ThreadLocal<ParallelUniverseInterface> parallelUniverseInterface = new ThreadLocal<>();
 
   Statement methodBlock(final FrameworkMethod method, final Config config, final AndroidManifest appManifest, final SdkEnvironment sdkEnvironment) {
     return new Statement() {
@@ -213,7 +334,10 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
         // Configure shadows *BEFORE* setting the ClassLoader. This is necessary because
         // creating the ShadowMap loads all ShadowProviders via ServiceLoader and this is
         // not available once we install the Robolectric class loader.
+        long start = System.nanoTime();
         configureShadows(sdkEnvironment, config);
+        TestTimeline.recordCurrent(Phase.CONFIGURE_SHADOWS, start, null);
+        final long rebindCount = sdkEnvironment.getShadowInvalidator().getRebindCount();
 
         Thread.currentThread().setContextClassLoader(sdkEnvironment.getRobolectricClassLoader());
 
@@ -228,7 +352,8 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
           throw new RuntimeException(e);
         }
 
-        parallelUniverseInterface = getHooksInterface(sdkEnvironment);
+        final ParallelUniverseInterface parallelUniverseInterface = getHooksInterface(sdkEnvironment);
+        RobolectricTestRunner.this.parallelUniverseInterface.set(parallelUniverseInterface);
         try {
           try {
             // Only invoke @BeforeClass once per class
@@ -237,15 +362,23 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
             }
             assureTestLifecycle(sdkEnvironment);
 
+            long resetStart = System.nanoTime();
             parallelUniverseInterface.resetStaticState(config);
+            TestTimeline.recordCurrent(Phase.RESET_STATIC_STATE, resetStart, null);
             parallelUniverseInterface.setSdkConfig(sdkEnvironment.getSdkConfig());
 
             int sdkVersion = pickSdkVersion(config, appManifest);
             ReflectionHelpers.setStaticField(sdkEnvironment.bootstrappedClass(Build.VERSION.class), "SDK_INT", sdkVersion);
 
+            long systemResourcesStart = System.nanoTime();
+            String cacheResult = sdkEnvironment.getLoadedSystemResourceLoader() != null ? "hit" : "miss";
             ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(getJarResolver());
+            TestTimeline.recordCurrent(Phase.SYSTEM_RESOURCE_LOADER, systemResourcesStart, cacheResult);
+
+            long setUpStart = System.nanoTime();
             setUpApplicationState(bootstrappedMethod, parallelUniverseInterface, systemResourceLoader, appManifest, config);
-            testLifecycle.beforeTest(bootstrappedMethod);
+            TestTimeline.recordCurrent(Phase.SET_UP_APPLICATION_STATE, setUpStart, null);
+            testLifecycle.get().beforeTest(bootstrappedMethod);
           } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
@@ -254,32 +387,40 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
           final Statement statement = helperTestRunner.methodBlock(new FrameworkMethod(bootstrappedMethod));
 
           // todo: this try/finally probably isn't right -- should mimic RunAfters? [xw]
+          long testStart = System.nanoTime();
           try {
             statement.evaluate();
           } finally {
+            TestTimeline.recordCurrent(Phase.TEST, testStart, null);
+            long tearDownStart = System.nanoTime();
             try {
               parallelUniverseInterface.tearDownApplication();
             } finally {
+              TestTimeline.recordCurrent(Phase.TEAR_DOWN_APPLICATION, tearDownStart, null);
               try {
                 internalAfterTest(bootstrappedMethod);
               } finally {
+                long resetStart = System.nanoTime();
                 parallelUniverseInterface.resetStaticState(config); // afterward too, so stuff doesn't hold on to classes?
+                TestTimeline.recordCurrent(Phase.RESET_STATIC_STATE, resetStart, null);
                 // todo: is this really needed?
                 Thread.currentThread().setContextClassLoader(RobolectricTestRunner.class.getClassLoader());
               }
             }
           }
         } finally {
-          parallelUniverseInterface = null;
+          RobolectricTestRunner.this.parallelUniverseInterface.remove();
+          if (InvokeDynamic.ENABLED) {
+            Logger.debug("%s: rebound %d call sites", method.getName(),
+                sdkEnvironment.getShadowInvalidator().getRebindCount() - rebindCount);
+          }
         }
       }
     };
   }
 
   private void invokeBeforeClass(final Class clazz) throws Throwable {
-    if (!loadedTestClasses.contains(clazz)) {
-      loadedTestClasses.add(clazz);
-
+    if (loadedTestClasses.add(clazz)) {
       final TestClass testClass = new TestClass(clazz);
       final List<FrameworkMethod> befores = testClass.getAnnotatedMethods(BeforeClass.class);
       for (FrameworkMethod before : befores) {
@@ -366,15 +507,38 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return Fs.currentDirectory();
   }
 
+  /**
+   * Resolves the config for a test method. The global config and the config inherited from the test class hierarchy
+   * are computed once per declaring class, so each call merges in at most the method's own {@link Config}.
+   *
+   * @param method The test method.
+   * @return The config.
+   */
   public Config getConfig(Method method) {
-    Config config = DEFAULT_CONFIG;
+    Config classConfig = getClassConfig(method.getDeclaringClass());
+
+    Config methodConfig = method.getAnnotation(Config.class);
+    if (methodConfig != null) {
+      return new Config.Implementation(classConfig, methodConfig);
+    }
+    return classConfig;
+  }
 
-    Config globalConfig = Config.Implementation.fromProperties(getConfigProperties());
-    if (globalConfig != null) {
-      config = new Config.Implementation(config, globalConfig);
+  private Config getClassConfig(Class<?> declaringClass) {
+    synchronized (classConfigs) {
+      Config config = classConfigs.get(declaringClass);
+      if (config == null) {
+        config = buildClassConfig(declaringClass);
+        classConfigs.put(declaringClass, config);
+      }
+      return config;
     }
+  }
 
-    Config methodClassConfig = method.getDeclaringClass().getAnnotation(Config.class);
+  private Config buildClassConfig(Class<?> declaringClass) {
+    Config config = getGlobalConfig();
+
+    Config methodClassConfig = declaringClass.getAnnotation(Config.class);
     if (methodClassConfig != null) {
       config = new Config.Implementation(config, methodClassConfig);
     }
@@ -394,14 +558,21 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       }
     }
 
-    Config methodConfig = method.getAnnotation(Config.class);
-    if (methodConfig != null) {
-      config = new Config.Implementation(config, methodConfig);
-    }
-
     return config;
   }
 
+  private Config getGlobalConfig() {
+    if (globalConfig == null) {
+      Config config = DEFAULT_CONFIG;
+      Config propertiesConfig = Config.Implementation.fromProperties(getConfigProperties());
+      if (propertiesConfig != null) {
+        config = new Config.Implementation(config, propertiesConfig);
+      }
+      globalConfig = config;
+    }
+    return globalConfig;
+  }
+
   protected Properties getConfigProperties() {
     ClassLoader classLoader = getClass().getClassLoader();
     try (InputStream resourceAsStream = classLoader.getResourceAsStream(CONFIG_PROPERTIES)) {
@@ -426,8 +597,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
     if (InvokeDynamic.ENABLED) {
       ShadowMap oldShadowMap = sdkEnvironment.replaceShadowMap(shadowMap);
-      Set<String> invalidatedClasses = shadowMap.getInvalidatedClasses(oldShadowMap);
-      sdkEnvironment.getShadowInvalidator().invalidateClasses(invalidatedClasses);
+      sdkEnvironment.getShadowInvalidator().invalidateChangedMethods(oldShadowMap, shadowMap, sdkEnvironment.getRobolectricClassLoader());
     }
 
     ClassHandler classHandler = getClassHandler(sdkEnvironment, shadowMap);
@@ -437,16 +607,17 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   private ClassHandler getClassHandler(SdkEnvironment sdkEnvironment, ShadowMap shadowMap) {
     ClassHandler classHandler;
     synchronized (sdkEnvironment) {
-      classHandler = sdkEnvironment.classHandlersByShadowMap.get(shadowMap);
+      classHandler = sdkEnvironment.getClassHandler(shadowMap);
       if (classHandler == null) {
         classHandler = createClassHandler(shadowMap, sdkEnvironment.getSdkConfig());
+        sdkEnvironment.putClassHandler(shadowMap, classHandler);
       }
     }
     return classHandler;
   }
 
   protected void setUpApplicationState(Method method, ParallelUniverseInterface parallelUniverseInterface, ResourceLoader systemResourceLoader, AndroidManifest appManifest, Config config) {
-    parallelUniverseInterface.setUpApplicationState(method, testLifecycle, systemResourceLoader, appManifest, config);
+    parallelUniverseInterface.setUpApplicationState(method, testLifecycle.get(), systemResourceLoader, appManifest, config);
   }
 
   protected int pickSdkVersion(Config config, AndroidManifest manifest) {
@@ -474,16 +645,16 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   }
 
   public void internalAfterTest(final Method method) {
-    testLifecycle.afterTest(method);
+    testLifecycle.get().afterTest(method);
   }
 
   private void afterClass() {
-    testLifecycle = null;
+    testLifecycle.remove();
   }
 
   @TestOnly
   boolean allStateIsCleared() {
-    return testLifecycle == null;
+    return testLifecycle.get() == null;
   }
 
   @Override
@@ -491,14 +662,32 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     throw new UnsupportedOperationException("this should always be invoked on the HelperTestRunner!");
   }
 
+  /**
+   * Forgets the app manifests and resource loaders shared by all runners, so they're built again from the current
+   * application classes, e.g. after {@link InstrumentingClassLoaderFactory#discardClassLoaders()}.
+   */
+  public static void clearCachedResources() {
+    synchronized (resourceLoadersByManifestAndConfig) {
+      resourceLoadersByManifestAndConfig.clear();
+    }
+    synchronized (appManifestsByFile) {
+      appManifestsByFile.clear();
+    }
+  }
+
   public final ResourceLoader getAppResourceLoader(SdkConfig sdkConfig, ResourceLoader systemResourceLoader, final AndroidManifest appManifest) {
+    long start = System.nanoTime();
     Pair<AndroidManifest, SdkConfig> androidManifestSdkConfigPair = new Pair<>(appManifest, sdkConfig);
-    ResourceLoader resourceLoader = resourceLoadersByManifestAndConfig.get(androidManifestSdkConfigPair);
-    if (resourceLoader == null) {
-      resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
-      resourceLoadersByManifestAndConfig.put(androidManifestSdkConfigPair, resourceLoader);
+    synchronized (resourceLoadersByManifestAndConfig) {
+      ResourceLoader resourceLoader = resourceLoadersByManifestAndConfig.get(androidManifestSdkConfigPair);
+      String cacheResult = resourceLoader != null ? "hit" : "miss";
+      if (resourceLoader == null) {
+        resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
+        resourceLoadersByManifestAndConfig.put(androidManifestSdkConfigPair, resourceLoader);
+      }
+      TestTimeline.recordCurrent(Phase.APP_RESOURCE_LOADER, start, cacheResult);
+      return resourceLoader;
     }
-    return resourceLoader;
   }
 
   protected ResourceLoader createAppResourceLoader(ResourceLoader systemResourceLoader, AndroidManifest appManifest) {
@@ -529,7 +718,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
     @Override protected Object createTest() throws Exception {
       Object test = super.createTest();
-      testLifecycle.prepareTest(test);
+      testLifecycle.get().prepareTest(test);
       return test;
     }
 
@@ -547,12 +736,13 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       return new Statement() {
         @Override
         public void evaluate() throws Throwable {
-          Thread orig = parallelUniverseInterface.getMainThread();
-          parallelUniverseInterface.setMainThread(Thread.currentThread());
+          ParallelUniverseInterface universe = parallelUniverseInterface.get();
+          Thread orig = universe.getMainThread();
+          universe.setMainThread(Thread.currentThread());
           try {
             invoker.evaluate();
           } finally {
-            parallelUniverseInterface.setMainThread(orig);
+            universe.setMainThread(orig);
           }
         }
       };
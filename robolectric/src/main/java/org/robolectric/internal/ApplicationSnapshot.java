@@ -0,0 +1,86 @@
+package org.robolectric.internal;
+
+import org.robolectric.TestLifecycle;
+import org.robolectric.annotation.Config;
+import org.robolectric.manifest.AndroidManifest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A copy of an application taken just after {@code onCreate()}. Later tests with the same manifest, SDK, qualifiers
+ * and config get a fresh copy of it instead of creating, attaching and starting a new application, which saves the
+ * cost of expensive {@code onCreate()} methods. Enable by setting {@code robolectric.snapshotApplication} to true.
+ *
+ * <p>The snapshot is copied with an {@link ObjectGraphCloner}, so it has the same limits. In particular:</p>
+ * <ul>
+ *   <li>Only state reachable from the application is restored. State kept in static fields (including singletons
+ *   created in {@code onCreate()}) is lost when Robolectric resets static state between tests.</li>
+ *   <li>Threads, executors, open streams, cursors and other {@link java.io.Closeable}s are shared with the snapshot
+ *   rather than copied, so applications that start background work or open databases in {@code onCreate()} should
+ *   not use snapshots.</li>
+ *   <li>{@code onCreate()} and {@link org.robolectric.TestLifecycle#createApplication} run only once per
+ *   configuration, so they must not depend on the test method.</li>
+ * </ul>
+ */
+class ApplicationSnapshot {
+  static final String SNAPSHOT_APPLICATION_PROPERTY = "robolectric.snapshotApplication";
+
+  private static final Map<String, ApplicationSnapshot> snapshots = new HashMap<>();
+
+  private final Object application;
+  private final Object[] environment;
+
+  private ApplicationSnapshot(Object application, Object[] environment) {
+    this.application = application;
+    this.environment = environment;
+  }
+
+  static boolean isEnabled() {
+    return Boolean.getBoolean(SNAPSHOT_APPLICATION_PROPERTY);
+  }
+
+  static String keyFor(TestLifecycle testLifecycle, AndroidManifest appManifest, Config config, String qualifiers) {
+    return testLifecycle.getClass().getName()
+        + "|" + (appManifest == null ? null : appManifest.getAndroidManifestFile().getPath())
+        + "|" + (appManifest == null ? null : appManifest.getPackageName())
+        + "|" + ConfigSorter.configKey(config)
+        + "|" + qualifiers;
+  }
+
+  static synchronized ApplicationSnapshot get(String key) {
+    return snapshots.get(key);
+  }
+
+  static synchronized void put(String key, ApplicationSnapshot snapshot) {
+    snapshots.put(key, snapshot);
+  }
+
+  /**
+   * Takes a snapshot of an application.
+   *
+   * @param application The application, after {@code onCreate()}.
+   * @param environment Objects the application refers to that are set up afresh for every test; see {@link #restore}.
+   */
+  static ApplicationSnapshot take(Object application, Object[] environment) {
+    ObjectGraphCloner cloner = new ObjectGraphCloner(ApplicationSnapshot.class.getClassLoader());
+    for (Object object : environment) {
+      cloner.share(object);
+    }
+    return new ApplicationSnapshot(cloner.copy(application), environment.clone());
+  }
+
+  /**
+   * Creates a new application from this snapshot.
+   *
+   * @param environment The current test's counterparts to the environment the snapshot was taken with, in the same
+   *                    order. The new application refers to these instead.
+   */
+  Object restore(Object[] environment) {
+    ObjectGraphCloner cloner = new ObjectGraphCloner(ApplicationSnapshot.class.getClassLoader());
+    for (int i = 0; i < environment.length; i++) {
+      cloner.substitute(this.environment[i], environment[i]);
+    }
+    return cloner.copy(application);
+  }
+}
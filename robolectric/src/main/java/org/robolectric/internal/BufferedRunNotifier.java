@@ -0,0 +1,213 @@
+package org.robolectric.internal;
+
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A notifier that keeps the events of runners that run concurrently from interleaving when it passes them on to
+ * another notifier, which listeners such as IDEs and build tools don't expect.
+ *
+ * <p>Any number of buffered notifiers can share the other notifier. The first test to start while none of them is
+ * passing on a test's events has its events passed on as they happen. The events of tests that start while it runs
+ * are held back until they finish, then passed on in one uninterrupted sequence once no test is being passed on. Each
+ * test is still reported as soon as it's done, but listeners that time tests see the tests that were held back take
+ * no time at all.</p>
+ *
+ * <p>Events are passed on while holding the other notifier's lock. Once the other notifier has been asked to stop,
+ * this one stops too, so its runner doesn't start any more tests.</p>
+ */
+public class BufferedRunNotifier extends RunNotifier {
+  private static final Map<RunNotifier, Channel> channels = new WeakHashMap<>();
+
+  private final RunNotifier notifier;
+  private final Channel channel;
+  private final Map<Description, List<Event>> eventsByTest = new HashMap<>();
+
+  public BufferedRunNotifier(RunNotifier notifier) {
+    this.notifier = notifier;
+    this.channel = channelFor(notifier);
+    addListener(new RunListener() {
+      @Override
+      public void testStarted(final Description description) throws Exception {
+        Event event = new Event() {
+          @Override
+          void fireOn(RunNotifier notifier) {
+            notifier.fireTestStarted(description);
+          }
+        };
+        synchronized (notifier) {
+          if (channel.liveNotifier == null) {
+            channel.liveNotifier = BufferedRunNotifier.this;
+            channel.liveTest = description;
+            fire(BufferedRunNotifier.this, Collections.singletonList(event));
+            return;
+          }
+        }
+        List<Event> events = new ArrayList<>();
+        events.add(event);
+        synchronized (eventsByTest) {
+          eventsByTest.put(description, events);
+        }
+      }
+
+      @Override
+      public void testFinished(final Description description) throws Exception {
+        Event event = new Event() {
+          @Override
+          void fireOn(RunNotifier notifier) {
+            notifier.fireTestFinished(description);
+          }
+        };
+        synchronized (notifier) {
+          if (isLive(description)) {
+            fire(BufferedRunNotifier.this, Collections.singletonList(event));
+            channel.liveNotifier = null;
+            channel.liveTest = null;
+            for (Batch batch : channel.waiting) {
+              fire(batch.source, batch.events);
+            }
+            channel.waiting.clear();
+            return;
+          }
+        }
+
+        List<Event> events;
+        synchronized (eventsByTest) {
+          events = eventsByTest.remove(description);
+        }
+        if (events == null) {
+          passOn(Collections.singletonList(event));
+        } else {
+          events.add(event);
+          passOn(events);
+        }
+      }
+
+      @Override
+      public void testFailure(final Failure failure) throws Exception {
+        add(failure.getDescription(), new Event() {
+          @Override
+          void fireOn(RunNotifier notifier) {
+            notifier.fireTestFailure(failure);
+          }
+        });
+      }
+
+      @Override
+      public void testAssumptionFailure(final Failure failure) {
+        add(failure.getDescription(), new Event() {
+          @Override
+          void fireOn(RunNotifier notifier) {
+            notifier.fireTestAssumptionFailed(failure);
+          }
+        });
+      }
+
+      @Override
+      public void testIgnored(final Description description) throws Exception {
+        add(description, new Event() {
+          @Override
+          void fireOn(RunNotifier notifier) {
+            notifier.fireTestIgnored(description);
+          }
+        });
+      }
+    });
+  }
+
+  private static Channel channelFor(RunNotifier notifier) {
+    synchronized (channels) {
+      Channel channel = channels.get(notifier);
+      if (channel == null) {
+        channels.put(notifier, channel = new Channel());
+      }
+      return channel;
+    }
+  }
+
+  /**
+   * @return True if this notifier is passing on the events of a test as they happen. Call while holding the other
+   *     notifier's lock.
+   */
+  private boolean isLive(Description description) {
+    return channel.liveNotifier == this && channel.liveTest.equals(description);
+  }
+
+  /**
+   * Adds an event to the events of a running test, or passes it on if it isn't part of a test that's being held
+   * back, e.g. the failure of a whole class.
+   */
+  private void add(Description description, Event event) {
+    synchronized (notifier) {
+      if (isLive(description)) {
+        fire(this, Collections.singletonList(event));
+        return;
+      }
+    }
+
+    synchronized (eventsByTest) {
+      List<Event> events = eventsByTest.get(description);
+      if (events != null) {
+        events.add(event);
+        return;
+      }
+    }
+    passOn(Collections.singletonList(event));
+  }
+
+  /**
+   * Passes events on now if no test's events are being passed on as they happen, or once that test finishes.
+   */
+  private void passOn(List<Event> events) {
+    synchronized (notifier) {
+      if (channel.liveNotifier == null) {
+        fire(this, events);
+      } else {
+        channel.waiting.add(new Batch(this, events));
+      }
+    }
+  }
+
+  private void fire(BufferedRunNotifier source, List<Event> events) {
+    try {
+      for (Event event : events) {
+        event.fireOn(notifier);
+      }
+    } catch (StoppedByUserException e) {
+      source.pleaseStop();
+    }
+  }
+
+  /**
+   * The state shared by the buffered notifiers that pass events on to the same notifier, guarded by its lock.
+   */
+  private static class Channel {
+    private BufferedRunNotifier liveNotifier;
+    private Description liveTest;
+    private final List<Batch> waiting = new ArrayList<>();
+  }
+
+  private static class Batch {
+    private final BufferedRunNotifier source;
+    private final List<Event> events;
+
+    Batch(BufferedRunNotifier source, List<Event> events) {
+      this.source = source;
+      this.events = events;
+    }
+  }
+
+  private abstract static class Event {
+    abstract void fireOn(RunNotifier notifier);
+  }
+}
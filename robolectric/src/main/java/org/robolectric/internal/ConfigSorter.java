@@ -0,0 +1,163 @@
+package org.robolectric.internal;
+
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Sorter;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders tests so that tests with the same {@link Config} run next to each other.
+ *
+ * <p>Tests are grouped first by the settings that select an {@link SdkEnvironment} (SDK, shadows and instrumented
+ * packages) and then by the rest of their config, e.g. manifest and qualifiers. Groups keep the order in which their
+ * first test appeared, and tests keep their order within a group. Tests the sorter doesn't know about go last.</p>
+ *
+ * <p>Enable for {@link org.robolectric.RobolectricTestRunner} by setting {@code robolectric.groupByConfig} to
+ * true, or pass an instance to any {@link org.junit.runner.manipulation.Sortable} runner.</p>
+ */
+public class ConfigSorter extends Sorter {
+  public static final String GROUP_BY_CONFIG_PROPERTY = "robolectric.groupByConfig";
+
+  private final Ranking ranking;
+
+  /**
+   * @param configs The resolved config of each test, in their original order.
+   */
+  public ConfigSorter(Map<Description, Config> configs) {
+    this(new Ranking(configs));
+  }
+
+  private ConfigSorter(Ranking ranking) {
+    super(ranking);
+    this.ranking = ranking;
+  }
+
+  public static boolean isEnabled() {
+    return Boolean.getBoolean(GROUP_BY_CONFIG_PROPERTY);
+  }
+
+  /**
+   * @return The number of times consecutive tests would have needed a different {@link SdkEnvironment} in the
+   *     original order but don't after sorting.
+   */
+  public int getEnvironmentSwitchesAvoided() {
+    return ranking.environmentSwitchesAvoided;
+  }
+
+  /**
+   * @return The number of times consecutive tests would have needed a different shadow map in the original order but
+   *     don't after sorting.
+   */
+  public int getShadowMapSwitchesAvoided() {
+    return ranking.shadowMapSwitchesAvoided;
+  }
+
+  static String environmentKey(Config config) {
+    return Arrays.toString(config.sdk())
+        + "|" + classNames(config.shadows())
+        + "|" + Arrays.toString(config.instrumentedPackages());
+  }
+
+  static String shadowMapKey(Config config) {
+    return classNames(config.shadows());
+  }
+
+  /**
+   * @return A string that's equal for configs that run tests in the same environment with the same settings.
+   */
+  public static String configKey(Config config) {
+    return environmentKey(config)
+        + "|" + config.manifest()
+        + "|" + config.resourceDir()
+        + "|" + config.assetDir()
+        + "|" + config.packageName()
+        + "|" + Arrays.toString(config.libraries())
+        + "|" + config.qualifiers()
+        + "|" + config.application().getName()
+        + "|" + config.constants().getName();
+  }
+
+  private static String classNames(Class<?>[] classes) {
+    StringBuilder builder = new StringBuilder();
+    for (Class<?> clazz : classes) {
+      builder.append(clazz.getName()).append(',');
+    }
+    return builder.toString();
+  }
+
+  private static int countSwitches(List<String> keys) {
+    int switches = 0;
+    for (int i = 1; i < keys.size(); i++) {
+      if (!keys.get(i).equals(keys.get(i - 1))) {
+        switches++;
+      }
+    }
+    return switches;
+  }
+
+  private static class Ranking implements Comparator<Description> {
+    private final Map<Description, Long> ranks = new HashMap<>();
+    private final int environmentSwitchesAvoided;
+    private final int shadowMapSwitchesAvoided;
+
+    Ranking(Map<Description, Config> configs) {
+      Map<String, Integer> environmentIndexes = new HashMap<>();
+      Map<String, Integer> configIndexes = new HashMap<>();
+      for (Map.Entry<Description, Config> entry : configs.entrySet()) {
+        long environmentIndex = indexOf(environmentKey(entry.getValue()), environmentIndexes);
+        long configIndex = indexOf(configKey(entry.getValue()), configIndexes);
+        ranks.put(entry.getKey(), environmentIndex << 32 | configIndex);
+      }
+
+      List<Description> sorted = new ArrayList<>(configs.keySet());
+      Collections.sort(sorted, this);
+
+      environmentSwitchesAvoided = countSwitches(environmentKeys(configs.keySet(), configs))
+          - countSwitches(environmentKeys(sorted, configs));
+      shadowMapSwitchesAvoided = countSwitches(shadowMapKeys(configs.keySet(), configs))
+          - countSwitches(shadowMapKeys(sorted, configs));
+    }
+
+    @Override
+    public int compare(Description o1, Description o2) {
+      return Long.compare(rankOf(o1), rankOf(o2));
+    }
+
+    private long rankOf(Description description) {
+      Long rank = ranks.get(description);
+      return rank == null ? Long.MAX_VALUE : rank;
+    }
+
+    private static int indexOf(String key, Map<String, Integer> indexes) {
+      Integer index = indexes.get(key);
+      if (index == null) {
+        index = indexes.size();
+        indexes.put(key, index);
+      }
+      return index;
+    }
+
+    private static List<String> environmentKeys(Iterable<Description> descriptions, Map<Description, Config> configs) {
+      List<String> keys = new ArrayList<>();
+      for (Description description : descriptions) {
+        keys.add(environmentKey(configs.get(description)));
+      }
+      return keys;
+    }
+
+    private static List<String> shadowMapKeys(Iterable<Description> descriptions, Map<Description, Config> configs) {
+      List<String> keys = new ArrayList<>();
+      for (Description description : descriptions) {
+        keys.add(shadowMapKey(configs.get(description)));
+      }
+      return keys;
+    }
+  }
+}
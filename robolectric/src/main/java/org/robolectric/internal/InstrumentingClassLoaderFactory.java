@@ -1,12 +1,14 @@
 package org.robolectric.internal;
 
 import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.InstrumentedClassCache;
 import org.robolectric.internal.bytecode.InstrumentingClassLoader;
+import org.robolectric.internal.bytecode.PreinstrumentedJar;
 import org.robolectric.internal.dependency.DependencyResolver;
-import org.robolectric.util.Pair;
+import org.robolectric.res.ResourceLoader;
 
 import java.net.URL;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.Map;
 
 public class InstrumentingClassLoaderFactory {
@@ -14,16 +16,21 @@ public class InstrumentingClassLoaderFactory {
   /** The factor for cache size. See {@link #CACHE_SIZE} for details. */
   private static final int CACHE_SIZE_FACTOR = 3;
 
-  /** We need to set the cache size of class loaders more than the number of supported APIs as different tests may have different configurations. */
-  private static final int CACHE_SIZE = SdkConfig.getSupportedApis().size() * CACHE_SIZE_FACTOR;
+  /**
+   * We need to set the cache size of class loaders more than the number of supported APIs as different tests may
+   * have different configurations. When tests run in parallel, each worker needs its own set.
+   */
+  private static final int CACHE_SIZE = SdkConfig.getSupportedApis().size() * CACHE_SIZE_FACTOR * ParallelRunnerScheduler.getThreadCount();
 
-  // Simple LRU Cache. SdkEnvironments are unique across InstrumentingClassloaderConfig and SdkConfig
-  private static final LinkedHashMap<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment> sdkToEnvironment = new LinkedHashMap<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment>() {
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<Pair<InstrumentationConfiguration, SdkConfig>, SdkEnvironment> eldest) {
-      return size() > CACHE_SIZE;
-    }
-  };
+  // LRU cache, optionally limited by estimated heap use. SdkEnvironments are unique across
+  // InstrumentingClassloaderConfig, SdkConfig and worker index
+  private static final SdkEnvironmentCache<EnvironmentKey> sdkToEnvironment = SdkEnvironmentCache.fromSystemProperties(CACHE_SIZE);
+
+  /** System resource loaders kept from discarded environments, to be handed to their replacements. */
+  private static final Map<EnvironmentKey, ResourceLoader> retainedSystemResourceLoaders = new HashMap<>();
+
+  /** Persistent cache of instrumented bytecode shared by all class loaders, or null if disabled. */
+  private static final InstrumentedClassCache instrumentedClassCache = InstrumentedClassCache.fromSystemProperties();
 
   private final InstrumentationConfiguration instrumentationConfig;
   private final DependencyResolver dependencyResolver;
@@ -33,17 +40,94 @@ public class InstrumentingClassLoaderFactory {
     this.dependencyResolver = dependencyResolver;
   }
 
-  public synchronized SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig) {
+  public SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig) {
+    return getSdkEnvironment(sdkConfig, 0);
+  }
+
+  /**
+   * @return True if {@link #getSdkEnvironment(SdkConfig, int)} would return a cached environment.
+   */
+  public boolean hasSdkEnvironment(SdkConfig sdkConfig, int workerIndex) {
+    synchronized (sdkToEnvironment) {
+      return sdkToEnvironment.contains(new EnvironmentKey(instrumentationConfig, sdkConfig, workerIndex));
+    }
+  }
+
+  /**
+   * Returns the environment for an SDK, creating it if necessary. Environments with different worker indexes have
+   * separate class loaders, so tests can run in them concurrently.
+   *
+   * @param sdkConfig   The SDK.
+   * @param workerIndex The index of the {@link ParallelRunnerScheduler} worker the environment is for.
+   * @return The environment.
+   */
+  public SdkEnvironment getSdkEnvironment(SdkConfig sdkConfig, int workerIndex) {
+    EnvironmentKey key = new EnvironmentKey(instrumentationConfig, sdkConfig, workerIndex);
+
+    synchronized (sdkToEnvironment) {
+      SdkEnvironment sdkEnvironment = sdkToEnvironment.get(key);
+      if (sdkEnvironment == null) {
+        long startNanos = System.nanoTime();
+        URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
+        PreinstrumentedJar preinstrumentedJar = PreinstrumentedJar.find(sdkConfig, instrumentationConfig);
+        ClassLoader robolectricClassLoader = new InstrumentingClassLoader(instrumentationConfig, instrumentedClassCache, preinstrumentedJar, urls);
+        sdkEnvironment = new SdkEnvironment(sdkConfig, robolectricClassLoader, retainedSystemResourceLoaders.remove(key));
+        sdkToEnvironment.put(key, sdkEnvironment, System.nanoTime() - startNanos);
+      }
+      return sdkEnvironment;
+    }
+  }
+
+  /**
+   * Discards every cached environment, so subsequent tests load application and test classes afresh. System resource
+   * loaders don't depend on the environments' class loaders, so they're kept and reused by the new environments.
+   */
+  public static void discardClassLoaders() {
+    synchronized (sdkToEnvironment) {
+      for (Map.Entry<EnvironmentKey, SdkEnvironment> entry : sdkToEnvironment.clear().entrySet()) {
+        ResourceLoader systemResourceLoader = entry.getValue().getLoadedSystemResourceLoader();
+        if (systemResourceLoader != null) {
+          retainedSystemResourceLoaders.put(entry.getKey(), systemResourceLoader);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The persistent instrumented class cache, or null if it is disabled.
+   */
+  public static InstrumentedClassCache getInstrumentedClassCache() {
+    return instrumentedClassCache;
+  }
+
+  private static class EnvironmentKey {
+    private final InstrumentationConfiguration instrumentationConfig;
+    private final SdkConfig sdkConfig;
+    private final int workerIndex;
 
-    Pair<InstrumentationConfiguration, SdkConfig> key = Pair.create(instrumentationConfig, sdkConfig);
+    EnvironmentKey(InstrumentationConfiguration instrumentationConfig, SdkConfig sdkConfig, int workerIndex) {
+      this.instrumentationConfig = instrumentationConfig;
+      this.sdkConfig = sdkConfig;
+      this.workerIndex = workerIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
 
-    SdkEnvironment sdkEnvironment = sdkToEnvironment.get(key);
-    if (sdkEnvironment == null) {
-      URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
-      ClassLoader robolectricClassLoader = new InstrumentingClassLoader(instrumentationConfig, urls);
-      sdkEnvironment = new SdkEnvironment(sdkConfig, robolectricClassLoader);
-      sdkToEnvironment.put(key, sdkEnvironment);
+      EnvironmentKey that = (EnvironmentKey) o;
+      return workerIndex == that.workerIndex
+          && instrumentationConfig.equals(that.instrumentationConfig)
+          && sdkConfig.equals(that.sdkConfig);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = instrumentationConfig.hashCode();
+      result = 31 * result + sdkConfig.hashCode();
+      result = 31 * result + workerIndex;
+      return result;
     }
-    return sdkEnvironment;
   }
 }
@@ -0,0 +1,418 @@
+package org.robolectric.internal;
+
+import sun.misc.Unsafe;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.Reference;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.AccessControlContext;
+import java.security.ProtectionDomain;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+/**
+ * Copies object graphs in memory, field by field, preserving shared references and cycles.
+ *
+ * <p>Objects are copied if their class was loaded by the bootstrap class loader or by the class loader given to
+ * the constructor; anything else is referenced as it is. Immutable values and objects that can't meaningfully be
+ * copied (classes, class loaders, threads, reflection objects, {@link Reference}s, {@link Closeable}s and
+ * {@link Executor}s) are shared too, as are objects registered with {@link #share}. {@link #substitute} replaces an
+ * object with another wherever it's referenced.</p>
+ *
+ * <p>The JDK's hash-based maps and sets are rebuilt rather than copied, since the copies of their keys may have
+ * different identity hash codes. Other hash-based structures (including subclasses of the JDK ones) are copied as
+ * they are, so their keys must have stable hash codes. Static fields are never copied.</p>
+ *
+ * <p>A cloner can also move a graph into another class loader: copies of objects whose classes were loaded by the
+ * source class loader are instances of the classes with the same names in the target class loader, and enum
+ * constants and class references are replaced with the target's. Fields are matched by declaring class and name, so
+ * fields the target's classes add (e.g. through instrumentation) are left at their default values.</p>
+ *
+ * <p>A cloner remembers what it has copied, so copying several roots with one cloner preserves references between
+ * them. Cloners aren't thread-safe.</p>
+ */
+public class ObjectGraphCloner {
+  private static final Unsafe UNSAFE;
+
+  static {
+    try {
+      Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+      unsafeField.setAccessible(true);
+      UNSAFE = (Unsafe) unsafeField.get(null);
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final Set<Class<?>> IMMUTABLE_CLASSES = new HashSet<Class<?>>(Arrays.asList(
+      String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class,
+      Double.class, BigInteger.class, BigDecimal.class, Class.class, Locale.class, UUID.class, Pattern.class,
+      URI.class, URL.class, java.io.File.class, Object.class));
+
+  private static final Class<?>[] SHARED_TYPES = {
+      Enum.class, ClassLoader.class, Thread.class, ThreadGroup.class, AccessibleObject.class, MethodHandle.class,
+      Reference.class, Closeable.class, Executor.class, ProtectionDomain.class, AccessControlContext.class,
+      Charset.class, TimeZone.class
+  };
+
+  private static final Set<Class<?>> REBUILT_CLASSES = new HashSet<Class<?>>(Arrays.asList(
+      HashMap.class, LinkedHashMap.class, Hashtable.class, IdentityHashMap.class, WeakHashMap.class,
+      ConcurrentHashMap.class, HashSet.class, LinkedHashSet.class));
+
+  private static final ClassValue<FieldCopier[]> FIELD_COPIERS = new ClassValue<FieldCopier[]>() {
+    @Override protected FieldCopier[] computeValue(Class<?> type) {
+      List<FieldCopier> copiers = new ArrayList<>();
+      for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+        for (Field field : clazz.getDeclaredFields()) {
+          if (!Modifier.isStatic(field.getModifiers())) {
+            copiers.add(new FieldCopier(field));
+          }
+        }
+      }
+      return copiers.toArray(new FieldCopier[copiers.size()]);
+    }
+  };
+
+  private final ClassLoader classLoader;
+  private final ClassLoader targetClassLoader;
+  private final Map<Class<?>, Class<?>> targetTypes = new HashMap<>();
+  private final Map<Class<?>, FieldCopier[]> remappedFieldCopiers = new HashMap<>();
+  private final Map<Object, Object> copies = new IdentityHashMap<>();
+  private final Deque<Object> pending = new ArrayDeque<>();
+  private final List<Object> rebuilt = new ArrayList<>();
+
+  /**
+   * @param classLoader The class loader whose objects should be copied, in addition to the JDK's.
+   */
+  public ObjectGraphCloner(ClassLoader classLoader) {
+    this(classLoader, classLoader);
+  }
+
+  /**
+   * @param classLoader       The class loader whose objects should be copied, in addition to the JDK's.
+   * @param targetClassLoader The class loader whose classes the copies of those objects should be instances of.
+   * @throws RuntimeException When copying, if a class can't be found in the target class loader or doesn't match its
+   *     original.
+   */
+  public ObjectGraphCloner(ClassLoader classLoader, ClassLoader targetClassLoader) {
+    this.classLoader = classLoader;
+    this.targetClassLoader = targetClassLoader;
+  }
+
+  /**
+   * Prevents an object from being copied; copies will refer to the original.
+   */
+  public ObjectGraphCloner share(Object original) {
+    return substitute(original, original);
+  }
+
+  /**
+   * Makes copies refer to {@code replacement} wherever the original graph refers to {@code original}.
+   */
+  public ObjectGraphCloner substitute(Object original, Object replacement) {
+    if (original != null) {
+      copies.put(original, replacement);
+    }
+    return this;
+  }
+
+  /**
+   * @return A copy of the graph reachable from {@code root}.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T copy(T root) {
+    Object copy = copyReference(root);
+    while (!pending.isEmpty()) {
+      populate(pending.poll());
+    }
+    rebuildCollections();
+    return (T) copy;
+  }
+
+  private Object copyReference(Object original) {
+    if (original == null) {
+      return null;
+    }
+
+    Object copy = copies.get(original);
+    if (copy != null || copies.containsKey(original)) {
+      return copy;
+    }
+
+    if (targetClassLoader != classLoader) {
+      if (original instanceof Class) {
+        return targetTypeOf((Class<?>) original);
+      }
+      if (original instanceof Enum && isRemapped(original.getClass())) {
+        copy = targetConstantOf((Enum<?>) original);
+        copies.put(original, copy);
+        return copy;
+      }
+    }
+
+    if (!shouldCopy(original.getClass())) {
+      return original;
+    }
+
+    copy = allocate(original, targetTypeOf(original.getClass()));
+    copies.put(original, copy);
+    pending.add(original);
+    return copy;
+  }
+
+  private boolean shouldCopy(Class<?> type) {
+    Class<?> elementType = type;
+    while (elementType.isArray()) {
+      elementType = elementType.getComponentType();
+    }
+    if (elementType.isPrimitive()) {
+      return true;
+    }
+
+    ClassLoader loader = elementType.getClassLoader();
+    if (loader != null && loader != classLoader) {
+      return false;
+    }
+
+    if (IMMUTABLE_CLASSES.contains(type) || type.getName().startsWith("java.util.Collections$Empty")) {
+      return false;
+    }
+    for (Class<?> sharedType : SHARED_TYPES) {
+      if (sharedType.isAssignableFrom(type)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isRemapped(Class<?> type) {
+    return targetClassLoader != classLoader && targetTypeOf(type) != type;
+  }
+
+  /**
+   * @return The class in the target class loader that copies of instances of {@code type} should have.
+   */
+  private Class<?> targetTypeOf(Class<?> type) {
+    if (targetClassLoader == classLoader || type.isPrimitive() || type.getClassLoader() != classLoader) {
+      return type;
+    }
+
+    Class<?> targetType = targetTypes.get(type);
+    if (targetType == null) {
+      if (type.isArray()) {
+        targetType = Array.newInstance(targetTypeOf(type.getComponentType()), 0).getClass();
+      } else {
+        try {
+          targetType = Class.forName(type.getName(), false, targetClassLoader);
+        } catch (ClassNotFoundException e) {
+          throw new RuntimeException("can't find " + type.getName() + " in " + targetClassLoader, e);
+        }
+      }
+      targetTypes.put(type, targetType);
+    }
+    return targetType;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private Object targetConstantOf(Enum<?> constant) {
+    return Enum.valueOf((Class) targetTypeOf(constant.getDeclaringClass()), constant.name());
+  }
+
+  private FieldCopier[] fieldCopiersFor(Class<?> type) {
+    if (!isRemapped(type)) {
+      return FIELD_COPIERS.get(type);
+    }
+
+    FieldCopier[] copiers = remappedFieldCopiers.get(type);
+    if (copiers == null) {
+      List<FieldCopier> copierList = new ArrayList<>();
+      Class<?> targetClass = targetTypeOf(type);
+      for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass(), targetClass = targetClass.getSuperclass()) {
+        if (targetClass == null || !clazz.getName().equals(targetClass.getName())) {
+          throw new RuntimeException("can't copy " + type.getName() + ": its superclasses differ in " + targetClassLoader);
+        }
+        for (Field field : clazz.getDeclaredFields()) {
+          if (!Modifier.isStatic(field.getModifiers())) {
+            copierList.add(new FieldCopier(field, targetFieldOf(targetClass, field)));
+          }
+        }
+      }
+      copiers = copierList.toArray(new FieldCopier[copierList.size()]);
+      remappedFieldCopiers.put(type, copiers);
+    }
+    return copiers;
+  }
+
+  private Field targetFieldOf(Class<?> targetClass, Field field) {
+    try {
+      Field targetField = targetClass.getDeclaredField(field.getName());
+      if (targetField.getType() != targetTypeOf(field.getType()) || Modifier.isStatic(targetField.getModifiers())) {
+        throw new RuntimeException("can't copy " + field + ": it differs in " + targetClass.getClassLoader());
+      }
+      return targetField;
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException("can't copy " + field + ": it's missing in " + targetClass.getClassLoader(), e);
+    }
+  }
+
+  private static Object allocate(Object original, Class<?> type) {
+    if (type.isArray()) {
+      return Array.newInstance(type.getComponentType(), Array.getLength(original));
+    }
+
+    try {
+      if (type == LinkedHashMap.class) {
+        return new LinkedHashMap<>(16, 0.75f, UNSAFE.getBoolean(original, LinkedHashMapAccessOrder.OFFSET));
+      }
+      if (REBUILT_CLASSES.contains(type)) {
+        return type.newInstance();
+      }
+      return UNSAFE.allocateInstance(type);
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new RuntimeException("can't copy " + type.getName(), e);
+    }
+  }
+
+  private void populate(Object original) {
+    Object copy = copies.get(original);
+    Class<?> type = original.getClass();
+
+    if (type.isArray()) {
+      if (type.getComponentType().isPrimitive()) {
+        System.arraycopy(original, 0, copy, 0, Array.getLength(original));
+      } else {
+        Object[] originalArray = (Object[]) original;
+        Object[] copyArray = (Object[]) copy;
+        for (int i = 0; i < originalArray.length; i++) {
+          copyArray[i] = copyReference(originalArray[i]);
+        }
+      }
+    } else if (REBUILT_CLASSES.contains(type)) {
+      if (original instanceof Map) {
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) original).entrySet()) {
+          copyReference(entry.getKey());
+          copyReference(entry.getValue());
+        }
+      } else {
+        for (Object element : (Collection<?>) original) {
+          copyReference(element);
+        }
+      }
+      rebuilt.add(original);
+    } else {
+      for (FieldCopier fieldCopier : fieldCopiersFor(type)) {
+        fieldCopier.copy(this, original, copy);
+      }
+    }
+  }
+
+  /**
+   * Fills rebuilt collections once every object has been copied, so their keys' hash codes are final. Collections
+   * found later are nested in ones found earlier, so they're filled first.
+   */
+  @SuppressWarnings("unchecked")
+  private void rebuildCollections() {
+    for (int i = rebuilt.size() - 1; i >= 0; i--) {
+      Object original = rebuilt.get(i);
+      Object copy = copies.get(original);
+      if (original instanceof Map) {
+        Map<Object, Object> copyMap = (Map<Object, Object>) copy;
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) original).entrySet()) {
+          copyMap.put(copyOf(entry.getKey()), copyOf(entry.getValue()));
+        }
+      } else {
+        Collection<Object> copyCollection = (Collection<Object>) copy;
+        for (Object element : (Collection<?>) original) {
+          copyCollection.add(copyOf(element));
+        }
+      }
+    }
+    rebuilt.clear();
+  }
+
+  private Object copyOf(Object original) {
+    if (original == null) {
+      return null;
+    }
+    Object copy = copies.get(original);
+    return copy != null || copies.containsKey(original) ? copy : original;
+  }
+
+  private static class LinkedHashMapAccessOrder {
+    static final long OFFSET;
+
+    static {
+      try {
+        OFFSET = UNSAFE.objectFieldOffset(LinkedHashMap.class.getDeclaredField("accessOrder"));
+      } catch (NoSuchFieldException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  private static class FieldCopier {
+    private final long offset;
+    private final long targetOffset;
+    private final Class<?> type;
+
+    FieldCopier(Field field) {
+      this(field, field);
+    }
+
+    FieldCopier(Field field, Field targetField) {
+      this.offset = UNSAFE.objectFieldOffset(field);
+      this.targetOffset = UNSAFE.objectFieldOffset(targetField);
+      this.type = field.getType();
+    }
+
+    void copy(ObjectGraphCloner cloner, Object original, Object copy) {
+      if (!type.isPrimitive()) {
+        UNSAFE.putObject(copy, targetOffset, cloner.copyReference(UNSAFE.getObject(original, offset)));
+      } else if (type == int.class) {
+        UNSAFE.putInt(copy, targetOffset, UNSAFE.getInt(original, offset));
+      } else if (type == long.class) {
+        UNSAFE.putLong(copy, targetOffset, UNSAFE.getLong(original, offset));
+      } else if (type == boolean.class) {
+        UNSAFE.putBoolean(copy, targetOffset, UNSAFE.getBoolean(original, offset));
+      } else if (type == float.class) {
+        UNSAFE.putFloat(copy, targetOffset, UNSAFE.getFloat(original, offset));
+      } else if (type == double.class) {
+        UNSAFE.putDouble(copy, targetOffset, UNSAFE.getDouble(original, offset));
+      } else if (type == byte.class) {
+        UNSAFE.putByte(copy, targetOffset, UNSAFE.getByte(original, offset));
+      } else if (type == short.class) {
+        UNSAFE.putShort(copy, targetOffset, UNSAFE.getShort(original, offset));
+      } else {
+        UNSAFE.putChar(copy, targetOffset, UNSAFE.getChar(original, offset));
+      }
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package org.robolectric.internal;
+
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs test methods concurrently on a fixed number of worker threads.
+ *
+ * <p>Each worker has an index, and the runner gives each index its own {@link SdkEnvironment}, so every worker
+ * thread has its own instrumenting class loader and therefore its own copy of Robolectric's static state. Enable
+ * by setting {@code robolectric.parallel.threads} to the number of workers, or to 0 to use one per processor.</p>
+ *
+ * <p>This replaces, and can't be combined with, JUnit's own parallel computers.</p>
+ */
+public class ParallelRunnerScheduler implements RunnerScheduler {
+  public static final String THREADS_PROPERTY = "robolectric.parallel.threads";
+
+  private static final ThreadLocal<Integer> workerIndex = new ThreadLocal<>();
+
+  private final int threadCount;
+  private final String threadNamePrefix;
+  private final boolean indexWorkers;
+  private ExecutorService executorService;
+  private final List<Future<?>> futures = new ArrayList<>();
+
+  public ParallelRunnerScheduler(int threadCount) {
+    this(threadCount, "robolectric-worker-", true);
+  }
+
+  /**
+   * @param threadCount      The number of threads.
+   * @param threadNamePrefix The prefix of each thread's name, which is followed by its index.
+   * @param indexWorkers     True if {@link #getWorkerIndex()} should return each thread's index, so it gets its own
+   *                         {@link SdkEnvironment}, or false if it should return 0, e.g. because the threads run tests
+   *                         against different SDKs anyway.
+   */
+  public ParallelRunnerScheduler(int threadCount, String threadNamePrefix, boolean indexWorkers) {
+    this.threadCount = threadCount;
+    this.threadNamePrefix = threadNamePrefix;
+    this.indexWorkers = indexWorkers;
+  }
+
+  /**
+   * @return The number of worker threads requested with {@code robolectric.parallel.threads}, or 1 if tests
+   *     should run sequentially.
+   */
+  public static int getThreadCount() {
+    Integer threads = Integer.getInteger(THREADS_PROPERTY);
+    if (threads == null) {
+      return 1;
+    }
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * @return The index of the worker running on the current thread, or 0 if the current thread isn't a worker.
+   */
+  public static int getWorkerIndex() {
+    Integer index = workerIndex.get();
+    return index == null ? 0 : index;
+  }
+
+  @Override
+  public synchronized void schedule(Runnable childStatement) {
+    if (executorService == null) {
+      executorService = Executors.newFixedThreadPool(threadCount, new WorkerThreadFactory(threadNamePrefix, indexWorkers));
+    }
+    futures.add(executorService.submit(childStatement));
+  }
+
+  @Override
+  public void finished() {
+    List<Future<?>> scheduled;
+    ExecutorService executor;
+    synchronized (this) {
+      scheduled = new ArrayList<>(futures);
+      futures.clear();
+      executor = executorService;
+      executorService = null;
+    }
+
+    try {
+      for (Future<?> future : scheduled) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final String threadNamePrefix;
+    private final boolean indexWorkers;
+
+    WorkerThreadFactory(String threadNamePrefix, boolean indexWorkers) {
+      this.threadNamePrefix = threadNamePrefix;
+      this.indexWorkers = indexWorkers;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final int index = nextIndex.getAndIncrement();
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          if (indexWorkers) {
+            workerIndex.set(index);
+          }
+          runnable.run();
+        }
+      }, threadNamePrefix + index);
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -21,11 +21,13 @@ import org.robolectric.res.ResBundle;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.builder.DefaultPackageManager;
 import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.Logger;
 import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.util.Scheduler;
 
 import java.lang.reflect.Method;
 import java.security.Security;
+import java.util.concurrent.TimeUnit;
 
 import static org.robolectric.util.ReflectionHelpers.ClassParameter;
 
@@ -34,6 +36,11 @@ public class ParallelUniverse implements ParallelUniverseInterface {
   private final RobolectricTestRunner robolectricTestRunner;
   private final ShadowsAdapter shadowsAdapter = Robolectric.getShadowsAdapter();
 
+  private static long builtSetUpCount;
+  private static long builtSetUpNanos;
+  private static long restoredSetUpCount;
+  private static long restoredSetUpNanos;
+
   private boolean loggingInitialized = false;
   private SdkConfig sdkConfig;
 
@@ -69,6 +76,7 @@ public class ParallelUniverse implements ParallelUniverseInterface {
 
   @Override
   public void setUpApplicationState(Method method, TestLifecycle testLifecycle, ResourceLoader systemResourceLoader, AndroidManifest appManifest, Config config) {
+    long startTime = System.nanoTime();
     RuntimeEnvironment.application = null;
     RuntimeEnvironment.setMasterScheduler(new Scheduler());
     RuntimeEnvironment.setMainThread(Thread.currentThread());
@@ -112,24 +120,28 @@ public class ParallelUniverse implements ParallelUniverseInterface {
 
     Context systemContextImpl = ReflectionHelpers.callStaticMethod(contextImplClass, "createSystemContext", ClassParameter.from(activityThreadClass, activityThread));
 
+    String snapshotKey = ApplicationSnapshot.isEnabled() ? ApplicationSnapshot.keyFor(testLifecycle, appManifest, config, qualifiers) : null;
+    ApplicationSnapshot snapshot = snapshotKey == null ? null : ApplicationSnapshot.get(snapshotKey);
+    if (snapshot != null) {
+      // The copy doesn't need createApplication(), bind(), attach() or onCreate(): they ran before the snapshot was
+      // taken, and the manifest and resource loaders its shadow was bound to are part of the environment, so it's
+      // bound to this test's. The asset qualifiers set then are part of the snapshot's key.
+      Object loadedApk = getLoadedApk(activityThread, getApplicationInfo(appManifest));
+      Application application = (Application) snapshot.restore(getEnvironment(activityThread, systemContextImpl,
+          configuration, loadedApk, appManifest, resourceLoader, systemResourceLoader));
+      ReflectionHelpers.setField(activityThreadClass, activityThread, "mInitialApplication", application);
+      Resources appResources = application.getResources();
+      ReflectionHelpers.setField(loadedApk, "mResources", appResources);
+      appResources.updateConfiguration(configuration, appResources.getDisplayMetrics());
+      RuntimeEnvironment.application = application;
+      recordSetUpTime(method, true, System.nanoTime() - startTime);
+      return;
+    }
+
     final Application application = (Application) testLifecycle.createApplication(method, appManifest, config);
     if (application != null) {
-      String packageName = appManifest != null ? appManifest.getPackageName() : null;
-      if (packageName == null) packageName = DEFAULT_PACKAGE_NAME;
-
-      ApplicationInfo applicationInfo;
-      try {
-        applicationInfo = RuntimeEnvironment.getPackageManager().getApplicationInfo(packageName, 0);
-      } catch (PackageManager.NameNotFoundException e) {
-        throw new RuntimeException(e);
-      }
-
-      Class<?> compatibilityInfoClass = ReflectionHelpers.loadClass(getClass().getClassLoader(), "android.content.res.CompatibilityInfo");
-
-      Object loadedApk = ReflectionHelpers.callInstanceMethod(activityThread, "getPackageInfo",
-          ClassParameter.from(ApplicationInfo.class, applicationInfo),
-          ClassParameter.from(compatibilityInfoClass, null),
-          ClassParameter.from(int.class, Context.CONTEXT_INCLUDE_CODE));
+      ApplicationInfo applicationInfo = getApplicationInfo(appManifest);
+      Object loadedApk = getLoadedApk(activityThread, applicationInfo);
 
       shadowsAdapter.bind(application, appManifest, resourceLoader);
       if (appManifest == null) {
@@ -151,7 +163,76 @@ public class ParallelUniverse implements ParallelUniverseInterface {
 
       RuntimeEnvironment.application = application;
       application.onCreate();
+
+      if (snapshotKey != null) {
+        ApplicationSnapshot.put(snapshotKey, ApplicationSnapshot.take(application, getEnvironment(activityThread,
+            systemContextImpl, configuration, loadedApk, appManifest, resourceLoader, systemResourceLoader)));
+      }
+    }
+    recordSetUpTime(method, false, System.nanoTime() - startTime);
+  }
+
+  private ApplicationInfo getApplicationInfo(AndroidManifest appManifest) {
+    String packageName = appManifest != null ? appManifest.getPackageName() : null;
+    if (packageName == null) packageName = DEFAULT_PACKAGE_NAME;
+
+    try {
+      return RuntimeEnvironment.getPackageManager().getApplicationInfo(packageName, 0);
+    } catch (PackageManager.NameNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Object getLoadedApk(Object activityThread, ApplicationInfo applicationInfo) {
+    Class<?> compatibilityInfoClass = ReflectionHelpers.loadClass(getClass().getClassLoader(), "android.content.res.CompatibilityInfo");
+
+    return ReflectionHelpers.callInstanceMethod(activityThread, "getPackageInfo",
+        ClassParameter.from(ApplicationInfo.class, applicationInfo),
+        ClassParameter.from(compatibilityInfoClass, null),
+        ClassParameter.from(int.class, Context.CONTEXT_INCLUDE_CODE));
+  }
+
+  /**
+   * @return The objects set up afresh for every test that an application refers to. They must be in the same order
+   *     every time, since restoring a snapshot replaces each of the snapshot's objects with the one at its index.
+   */
+  private Object[] getEnvironment(Object activityThread, Context systemContextImpl, Configuration configuration, Object loadedApk,
+      AndroidManifest appManifest, ResourceLoader resourceLoader, ResourceLoader systemResourceLoader) {
+    Looper mainLooper = Looper.getMainLooper();
+    return new Object[] {
+        activityThread,
+        ReflectionHelpers.getField(activityThread, "mInstrumentation"),
+        loadedApk,
+        systemContextImpl,
+        configuration,
+        Resources.getSystem(),
+        RuntimeEnvironment.getRobolectricPackageManager(),
+        mainLooper,
+        ReflectionHelpers.getField(mainLooper, "mQueue"),
+        RuntimeEnvironment.getMasterScheduler(),
+        ShadowLooper.getShadowMainLooper().getScheduler(),
+        appManifest,
+        resourceLoader,
+        systemResourceLoader
+    };
+  }
+
+  private static void recordSetUpTime(Method method, boolean restored, long nanos) {
+    long averageNanos;
+    synchronized (ParallelUniverse.class) {
+      if (restored) {
+        restoredSetUpCount++;
+        restoredSetUpNanos += nanos;
+        averageNanos = restoredSetUpNanos / restoredSetUpCount;
+      } else {
+        builtSetUpCount++;
+        builtSetUpNanos += nanos;
+        averageNanos = builtSetUpNanos / builtSetUpCount;
+      }
     }
+    Logger.debug("%s: set up application in %d ms (%s, average %d ms)", method.getName(),
+        TimeUnit.NANOSECONDS.toMillis(nanos), restored ? "restored from snapshot" : "created",
+        TimeUnit.NANOSECONDS.toMillis(averageNanos));
   }
 
   @Override
@@ -0,0 +1,98 @@
+package org.robolectric.internal;
+
+import org.robolectric.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs work that prepares for upcoming tests, e.g. building resource loaders, on a background thread, so it
+ * overlaps with JUnit working out which tests to run. Tasks run one at a time, in the order they were submitted.
+ *
+ * <p>Enable by setting {@code robolectric.prewarm} to true. Also set {@code robolectric.prewarm.classes} to true to
+ * load commonly used Android classes through each instrumenting class loader in advance.</p>
+ */
+public class Prewarmer {
+  public static final String PREWARM_PROPERTY = "robolectric.prewarm";
+  public static final String PREWARM_CLASSES_PROPERTY = "robolectric.prewarm.classes";
+
+  private static final String[] COMMON_CLASSES = {
+      "android.app.Activity",
+      "android.app.Application",
+      "android.app.Fragment",
+      "android.content.Context",
+      "android.content.Intent",
+      "android.content.res.Resources",
+      "android.os.Bundle",
+      "android.os.Handler",
+      "android.os.Looper",
+      "android.view.LayoutInflater",
+      "android.view.View",
+      "android.view.ViewGroup",
+      "android.widget.Button",
+      "android.widget.FrameLayout",
+      "android.widget.ImageView",
+      "android.widget.LinearLayout",
+      "android.widget.ListView",
+      "android.widget.TextView",
+  };
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "robolectric-prewarm");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  public static boolean isEnabled() {
+    return Boolean.getBoolean(PREWARM_PROPERTY);
+  }
+
+  public static boolean shouldPreloadClasses() {
+    return Boolean.getBoolean(PREWARM_CLASSES_PROPERTY);
+  }
+
+  public static Future<?> submit(Runnable task) {
+    return executor.submit(task);
+  }
+
+  /**
+   * Waits for a task to finish. Failures are logged rather than rethrown, since the tests that needed the work will
+   * repeat it and report the failure themselves.
+   */
+  public static void await(Future<?> task) {
+    try {
+      task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      Logger.error("Pre-warming failed: %s", e.getCause());
+    }
+  }
+
+  /**
+   * Loads, and so instruments, commonly used Android classes without initializing them.
+   */
+  public static void preloadClasses(ClassLoader classLoader) {
+    preloadClasses(classLoader, COMMON_CLASSES);
+  }
+
+  static List<Class<?>> preloadClasses(ClassLoader classLoader, String... classNames) {
+    List<Class<?>> classes = new ArrayList<>();
+    for (String className : classNames) {
+      try {
+        classes.add(Class.forName(className, false, classLoader));
+      } catch (ClassNotFoundException | LinkageError e) {
+        Logger.debug("Can't preload %s: %s", className, e);
+      }
+    }
+    return classes;
+  }
+}
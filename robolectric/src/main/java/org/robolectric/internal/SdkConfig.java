@@ -26,7 +26,7 @@ public class SdkConfig {
     addSdk(Build.VERSION_CODES.LOLLIPOP, "5.0.0_r2", "1");
     addSdk(Build.VERSION_CODES.LOLLIPOP_MR1, "5.1.1_r9", "1");
     addSdk(Build.VERSION_CODES.M, "6.0.0_r1", "0");
-    ROBOLECTRIC_VERSION = getRobolectricVersion();
+    ROBOLECTRIC_VERSION = readRobolectricVersion();
   }
 
   public static void addSdk(int sdkVersion, String androidVersion, String robolectricVersion) {
@@ -37,6 +37,10 @@ public class SdkConfig {
     return SUPPORTED_APIS.keySet();
   }
 
+  public static String getRobolectricVersion() {
+    return ROBOLECTRIC_VERSION;
+  }
+
   public SdkConfig(int apiLevel) {
     this.apiLevel = apiLevel;
     SdkVersion version = SUPPORTED_APIS.get(apiLevel);
@@ -85,7 +89,7 @@ public class SdkConfig {
     return new DependencyJar(groupId, artifactId, version, classifier);
   }
 
-  private static String getRobolectricVersion() {
+  private static String readRobolectricVersion() {
     ClassLoader classLoader = SdkVersion.class.getClassLoader();
     try (InputStream is = classLoader.getResourceAsStream("robolectric-version.properties")) {
       final Properties properties = new Properties();
@@ -1,39 +1,77 @@
 package org.robolectric.internal;
 
+import org.robolectric.internal.bytecode.ClassHandler;
+import org.robolectric.internal.bytecode.InstrumentingClassLoader;
 import org.robolectric.internal.bytecode.ShadowInvalidator;
 import org.robolectric.internal.dependency.DependencyResolver;
 import org.robolectric.internal.bytecode.ShadowMap;
-import org.robolectric.internal.bytecode.ShadowWrangler;
 import org.robolectric.res.Fs;
 import org.robolectric.res.PackageResourceLoader;
 import org.robolectric.res.ResourceExtractor;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.ResourcePath;
+import org.robolectric.util.Logger;
 
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.HashMap;
 import java.util.Map;
 
 public class SdkEnvironment {
+  /**
+   * Heap retained per byte of instrumented bytecode, for the class objects, their static state and the
+   * instrumentation's per-class data. A rough allowance, not a measurement.
+   */
+  private static final int RETAINED_BYTES_PER_CLASS_BYTE = 2;
+
+  /** A rough allowance for the heap retained by an SDK's parsed system resources. */
+  private static final long SYSTEM_RESOURCE_LOADER_RETAINED_BYTES = 32L * 1024 * 1024;
+
   private final SdkConfig sdkConfig;
   private final ClassLoader robolectricClassLoader;
   private final ShadowInvalidator shadowInvalidator;
-  public final Map<ShadowMap, ShadowWrangler> classHandlersByShadowMap = new HashMap<>();
+  private final Map<ShadowMap, ClassHandler> classHandlersByShadowMap = new HashMap<>();
+  private long classHandlerHits;
+  private long classHandlerMisses;
   private ShadowMap shadowMap = ShadowMap.EMPTY;
   private ResourceLoader systemResourceLoader;
 
   public SdkEnvironment(SdkConfig sdkConfig, ClassLoader robolectricClassLoader) {
+    this(sdkConfig, robolectricClassLoader, null);
+  }
+
+  /**
+   * @param systemResourceLoader A system resource loader for the same SDK to reuse, or null to create one when it's
+   *                             first needed.
+   */
+  public SdkEnvironment(SdkConfig sdkConfig, ClassLoader robolectricClassLoader, ResourceLoader systemResourceLoader) {
     this.sdkConfig = sdkConfig;
     this.robolectricClassLoader = robolectricClassLoader;
+    this.systemResourceLoader = systemResourceLoader;
     shadowInvalidator = new ShadowInvalidator();
   }
 
+  /**
+   * Creates a loader for the SDK's system resources. The framework R classes are read through a plain class loader of
+   * their own rather than this environment's, so the resources neither need a class handler nor keep the
+   * instrumenting class loader alive, and can be handed on to other environments for the same SDK.
+   */
   public PackageResourceLoader createSystemResourceLoader(DependencyResolver dependencyResolver) {
-    Fs systemResFs = Fs.fromJar(dependencyResolver.getLocalArtifactUrl(sdkConfig.getSystemResourceDependency()));
+    URL systemResUrl = dependencyResolver.getLocalArtifactUrl(sdkConfig.getSystemResourceDependency());
+    Fs systemResFs = Fs.fromJar(systemResUrl);
     ResourceExtractor resourceExtractor;
+    URLClassLoader rClassLoader = new URLClassLoader(new URL[] {systemResUrl}, null);
     try {
-      resourceExtractor = new ResourceExtractor(getRobolectricClassLoader().loadClass("com.android.internal.R"), getRobolectricClassLoader().loadClass("android.R"));
+      resourceExtractor = new ResourceExtractor(rClassLoader.loadClass("com.android.internal.R"), rClassLoader.loadClass("android.R"));
     } catch (ClassNotFoundException e) {
       throw new RuntimeException(e);
+    } finally {
+      try {
+        rClassLoader.close();
+      } catch (IOException e) {
+        Logger.debug("Couldn't close %s: %s", systemResUrl, e.getMessage());
+      }
     }
     ResourcePath resourcePath = new ResourcePath(resourceExtractor.getProcessedRFile(), resourceExtractor.getPackageName(), systemResFs.join("res"), systemResFs.join("assets"));
     return new PackageResourceLoader(resourcePath, resourceExtractor);
@@ -46,6 +84,67 @@ public class SdkEnvironment {
     return systemResourceLoader;
   }
 
+  /**
+   * @return The system resource loader, or null if it hasn't been created yet.
+   */
+  public synchronized ResourceLoader getLoadedSystemResourceLoader() {
+    return systemResourceLoader;
+  }
+
+  /**
+   * @return A rough estimate of the heap this environment retains, based on how much bytecode its class loader has
+   *     defined and whether it has loaded system resources.
+   */
+  public long getEstimatedRetainedBytes() {
+    long bytes = 0;
+    if (robolectricClassLoader instanceof InstrumentingClassLoader) {
+      bytes += ((InstrumentingClassLoader) robolectricClassLoader).getDefinedByteCount() * RETAINED_BYTES_PER_CLASS_BYTE;
+    }
+    if (getLoadedSystemResourceLoader() != null) {
+      bytes += SYSTEM_RESOURCE_LOADER_RETAINED_BYTES;
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the class handler previously created for a shadow map, so that its caches survive from one test to the
+   * next.
+   *
+   * @param shadowMap The shadow map.
+   * @return The cached class handler, or null if none has been created for {@code shadowMap} yet.
+   */
+  public synchronized ClassHandler getClassHandler(ShadowMap shadowMap) {
+    ClassHandler classHandler = classHandlersByShadowMap.get(shadowMap);
+    if (classHandler == null) {
+      classHandlerMisses++;
+    } else {
+      classHandlerHits++;
+    }
+    return classHandler;
+  }
+
+  public synchronized void putClassHandler(ShadowMap shadowMap, ClassHandler classHandler) {
+    classHandlersByShadowMap.put(shadowMap, classHandler);
+  }
+
+  /**
+   * @return The number of times a class handler was reused.
+   */
+  public synchronized long getClassHandlerHitCount() {
+    return classHandlerHits;
+  }
+
+  /**
+   * @return The number of times a class handler had to be created.
+   */
+  public synchronized long getClassHandlerMissCount() {
+    return classHandlerMisses;
+  }
+
+  public synchronized int getClassHandlerCount() {
+    return classHandlersByShadowMap.size();
+  }
+
   public Class<?> bootstrappedClass(Class<?> testClass) {
     try {
       return robolectricClassLoader.loadClass(testClass.getName());
@@ -0,0 +1,305 @@
+package org.robolectric.internal;
+
+import org.robolectric.util.Logger;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A least-recently-used cache of {@link SdkEnvironment}s, limited by the number of environments and optionally by
+ * their {@link SdkEnvironment#getEstimatedRetainedBytes() estimated} heap use.
+ *
+ * <p>Environments pushed out of the cache become cold: depending on the retention, they're held through soft or
+ * weak references, so they can be revived until the garbage collector reclaims them, or dropped straight away.
+ * {@link Listener}s are told about loads, evictions, revivals and collections, so memory can be traded against
+ * reload time knowingly.</p>
+ *
+ * <p>Configure with {@code robolectric.environmentCache.heapBudget} (bytes, or with a k, m or g suffix) and
+ * {@code robolectric.environmentCache.retention} ({@code soft}, the default, {@code weak} or {@code none}).</p>
+ *
+ * <p>Callers must synchronize on the cache.</p>
+ *
+ * @param <K> The type of the keys.
+ */
+public class SdkEnvironmentCache<K> {
+  public static final String HEAP_BUDGET_PROPERTY = "robolectric.environmentCache.heapBudget";
+  public static final String RETENTION_PROPERTY = "robolectric.environmentCache.retention";
+
+  public enum Retention {
+    SOFT, WEAK, NONE
+  }
+
+  /**
+   * Notified of changes to the environment caches. Listeners are called while the cache is locked.
+   */
+  public interface Listener {
+    /**
+     * @param reloaded True if an environment for the same key was evicted or collected before.
+     * @param nanos    The time it took to create the environment.
+     */
+    void environmentLoaded(SdkEnvironment environment, boolean reloaded, long nanos);
+
+    /**
+     * @param estimatedBytes The environment's estimated heap use when it was evicted.
+     * @param retained       True if the environment is still reachable through a soft or weak reference.
+     */
+    void environmentEvicted(SdkEnvironment environment, long estimatedBytes, boolean retained);
+
+    /**
+     * A cold environment was used again before it was collected.
+     */
+    void environmentRevived(SdkEnvironment environment);
+
+    /**
+     * The garbage collector reclaimed a cold environment.
+     *
+     * @param estimatedBytes The environment's estimated heap use when it was evicted.
+     */
+    void environmentCollected(SdkConfig sdkConfig, long estimatedBytes);
+  }
+
+  private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  private final int maxSize;
+  private final long heapBudget;
+  private final Retention retention;
+  private final LinkedHashMap<K, SdkEnvironment> environments = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<K, ColdEnvironment> coldEnvironments = new HashMap<>();
+  private final ReferenceQueue<SdkEnvironment> collected = new ReferenceQueue<>();
+  private final Set<K> evictedKeys = new HashSet<>();
+
+  /**
+   * @param maxSize    The maximum number of environments to hold strongly.
+   * @param heapBudget The maximum total estimated heap use of the environments held strongly, or 0 for no limit. The
+   *                   most recently used environment is always kept.
+   * @param retention  How to hold evicted environments.
+   */
+  public SdkEnvironmentCache(int maxSize, long heapBudget, Retention retention) {
+    this.maxSize = maxSize;
+    this.heapBudget = heapBudget;
+    this.retention = retention;
+  }
+
+  public static <K> SdkEnvironmentCache<K> fromSystemProperties(int maxSize) {
+    long heapBudget = 0;
+    String heapBudgetProperty = System.getProperty(HEAP_BUDGET_PROPERTY);
+    if (heapBudgetProperty != null) {
+      try {
+        heapBudget = parseSize(heapBudgetProperty);
+      } catch (NumberFormatException e) {
+        Logger.error("Ignoring invalid %s: %s", HEAP_BUDGET_PROPERTY, heapBudgetProperty);
+      }
+    }
+
+    Retention retention = Retention.SOFT;
+    String retentionProperty = System.getProperty(RETENTION_PROPERTY);
+    if (retentionProperty != null) {
+      try {
+        retention = Retention.valueOf(retentionProperty.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        Logger.error("Ignoring invalid %s: %s", RETENTION_PROPERTY, retentionProperty);
+      }
+    }
+    return new SdkEnvironmentCache<>(maxSize, heapBudget, retention);
+  }
+
+  /**
+   * @return The number of bytes in a size such as {@code 512m}.
+   * @throws NumberFormatException If the size isn't a number with an optional k, m or g suffix.
+   */
+  static long parseSize(String size) {
+    String trimmed = size.trim().toLowerCase(Locale.ROOT);
+    long multiplier = 1;
+    if (trimmed.endsWith("k")) {
+      multiplier = 1024L;
+    } else if (trimmed.endsWith("m")) {
+      multiplier = 1024L * 1024;
+    } else if (trimmed.endsWith("g")) {
+      multiplier = 1024L * 1024 * 1024;
+    }
+    if (multiplier != 1) {
+      trimmed = trimmed.substring(0, trimmed.length() - 1);
+    }
+    return Long.parseLong(trimmed) * multiplier;
+  }
+
+  public static void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public static void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * @return The environment for a key, reviving it if it's cold, or null if there isn't one.
+   */
+  public SdkEnvironment get(K key) {
+    expungeCollected();
+    SdkEnvironment environment = environments.get(key);
+    if (environment != null) {
+      if (heapBudget > 0) {
+        trim();
+      }
+      return environment;
+    }
+
+    ColdEnvironment coldEnvironment = coldEnvironments.remove(key);
+    if (coldEnvironment != null) {
+      environment = coldEnvironment.get();
+      if (environment != null) {
+        Logger.debug("Revived cold environment for %s", environment.getSdkConfig());
+        for (Listener listener : listeners) {
+          listener.environmentRevived(environment);
+        }
+        environments.put(key, environment);
+        trim();
+      }
+    }
+    return environment;
+  }
+
+  /**
+   * @return True if {@link #get} would return an environment rather than null.
+   */
+  public boolean contains(K key) {
+    if (environments.containsKey(key)) {
+      return true;
+    }
+    ColdEnvironment coldEnvironment = coldEnvironments.get(key);
+    return coldEnvironment != null && coldEnvironment.get() != null;
+  }
+
+  /**
+   * Adds a newly created environment and evicts environments as needed.
+   *
+   * @param nanos The time it took to create the environment.
+   */
+  public void put(K key, SdkEnvironment environment, long nanos) {
+    expungeCollected();
+    boolean reloaded = evictedKeys.remove(key);
+    coldEnvironments.remove(key);
+    environments.put(key, environment);
+    if (reloaded) {
+      Logger.info("Reloaded environment for %s in %dms", environment.getSdkConfig(), nanos / 1000000);
+    }
+    for (Listener listener : listeners) {
+      listener.environmentLoaded(environment, reloaded, nanos);
+    }
+    trim();
+  }
+
+  /**
+   * Evicts least-recently-used environments while there are too many or their estimated heap use is over budget.
+   * Estimates grow as environments load classes, so this is also worth calling when nothing was added.
+   */
+  public void trim() {
+    long totalBytes = 0;
+    if (heapBudget > 0) {
+      for (SdkEnvironment environment : environments.values()) {
+        totalBytes += environment.getEstimatedRetainedBytes();
+      }
+    }
+
+    Iterator<Map.Entry<K, SdkEnvironment>> iterator = environments.entrySet().iterator();
+    while (environments.size() > 1 && (environments.size() > maxSize || heapBudget > 0 && totalBytes > heapBudget)) {
+      Map.Entry<K, SdkEnvironment> eldest = iterator.next();
+      iterator.remove();
+      totalBytes -= evict(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  private long evict(K key, SdkEnvironment environment) {
+    long estimatedBytes = environment.getEstimatedRetainedBytes();
+    evictedKeys.add(key);
+    boolean retained = retention != Retention.NONE;
+    if (retained) {
+      coldEnvironments.put(key, new ColdEnvironment(environment, estimatedBytes));
+    }
+
+    Logger.debug("Evicted environment for %s (about %dMB, %s)", environment.getSdkConfig(), estimatedBytes / (1024 * 1024),
+        retained ? "held " + retention.name().toLowerCase(Locale.ROOT) + "ly" : "dropped");
+    for (Listener listener : listeners) {
+      listener.environmentEvicted(environment, estimatedBytes, retained);
+    }
+    return estimatedBytes;
+  }
+
+  private void expungeCollected() {
+    if (collected.poll() == null) {
+      return;
+    }
+    while (collected.poll() != null) {
+      // Drain the queue; collected entries are found by scanning below.
+    }
+
+    Iterator<ColdEnvironment> iterator = coldEnvironments.values().iterator();
+    while (iterator.hasNext()) {
+      ColdEnvironment coldEnvironment = iterator.next();
+      if (coldEnvironment.get() == null) {
+        iterator.remove();
+        Logger.debug("Collected cold environment for %s", coldEnvironment.sdkConfig);
+        for (Listener listener : listeners) {
+          listener.environmentCollected(coldEnvironment.sdkConfig, coldEnvironment.estimatedBytes);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes every environment, hot or cold, and forgets which keys were evicted.
+   *
+   * @return The environments that are still reachable, by key.
+   */
+  public Map<K, SdkEnvironment> clear() {
+    Map<K, SdkEnvironment> cleared = new HashMap<>();
+    for (Map.Entry<K, ColdEnvironment> entry : coldEnvironments.entrySet()) {
+      SdkEnvironment environment = entry.getValue().get();
+      if (environment != null) {
+        cleared.put(entry.getKey(), environment);
+      }
+    }
+    cleared.putAll(environments);
+    environments.clear();
+    coldEnvironments.clear();
+    evictedKeys.clear();
+    return cleared;
+  }
+
+  /**
+   * @return The keys of the environments held strongly, least recently used first.
+   */
+  public List<K> getHotKeys() {
+    return new ArrayList<>(environments.keySet());
+  }
+
+  private class ColdEnvironment {
+    private final Reference<SdkEnvironment> reference;
+    private final SdkConfig sdkConfig;
+    private final long estimatedBytes;
+
+    ColdEnvironment(SdkEnvironment environment, long estimatedBytes) {
+      this.reference = retention == Retention.WEAK
+          ? new WeakReference<>(environment, collected)
+          : new SoftReference<>(environment, collected);
+      this.sdkConfig = environment.getSdkConfig();
+      this.estimatedBytes = estimatedBytes;
+    }
+
+    SdkEnvironment get() {
+      return reference.get();
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package org.robolectric.internal.bytecode;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Super class, interfaces and access flags of classes visible to an {@link InstrumentingClassLoader}, keyed by
+ * internal name. Used when computing stack map frames, so each class file is read at most once per loader.
+ *
+ * <p>Entries are added as {@link InstrumentingClassLoader} reads classes, and otherwise loaded on demand from the
+ * loader's resources. Safe for use from multiple threads.</p>
+ */
+public class ClassHierarchyIndex {
+  private static final Entry MISSING = new Entry(null, new String[0], 0);
+
+  private final ClassLoader classLoader;
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong resourceReads = new AtomicLong();
+
+  public ClassHierarchyIndex(ClassLoader classLoader) {
+    this.classLoader = classLoader;
+  }
+
+  /**
+   * Records the hierarchy of a class whose bytecode has already been read.
+   *
+   * @param classReader Reader over the class's bytecode.
+   */
+  public void add(ClassReader classReader) {
+    entries.putIfAbsent(classReader.getClassName(), new Entry(classReader));
+  }
+
+  /**
+   * @param internalName Internal name of the class, e.g. {@code android/view/View}.
+   * @return The class's hierarchy.
+   * @throws IOException If the class can't be found.
+   */
+  public Entry get(String internalName) throws IOException {
+    lookups.incrementAndGet();
+    Entry entry = entries.get(internalName);
+    if (entry == null) {
+      entry = read(internalName);
+      Entry existing = entries.putIfAbsent(internalName, entry);
+      if (existing != null) {
+        entry = existing;
+      }
+    }
+
+    if (entry == MISSING) {
+      throw new IOException("Class not found: " + internalName);
+    }
+    return entry;
+  }
+
+  /**
+   * @return The number of lookups made by frame computations.
+   */
+  public long getLookupCount() {
+    return lookups.get();
+  }
+
+  /**
+   * @return The number of class files read because the class wasn't indexed yet.
+   */
+  public long getResourceReadCount() {
+    return resourceReads.get();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private Entry read(String internalName) {
+    resourceReads.incrementAndGet();
+    try (InputStream is = classLoader.getResourceAsStream(internalName + ".class")) {
+      if (is == null) {
+        return MISSING;
+      }
+      return new Entry(new ClassReader(is));
+    } catch (IOException e) {
+      return MISSING;
+    }
+  }
+
+  public static class Entry {
+    private final String superName;
+    private final String[] interfaces;
+    private final int access;
+
+    Entry(ClassReader classReader) {
+      this(classReader.getSuperName(), classReader.getInterfaces(), classReader.getAccess());
+    }
+
+    Entry(String superName, String[] interfaces, int access) {
+      this.superName = superName;
+      this.interfaces = interfaces;
+      this.access = access;
+    }
+
+    public String getSuperName() {
+      return superName;
+    }
+
+    public String[] getInterfaces() {
+      return interfaces;
+    }
+
+    public int getAccess() {
+      return access;
+    }
+  }
+}
@@ -24,6 +24,7 @@ import org.robolectric.res.builder.XmlBlock;
 import org.robolectric.util.TempDirectory;
 import org.robolectric.util.Transcript;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -141,6 +142,7 @@ public class InstrumentationConfiguration {
           "org.specs2",  // allows for android projects with mixed scala\java tests to be
           "scala.",      //  run with Maven Surefire (see the RoboSpecs project on github)
           "kotlin.",
+          "org.robolectric.internal.timing.",
           "com.almworks.sqlite4java" // Fix #958: SQLite native library must be loaded once.
       ));
       classNameTranslations.put("java.net.ExtendedResponseCache", RoboExtendedResponseCache.class.getName());
@@ -168,6 +170,8 @@ public class InstrumentationConfiguration {
   private final Set<String> classesToNotAquire;
   private final Set<String> packagesToNotAquire;
   private int cachedHashCode;
+  private String cachedStableHash;
+  private String cachedStableBaseHash;
 
   private InstrumentationConfiguration(Map<String, String> classNameTranslations, Collection<MethodRef> interceptedMethods, Collection<String> instrumentedPackages, Collection<String> instrumentedClasses, Collection<String> classesToNotAquire, Collection<String> packagesToNotAquire, Collection<String> classesToNotInstrument) {
     this.classNameTranslations = ImmutableMap.copyOf(classNameTranslations);
@@ -266,6 +270,68 @@ public class InstrumentationConfiguration {
     return false;
   }
 
+  /**
+   * Returns a digest of every rule in this configuration. Unlike {@link #hashCode()}, the digest is stable
+   * across JVM runs, so it can be used to key instrumented bytecode persisted to disk.
+   *
+   * @return Hex-encoded SHA-1 digest of this configuration.
+   */
+  public String stableHash() {
+    if (cachedStableHash == null) {
+      cachedStableHash = digest(true);
+    }
+    return cachedStableHash;
+  }
+
+  /**
+   * Like {@link #stableHash()}, but ignores instrumented packages and classes. Those rules only ever add
+   * instrumentation, so a class instrumented under two configurations with the same base hash gets identical bytecode.
+   *
+   * @return Hex-encoded SHA-1 digest of this configuration, excluding instrumented packages and classes.
+   */
+  public String stableBaseHash() {
+    if (cachedStableBaseHash == null) {
+      cachedStableBaseHash = digest(false);
+    }
+    return cachedStableBaseHash;
+  }
+
+  public List<String> instrumentedPackages() {
+    return Collections.unmodifiableList(instrumentedPackages);
+  }
+
+  private String digest(boolean includeInstrumentedPackagesAndClasses) {
+    StringBuilder buf = new StringBuilder();
+    if (includeInstrumentedPackagesAndClasses) {
+      appendSorted(buf, "instrumentedPackages", instrumentedPackages);
+      appendSorted(buf, "instrumentedClasses", instrumentedClasses);
+    }
+    appendSorted(buf, "classesToNotInstrument", classesToNotInstrument);
+    appendSorted(buf, "classesToNotAquire", classesToNotAquire);
+    appendSorted(buf, "packagesToNotAquire", packagesToNotAquire);
+    List<String> methodRefs = new ArrayList<>();
+    for (MethodRef methodRef : interceptedMethods) {
+      methodRefs.add(methodRef.className + "#" + methodRef.methodName);
+    }
+    appendSorted(buf, "interceptedMethods", methodRefs);
+    List<String> translations = new ArrayList<>();
+    for (Map.Entry<String, String> entry : classNameTranslations.entrySet()) {
+      translations.add(entry.getKey() + "=" + entry.getValue());
+    }
+    appendSorted(buf, "classNameTranslations", translations);
+    return InstrumentedClassCache.sha1(buf.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void appendSorted(StringBuilder buf, String name, Collection<String> values) {
+    List<String> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    buf.append(name).append(':');
+    for (String value : sorted) {
+      buf.append(value).append(',');
+    }
+    buf.append('\n');
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
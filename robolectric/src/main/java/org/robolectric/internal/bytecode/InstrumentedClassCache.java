@@ -0,0 +1,361 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of the bytecode produced by {@link InstrumentingClassLoader}, shared by every JVM on the machine.
+ *
+ * <p>Entries are keyed by the Robolectric version, {@link InstrumentationConfiguration#stableHash()}, the
+ * invokedynamic mode, the class name and the content hash of the jar the class was read from (or of the class
+ * bytes themselves, for classes that don't come from a jar). Entries are written to a temporary file and atomically
+ * renamed into place, so concurrent writers from other forks never expose partially written classes.</p>
+ *
+ * <p>The cache is disabled by default. It can be enabled by setting the property:
+ * {@code robolectric.classCache.enabled = true}. Its location and size cap are set with
+ * {@code robolectric.classCache.dir} and {@code robolectric.classCache.maxSizeMb}.</p>
+ */
+public class InstrumentedClassCache {
+  public static final String ENABLED_PROPERTY = "robolectric.classCache.enabled";
+  public static final String DIR_PROPERTY = "robolectric.classCache.dir";
+  public static final String MAX_SIZE_PROPERTY = "robolectric.classCache.maxSizeMb";
+  private static final long DEFAULT_MAX_SIZE_MB = 512;
+
+  private static final int MAGIC = 0x524f424f; // "ROBO"
+  private static final byte FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 4 + 1 + 1 + 8;
+  private static final byte FLAG_UNMODIFIED = 0;
+  private static final byte FLAG_INSTRUMENTED = 1;
+  private static final long TOUCH_INTERVAL_MS = 60 * 60 * 1000;
+
+  private static final Map<String, String> jarHashes = new ConcurrentHashMap<>();
+
+  private final File dir;
+  private final long maxSizeBytes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong writes = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final Object sizeLock = new Object();
+  private long currentSizeBytes = -1;
+
+  public InstrumentedClassCache(File dir, long maxSizeBytes) {
+    this.dir = dir;
+    this.maxSizeBytes = maxSizeBytes;
+  }
+
+  /**
+   * Creates a cache configured from system properties.
+   *
+   * @return The cache, or null if the cache is disabled or its directory can't be created.
+   */
+  public static InstrumentedClassCache fromSystemProperties() {
+    if (!Boolean.getBoolean(ENABLED_PROPERTY)) {
+      return null;
+    }
+
+    File defaultDir = new File(new File(new File(System.getProperty("java.io.tmpdir")), "robolectric"), "instrumented-classes");
+    String dirProperty = System.getProperty(DIR_PROPERTY);
+    File dir = dirProperty == null ? defaultDir : new File(dirProperty);
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      Logger.error("Couldn't create instrumented class cache at %s, continuing without it", dir.getAbsolutePath());
+      return null;
+    }
+
+    long maxSizeMb = Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE_MB);
+    Logger.info("Instrumented class cache location: %s", dir.getAbsolutePath());
+    return new InstrumentedClassCache(dir, maxSizeMb * 1024 * 1024);
+  }
+
+  /**
+   * Computes the cache key for a class.
+   *
+   * @param config        The configuration the class is instrumented with.
+   * @param className     The fully-qualified class name.
+   * @param source        Location the original bytecode was read from, or null if unknown.
+   * @param originalBytes The original bytecode.
+   * @return The cache key.
+   */
+  public String keyFor(InstrumentationConfiguration config, String className, URL source, byte[] originalBytes) {
+    String sourceHash = source == null ? null : jarHash(source);
+    if (sourceHash == null) {
+      sourceHash = sha1(originalBytes);
+    }
+
+    String key = SdkConfig.getRobolectricVersion()
+        + "|" + config.stableHash()
+        + "|" + (InvokeDynamic.ENABLED ? "indy" : "classic")
+        + "|" + className
+        + "|" + sourceHash;
+    return sha1(key.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Loads cached bytecode.
+   *
+   * @param key           Key returned by {@link #keyFor}.
+   * @param originalBytes The original bytecode, returned if the class was cached as not needing instrumentation.
+   * @return The bytecode to define, or null on a cache miss.
+   */
+  public byte[] load(String key, byte[] originalBytes) {
+    File file = fileFor(key);
+    byte[] contents;
+    try {
+      contents = Files.readAllBytes(file.toPath());
+    } catch (IOException e) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(contents);
+    if (contents.length < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.get() != FORMAT_VERSION) {
+      discard(file);
+      return null;
+    }
+
+    byte flag = buffer.get();
+    long expectedCrc = buffer.getLong();
+    CRC32 crc = new CRC32();
+    crc.update(contents, HEADER_SIZE, contents.length - HEADER_SIZE);
+    if (crc.getValue() != expectedCrc) {
+      discard(file);
+      return null;
+    }
+
+    hits.incrementAndGet();
+    long now = System.currentTimeMillis();
+    if (now - file.lastModified() > TOUCH_INTERVAL_MS) {
+      //noinspection ResultOfMethodCallIgnored
+      file.setLastModified(now);
+    }
+
+    if (flag == FLAG_UNMODIFIED) {
+      return originalBytes;
+    }
+    byte[] bytes = new byte[contents.length - HEADER_SIZE];
+    System.arraycopy(contents, HEADER_SIZE, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  /**
+   * Stores bytecode in the cache. Failures are logged and otherwise ignored.
+   *
+   * @param key          Key returned by {@link #keyFor}.
+   * @param bytes        The bytecode to store; ignored if {@code instrumented} is false.
+   * @param instrumented False if the class is defined from its original bytecode.
+   */
+  public void store(String key, byte[] bytes, boolean instrumented) {
+    byte[] body = instrumented ? bytes : new byte[0];
+    CRC32 crc = new CRC32();
+    crc.update(body);
+
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + body.length);
+    buffer.putInt(MAGIC);
+    buffer.put(FORMAT_VERSION);
+    buffer.put(instrumented ? FLAG_INSTRUMENTED : FLAG_UNMODIFIED);
+    buffer.putLong(crc.getValue());
+    buffer.put(body);
+
+    File file = fileFor(key);
+    File parent = file.getParentFile();
+    File tempFile = null;
+    try {
+      if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+        throw new IOException("couldn't create " + parent);
+      }
+      tempFile = File.createTempFile(key, ".tmp", parent);
+      Files.write(tempFile.toPath(), buffer.array());
+      try {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      writes.incrementAndGet();
+      grow(buffer.capacity());
+    } catch (IOException e) {
+      Logger.debug("Couldn't write %s to instrumented class cache: %s", key, e.getMessage());
+      if (tempFile != null) {
+        //noinspection ResultOfMethodCallIgnored
+        tempFile.delete();
+      }
+    }
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getWriteCount() {
+    return writes.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  public File getDirectory() {
+    return dir;
+  }
+
+  @Override
+  public String toString() {
+    return "InstrumentedClassCache{dir=" + dir + ", hits=" + hits + ", misses=" + misses
+        + ", writes=" + writes + ", evictions=" + evictions + "}";
+  }
+
+  private File fileFor(String key) {
+    return new File(new File(dir, key.substring(0, 2)), key + ".class");
+  }
+
+  private void discard(File file) {
+    misses.incrementAndGet();
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  private void grow(long bytes) {
+    synchronized (sizeLock) {
+      if (currentSizeBytes < 0) {
+        currentSizeBytes = 0;
+        for (File file : listEntries()) {
+          currentSizeBytes += file.length();
+        }
+      } else {
+        currentSizeBytes += bytes;
+      }
+
+      if (currentSizeBytes > maxSizeBytes) {
+        evict();
+      }
+    }
+  }
+
+  /**
+   * Deletes the least recently used entries until the cache is at 80% of its cap. Other JVMs may be evicting
+   * at the same time, so deletions which fail are simply skipped.
+   */
+  private void evict() {
+    List<File> entries = listEntries();
+    final Map<File, Long> lastModified = new HashMap<>();
+    long size = 0;
+    for (File entry : entries) {
+      lastModified.put(entry, entry.lastModified());
+      size += entry.length();
+    }
+    Collections.sort(entries, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        return Long.compare(lastModified.get(a), lastModified.get(b));
+      }
+    });
+
+    long target = maxSizeBytes * 8 / 10;
+    for (File entry : entries) {
+      if (size <= target) break;
+      long length = entry.length();
+      if (entry.delete()) {
+        size -= length;
+        evictions.incrementAndGet();
+      }
+    }
+    currentSizeBytes = size;
+  }
+
+  private List<File> listEntries() {
+    List<File> entries = new ArrayList<>();
+    File[] subdirs = dir.listFiles();
+    if (subdirs == null) return entries;
+    for (File subdir : subdirs) {
+      File[] files = subdir.listFiles();
+      if (files == null) continue;
+      for (File file : files) {
+        if (file.getName().endsWith(".class")) {
+          entries.add(file);
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static String jarHash(URL source) {
+    if (!"jar".equals(source.getProtocol())) {
+      return null;
+    }
+
+    File jarFile;
+    try {
+      URL jarUrl = ((JarURLConnection) source.openConnection()).getJarFileURL();
+      if (!"file".equals(jarUrl.getProtocol())) return null;
+      jarFile = new File(jarUrl.toURI());
+    } catch (Exception e) {
+      return null;
+    }
+
+    String jarId = jarFile.getAbsolutePath() + ":" + jarFile.length() + ":" + jarFile.lastModified();
+    String hash = jarHashes.get(jarId);
+    if (hash == null) {
+      try (InputStream in = new FileInputStream(jarFile)) {
+        MessageDigest digest = newSha1();
+        byte[] buffer = new byte[65536];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+          digest.update(buffer, 0, len);
+        }
+        hash = toHex(digest.digest());
+      } catch (IOException e) {
+        return null;
+      }
+      jarHashes.put(jarId, hash);
+    }
+    return hash;
+  }
+
+  static String sha1(byte[] bytes) {
+    return toHex(newSha1().digest(bytes));
+  }
+
+  private static MessageDigest newSha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] digits = "0123456789abcdef".toCharArray();
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+      chars[i * 2 + 1] = digits[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+}
@@ -27,7 +27,10 @@ import org.robolectric.internal.Shadow;
 import org.robolectric.internal.ShadowConstants;
 import org.robolectric.internal.ShadowedObject;
 import org.robolectric.util.Logger;
+import org.robolectric.util.MappedJar;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.CallSite;
@@ -35,6 +38,7 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
@@ -44,6 +48,8 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.lang.invoke.MethodType.methodType;
 import static org.objectweb.asm.Type.ARRAY;
@@ -74,6 +80,8 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
   private static final Handle BOOTSTRAP_INTRINSIC;
 
   static {
+    registerAsParallelCapable();
+
     String className = Type.getInternalName(InvokeDynamicSupport.class);
 
     MethodType boostrap =
@@ -90,15 +98,34 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
   }
 
   private final URLClassLoader urls;
+  private final List<MappedJar> mappedJars;
   private final InstrumentationConfiguration config;
-  private final Map<String, Class> classes = new HashMap<>();
+  private final Map<String, Class> classes = new ConcurrentHashMap<>();
   private final Map<String, String> classesToRemap;
   private final Set<MethodRef> methodsToIntercept;
+  private final InstrumentedClassCache classCache;
+  private final PreinstrumentedJar preinstrumentedJar;
+  private final ClassHierarchyIndex classHierarchyIndex = new ClassHierarchyIndex(this);
+  private final AtomicLong definedByteCount = new AtomicLong();
 
   public InstrumentingClassLoader(InstrumentationConfiguration config, URL... urls) {
+    this(config, null, null, urls);
+  }
+
+  /**
+   * @param config             Instrumentation rules.
+   * @param classCache         Persistent cache of instrumented bytecode, or null.
+   * @param preinstrumentedJar Classes instrumented ahead of time, or null. It must be
+   *                           {@link PreinstrumentedJar#isCompatibleWith compatible} with {@code config}.
+   * @param urls               Classpath to load classes from.
+   */
+  public InstrumentingClassLoader(InstrumentationConfiguration config, InstrumentedClassCache classCache, PreinstrumentedJar preinstrumentedJar, URL... urls) {
     super(InstrumentingClassLoader.class.getClassLoader());
     this.config = config;
+    this.classCache = classCache;
+    this.preinstrumentedJar = preinstrumentedJar;
     this.urls = new URLClassLoader(urls, null);
+    this.mappedJars = mapJars(urls);
     classesToRemap = convertToSlashes(config.classNameTranslations());
     methodsToIntercept = convertToSlashes(config.methodsToIntercept());
     for (URL url : urls) {
@@ -107,36 +134,91 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
   }
 
   @Override
-  synchronized public Class loadClass(String name) throws ClassNotFoundException {
-    Class<?> theClass = classes.get(name);
+  public Class loadClass(String name) throws ClassNotFoundException {
+    Class<?> theClass = getLoadedClass(name);
     if (theClass != null) {
-      if (theClass == MissingClassMarker.class) {
-        throw new ClassNotFoundException(name);
-      } else {
+      return theClass;
+    }
+
+    // Classes with different names are loaded and instrumented concurrently.
+    synchronized (getClassLoadingLock(name)) {
+      theClass = getLoadedClass(name);
+      if (theClass != null) {
         return theClass;
       }
-    }
 
-    try {
-      if (config.shouldAcquire(name)) {
-        theClass = findClass(name);
-      } else {
-        theClass = getParent().loadClass(name);
+      try {
+        if (config.shouldAcquire(name)) {
+          theClass = findClass(name);
+        } else {
+          theClass = getParent().loadClass(name);
+        }
+      } catch (ClassNotFoundException e) {
+        classes.put(name, MissingClassMarker.class);
+        throw e;
       }
-    } catch (ClassNotFoundException e) {
-      classes.put(name, MissingClassMarker.class);
-      throw e;
+
+      classes.put(name, theClass);
+      return theClass;
     }
+  }
 
-    classes.put(name, theClass);
+  private Class<?> getLoadedClass(String name) throws ClassNotFoundException {
+    Class<?> theClass = classes.get(name);
+    if (theClass == MissingClassMarker.class) {
+      throw new ClassNotFoundException(name);
+    }
     return theClass;
   }
 
   private static class MissingClassMarker {
   }
 
+  /**
+   * Maps the classpath if it consists only of jar files, so classes can be read without going through
+   * {@link URLClassLoader}. Returns null otherwise.
+   */
+  private static List<MappedJar> mapJars(URL[] urls) {
+    List<MappedJar> mappedJars = new ArrayList<>();
+    for (URL url : urls) {
+      if (!"file".equals(url.getProtocol()) || !url.getPath().endsWith(".jar")) {
+        return null;
+      }
+
+      try {
+        mappedJars.add(MappedJar.open(new File(url.toURI())));
+      } catch (URISyntaxException | IOException | IllegalArgumentException e) {
+        Logger.debug("Couldn't map %s, falling back to URLClassLoader: %s", url, e.getMessage());
+        return null;
+      }
+    }
+    return mappedJars;
+  }
+
+  private byte[] getMappedBytes(String resName) throws IOException {
+    for (MappedJar mappedJar : mappedJars) {
+      byte[] bytes = mappedJar.getBytes(resName);
+      if (bytes != null) {
+        return bytes;
+      }
+    }
+    return null;
+  }
+
   @Override
   public InputStream getResourceAsStream(String resName) {
+    if (mappedJars != null) {
+      try {
+        byte[] bytes = getMappedBytes(resName);
+        if (bytes != null) {
+          return new ByteArrayInputStream(bytes);
+        }
+      } catch (IOException e) {
+        Logger.error("Couldn't read %s: %s", resName, e.getMessage());
+      }
+      return super.getResourceAsStream(resName);
+    }
+
     InputStream fromUrlsClassLoader = urls.getResourceAsStream(resName);
     if (fromUrlsClassLoader != null)  {
       return fromUrlsClassLoader;
@@ -147,50 +229,112 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
   @Override
   protected Class<?> findClass(final String className) throws ClassNotFoundException {
     if (config.shouldAcquire(className)) {
-      final byte[] origClassBytes = getByteCode(className);
-
-      ClassNode classNode = new ClassNode(Opcodes.ASM4) {
-        @Override
-        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-          desc = remapParamType(desc);
-          return super.visitField(access, name, desc, signature, value);
-        }
-
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-          MethodVisitor methodVisitor = super.visitMethod(access, name, remapParams(desc), signature, exceptions);
-          return new JSRInlinerAdapter(methodVisitor, access, name, desc, signature, exceptions);
-        }
-      };
-
-      final ClassReader classReader = new ClassReader(origClassBytes);
-      classReader.accept(classNode, 0);
-
-      classNode.interfaces.add(Type.getInternalName(ShadowedObject.class));
+      byte[] bytes = preinstrumentedJar == null ? null : preinstrumentedJar.getByteCode(className);
+      if (bytes == null) {
+        bytes = getTransformedByteCode(className);
+      }
 
       try {
-        byte[] bytes;
-        ClassInfo classInfo = new ClassInfo(className, classNode);
-        if (config.shouldInstrument(classInfo)) {
-          bytes = getInstrumentedBytes(classNode, config.containsStubs(classInfo));
-        } else {
-          bytes = origClassBytes;
-        }
         ensurePackage(className);
-        return defineClass(className, bytes, 0, bytes.length);
+        Class<?> definedClass = defineClass(className, bytes, 0, bytes.length);
+        definedByteCount.addAndGet(bytes.length);
+        return definedClass;
       } catch (Exception e) {
         throw new ClassNotFoundException("couldn't load " + className, e);
-      } catch (OutOfMemoryError e) {
-        System.err.println("[ERROR] couldn't load " + className + " in " + this);
-        throw e;
       }
     } else {
       throw new IllegalStateException("how did we get here? " + className);
     }
   }
 
+  /**
+   * @return The total size of the bytecode of the classes this loader has defined itself.
+   */
+  public long getDefinedByteCount() {
+    return definedByteCount.get();
+  }
+
+  /**
+   * Instruments a class without defining it. Used to build pre-instrumented jars.
+   *
+   * @param className The fully-qualified class name.
+   * @return The instrumented bytecode, or null if this loader's configuration doesn't instrument the class.
+   * @throws ClassNotFoundException If the class can't be found or instrumented.
+   */
+  public byte[] getInstrumentedByteCode(String className) throws ClassNotFoundException {
+    byte[] origClassBytes = getByteCode(className);
+    byte[] bytes = transform(className, origClassBytes);
+    return bytes == origClassBytes ? null : bytes;
+  }
+
+  private byte[] getTransformedByteCode(String className) throws ClassNotFoundException {
+    final byte[] origClassBytes = getByteCode(className);
+
+    String cacheKey = null;
+    if (classCache != null) {
+      cacheKey = classCache.keyFor(config, className, getByteCodeSource(className), origClassBytes);
+      byte[] cachedBytes = classCache.load(cacheKey, origClassBytes);
+      if (cachedBytes != null) {
+        return cachedBytes;
+      }
+    }
+
+    byte[] bytes = transform(className, origClassBytes);
+    if (cacheKey != null) {
+      classCache.store(cacheKey, bytes, bytes != origClassBytes);
+    }
+    return bytes;
+  }
+
+  private byte[] transform(final String className, byte[] origClassBytes) throws ClassNotFoundException {
+    ClassNode classNode = new ClassNode(Opcodes.ASM4) {
+      @Override
+      public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        desc = remapParamType(desc);
+        return super.visitField(access, name, desc, signature, value);
+      }
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        MethodVisitor methodVisitor = super.visitMethod(access, name, remapParams(desc), signature, exceptions);
+        return new JSRInlinerAdapter(methodVisitor, access, name, desc, signature, exceptions);
+      }
+    };
+
+    final ClassReader classReader = new ClassReader(origClassBytes);
+    classHierarchyIndex.add(classReader);
+    classReader.accept(classNode, 0);
+
+    classNode.interfaces.add(Type.getInternalName(ShadowedObject.class));
+
+    try {
+      ClassInfo classInfo = new ClassInfo(className, classNode);
+      if (config.shouldInstrument(classInfo)) {
+        return getInstrumentedBytes(classNode, config.containsStubs(classInfo));
+      } else {
+        return origClassBytes;
+      }
+    } catch (Exception e) {
+      throw new ClassNotFoundException("couldn't load " + className, e);
+    } catch (OutOfMemoryError e) {
+      System.err.println("[ERROR] couldn't load " + className + " in " + this);
+      throw e;
+    }
+  }
+
   protected byte[] getByteCode(String className) throws ClassNotFoundException {
     String classFilename = className.replace('.', '/') + ".class";
+    if (mappedJars != null) {
+      try {
+        byte[] bytes = getMappedBytes(classFilename);
+        if (bytes != null) {
+          return bytes;
+        }
+      } catch (IOException e) {
+        throw new ClassNotFoundException("couldn't load " + className, e);
+      }
+    }
+
     try (InputStream classBytesStream = getResourceAsStream(classFilename)) {
       if (classBytesStream == null) throw new ClassNotFoundException(className);
 
@@ -200,13 +344,30 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
     }
   }
 
+  /**
+   * @return The class hierarchy index used to compute stack map frames, e.g. to inspect its lookup counts.
+   */
+  public ClassHierarchyIndex getClassHierarchyIndex() {
+    return classHierarchyIndex;
+  }
+
+  private URL getByteCodeSource(String className) {
+    String classFilename = className.replace('.', '/') + ".class";
+    URL fromUrlsClassLoader = urls.getResource(classFilename);
+    return fromUrlsClassLoader != null ? fromUrlsClassLoader : getResource(classFilename);
+  }
+
   private void ensurePackage(final String className) {
     int lastDotIndex = className.lastIndexOf('.');
     if (lastDotIndex != -1) {
       String pckgName = className.substring(0, lastDotIndex);
       Package pckg = getPackage(pckgName);
       if (pckg == null) {
-        definePackage(pckgName, null, null, null, null, null, null, null);
+        try {
+          definePackage(pckgName, null, null, null, null, null, null, null);
+        } catch (IllegalArgumentException e) {
+          // another thread defined the package first
+        }
       }
     }
   }
@@ -1100,8 +1261,8 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
     @Override
     protected String getCommonSuperClass(final String type1, final String type2) {
       try {
-        ClassReader info1 = typeInfo(type1);
-        ClassReader info2 = typeInfo(type2);
+        ClassHierarchyIndex.Entry info1 = classHierarchyIndex.get(type1);
+        ClassHierarchyIndex.Entry info2 = classHierarchyIndex.get(type2);
         if ((info1.getAccess() & Opcodes.ACC_INTERFACE) != 0) {
           if (typeImplements(type2, info2, type1)) {
             return type1;
@@ -1148,17 +1309,17 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
       }
     }
 
-    private StringBuilder typeAncestors(String type, ClassReader info) throws IOException {
+    private StringBuilder typeAncestors(String type, ClassHierarchyIndex.Entry info) throws IOException {
       StringBuilder b = new StringBuilder();
       while (!"java/lang/Object".equals(type)) {
         b.append(';').append(type);
         type = info.getSuperName();
-        info = typeInfo(type);
+        info = classHierarchyIndex.get(type);
       }
       return b;
     }
 
-    private boolean typeImplements(String type, ClassReader info, String itf) throws IOException {
+    private boolean typeImplements(String type, ClassHierarchyIndex.Entry info, String itf) throws IOException {
       while (!"java/lang/Object".equals(type)) {
         String[] itfs = info.getInterfaces();
         for (String itf2 : itfs) {
@@ -1167,20 +1328,14 @@ public class InstrumentingClassLoader extends ClassLoader implements Opcodes {
           }
         }
         for (String itf1 : itfs) {
-          if (typeImplements(itf1, typeInfo(itf1), itf)) {
+          if (typeImplements(itf1, classHierarchyIndex.get(itf1), itf)) {
             return true;
           }
         }
         type = info.getSuperName();
-        info = typeInfo(type);
+        info = classHierarchyIndex.get(type);
       }
       return false;
     }
-
-    private ClassReader typeInfo(final String type) throws IOException {
-      try (InputStream is = getResourceAsStream(type + ".class")) {
-        return new ClassReader(is);
-      }
-    }
   }
 }
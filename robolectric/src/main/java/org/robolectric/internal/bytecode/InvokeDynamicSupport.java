@@ -114,7 +114,7 @@ public class InvokeDynamicSupport {
   }
 
   private static MethodHandle bindWithFallback(MethodHandle mh, RoboCallSite site, MethodHandle fallback) {
-    SwitchPoint switchPoint = getInvalidator(site.getCaller());
+    SwitchPoint switchPoint = getInvalidator(site);
     MethodType type = site.type();
 
     MethodHandle boundFallback = foldArguments(exactInvoker(type), fallback.bindTo(site));
@@ -124,8 +124,13 @@ public class InvokeDynamicSupport {
     return mh;
   }
 
-  private static SwitchPoint getInvalidator(Class<?> cl) {
-    return RobolectricInternals.getShadowInvalidator().getSwitchPoint(cl);
+  private static SwitchPoint getInvalidator(RoboCallSite site) {
+    ShadowInvalidator invalidator = RobolectricInternals.getShadowInvalidator();
+    if (site instanceof MethodCallSite) {
+      MethodCallSite methodCallSite = (MethodCallSite) site;
+      return invalidator.getSwitchPoint(site.getCaller(), methodCallSite.getName(), site.type());
+    }
+    return invalidator.getSwitchPoint(site.getCaller());
   }
 
   private static MethodHandle cleanStackTraces(MethodHandle mh) {
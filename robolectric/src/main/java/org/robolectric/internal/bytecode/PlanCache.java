@@ -0,0 +1,113 @@
+package org.robolectric.internal.bytecode;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe cache of {@link ClassHandler.Plan}s, keyed by call site signature (e.g.
+ * {@code android/view/View/getWidth()I}). Signatures come from constants in instrumented bytecode, so they're
+ * interned and their hash codes are cached.
+ *
+ * <p>Null plans (i.e. {@link ShadowWrangler#CALL_REAL_CODE_PLAN}) are cached too. Once the cache holds more than
+ * {@code maxSize} plans, arbitrary entries are evicted until it's back to 90% of its maximum size.</p>
+ */
+public class PlanCache {
+  public static final String MAX_SIZE_PROPERTY = "robolectric.planCache.maxSize";
+  public static final int DEFAULT_MAX_SIZE = 20000;
+
+  /** Returned by {@link #get} when no plan has been cached for a signature. */
+  public static final ClassHandler.Plan MISSING = new MarkerPlan();
+
+  private static final ClassHandler.Plan NULL_PLAN = new MarkerPlan();
+
+  private final int maxSize;
+  private final ConcurrentMap<String, ClassHandler.Plan> plans = new ConcurrentHashMap<>();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public PlanCache() {
+    this(Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+  }
+
+  public PlanCache(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @param signature The call site signature.
+   * @return The cached plan, which may be null, or {@link #MISSING} if the plan has to be calculated.
+   */
+  public ClassHandler.Plan get(String signature) {
+    ClassHandler.Plan plan = plans.get(signature);
+    if (plan == null) {
+      misses.incrementAndGet();
+      return MISSING;
+    }
+    hits.incrementAndGet();
+    return plan == NULL_PLAN ? null : plan;
+  }
+
+  /**
+   * @param signature The call site signature.
+   * @param plan      The plan, which may be null.
+   */
+  public void put(String signature, ClassHandler.Plan plan) {
+    plans.put(signature, plan == null ? NULL_PLAN : plan);
+    if (plans.size() > maxSize) {
+      evict();
+    }
+  }
+
+  private void evict() {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      int target = maxSize - maxSize / 10;
+      Iterator<String> iterator = plans.keySet().iterator();
+      while (plans.size() > target && iterator.hasNext()) {
+        iterator.next();
+        iterator.remove();
+        evictions.incrementAndGet();
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int size() {
+    return plans.size();
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  private static class MarkerPlan implements ClassHandler.Plan {
+    @Override
+    public Object run(Object instance, Object roboData, Object[] params) throws Exception {
+      throw new IllegalStateException("not a real plan");
+    }
+  }
+}
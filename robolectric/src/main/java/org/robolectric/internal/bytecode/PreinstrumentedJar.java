@@ -0,0 +1,246 @@
+package org.robolectric.internal.bytecode;
+
+import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.internal.dependency.MavenDependencyResolver;
+import org.robolectric.util.Join;
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.robolectric.util.Util.readBytes;
+
+/**
+ * An android-all jar whose classes were instrumented ahead of time, so {@link InstrumentingClassLoader} can define
+ * them without running ASM.
+ *
+ * <p>The jar only holds classes instrumented by the default {@link InstrumentationConfiguration}. Since instrumented
+ * packages and classes only ever add instrumentation, it can serve any configuration with the same
+ * {@link InstrumentationConfiguration#stableBaseHash() base hash}; classes it doesn't contain, such as those
+ * instrumented because of {@code @Config(shadows=...)} or {@code @Config(instrumentedPackages=...)}, are still
+ * instrumented on the fly.</p>
+ *
+ * <p>Jars are built with {@link #build} (or the {@code robolectric-maven-plugin} {@code preinstrument} goal) and are
+ * looked up in {@code robolectric.preinstrumented.dir}, which defaults to {@code java.io.tmpdir/robolectric/preinstrumented}.</p>
+ */
+public class PreinstrumentedJar {
+  public static final String DIR_PROPERTY = "robolectric.preinstrumented.dir";
+
+  private static final String ROBOLECTRIC_VERSION = "Robolectric-Version";
+  private static final String SOURCE_ARTIFACT = "Robolectric-Source-Artifact";
+  private static final String INVOKEDYNAMIC = "Robolectric-InvokeDynamic";
+  private static final String BASE_HASH = "Robolectric-Instrumentation-Base-Hash";
+  private static final String INSTRUMENTED_PACKAGES = "Robolectric-Instrumented-Packages";
+
+  private static final Map<String, PreinstrumentedJar> openJars = new ConcurrentHashMap<>();
+
+  private final JarFile jarFile;
+  private final Attributes attributes;
+
+  private PreinstrumentedJar(JarFile jarFile) throws IOException {
+    this.jarFile = jarFile;
+    Manifest manifest = jarFile.getManifest();
+    this.attributes = manifest == null ? new Attributes() : manifest.getMainAttributes();
+  }
+
+  /**
+   * Finds the pre-instrumented jar for an SDK.
+   *
+   * @param sdkConfig The SDK.
+   * @param config    The configuration classes will be loaded with.
+   * @return The jar, or null if there is none or it can't be used with {@code config}.
+   */
+  public static PreinstrumentedJar find(SdkConfig sdkConfig, InstrumentationConfiguration config) {
+    File file = new File(getDirectory(), fileNameFor(sdkConfig));
+    if (!file.isFile()) {
+      return null;
+    }
+
+    PreinstrumentedJar jar = openJars.get(file.getAbsolutePath());
+    if (jar == null) {
+      try {
+        jar = new PreinstrumentedJar(new JarFile(file));
+      } catch (IOException e) {
+        Logger.error("Couldn't open pre-instrumented jar %s: %s", file, e.getMessage());
+        return null;
+      }
+      openJars.put(file.getAbsolutePath(), jar);
+    }
+
+    if (!jar.isCompatibleWith(config)) {
+      Logger.debug("Pre-instrumented jar %s doesn't match the current configuration, ignoring it", file);
+      return null;
+    }
+    Logger.debug("Loading pre-instrumented classes from: %s", file);
+    return jar;
+  }
+
+  public static File getDirectory() {
+    String dirProperty = System.getProperty(DIR_PROPERTY);
+    if (dirProperty != null) {
+      return new File(dirProperty);
+    }
+    return new File(new File(new File(System.getProperty("java.io.tmpdir")), "robolectric"), "preinstrumented");
+  }
+
+  public static String fileNameFor(SdkConfig sdkConfig) {
+    return "android-all-" + sdkConfig.getSystemResourceDependency().getVersion() + "-instrumented.jar";
+  }
+
+  /**
+   * Determines if classes in this jar are instrumented exactly as a class loader with the given configuration
+   * would instrument them.
+   *
+   * @param config The configuration to check.
+   * @return True if classes in this jar can be used with {@code config}.
+   */
+  public boolean isCompatibleWith(InstrumentationConfiguration config) {
+    if (!SdkConfig.getRobolectricVersion().equals(attributes.getValue(ROBOLECTRIC_VERSION))
+        || !String.valueOf(InvokeDynamic.ENABLED).equals(attributes.getValue(INVOKEDYNAMIC))
+        || !config.stableBaseHash().equals(attributes.getValue(BASE_HASH))) {
+      return false;
+    }
+
+    String packages = attributes.getValue(INSTRUMENTED_PACKAGES);
+    return packages != null && config.instrumentedPackages().containsAll(Arrays.asList(packages.split(",")));
+  }
+
+  /**
+   * @param className The fully-qualified class name.
+   * @return The pre-instrumented bytecode, or null if this jar doesn't contain the class.
+   */
+  public byte[] getByteCode(String className) throws ClassNotFoundException {
+    JarEntry entry = jarFile.getJarEntry(className.replace('.', '/') + ".class");
+    if (entry == null) {
+      return null;
+    }
+
+    try (InputStream in = jarFile.getInputStream(entry)) {
+      return readBytes(in);
+    } catch (IOException e) {
+      throw new ClassNotFoundException("couldn't load " + className, e);
+    }
+  }
+
+  /**
+   * Instruments every class in an SDK's android-all jar that the default configuration instruments, and writes them
+   * to a jar in {@code outputDir}.
+   *
+   * @param sdkConfig          The SDK to instrument.
+   * @param dependencyResolver Resolver for the SDK's dependencies.
+   * @param outputDir          Directory to write the jar to.
+   * @return The written jar.
+   * @throws IOException If the jar can't be read or written.
+   */
+  public static File build(SdkConfig sdkConfig, DependencyResolver dependencyResolver, File outputDir) throws IOException {
+    InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+    URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
+    InstrumentingClassLoader classLoader = new InstrumentingClassLoader(config, urls);
+
+    File sourceFile;
+    try {
+      sourceFile = new File(dependencyResolver.getLocalArtifactUrl(sdkConfig.getSystemResourceDependency()).toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+
+    if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IOException("couldn't create " + outputDir);
+    }
+
+    Manifest manifest = new Manifest();
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue(ROBOLECTRIC_VERSION, SdkConfig.getRobolectricVersion());
+    attributes.putValue(SOURCE_ARTIFACT, sdkConfig.getSystemResourceDependency().getVersion());
+    attributes.putValue(INVOKEDYNAMIC, String.valueOf(InvokeDynamic.ENABLED));
+    attributes.putValue(BASE_HASH, config.stableBaseHash());
+    attributes.putValue(INSTRUMENTED_PACKAGES, Join.join(",", config.instrumentedPackages()));
+
+    File outputFile = new File(outputDir, fileNameFor(sdkConfig));
+    File tempFile = File.createTempFile(outputFile.getName(), ".tmp", outputDir);
+    int instrumentedCount = 0;
+    int failedCount = 0;
+    try (JarFile source = new JarFile(sourceFile);
+         JarOutputStream out = new JarOutputStream(new FileOutputStream(tempFile), manifest)) {
+      Enumeration<JarEntry> entries = source.entries();
+      while (entries.hasMoreElements()) {
+        String name = entries.nextElement().getName();
+        if (!name.endsWith(".class")) continue;
+
+        String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+        if (!config.shouldAcquire(className)) continue;
+
+        byte[] bytes;
+        try {
+          bytes = classLoader.getInstrumentedByteCode(className);
+        } catch (ClassNotFoundException | RuntimeException e) {
+          failedCount++;
+          continue;
+        }
+
+        if (bytes != null) {
+          out.putNextEntry(new JarEntry(name));
+          out.write(bytes);
+          out.closeEntry();
+          instrumentedCount++;
+        }
+      }
+    } catch (IOException e) {
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete();
+      throw e;
+    }
+
+    Files.move(tempFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    Logger.info("Pre-instrumented %d classes from %s into %s (%d left to instrument at runtime)",
+        instrumentedCount, sourceFile, outputFile, failedCount);
+    return outputFile;
+  }
+
+  /**
+   * Builds pre-instrumented jars from the command line.
+   *
+   * <p>Usage: {@code PreinstrumentedJar <output dir> [api level...]}. If no API levels are given, jars are built for
+   * every supported SDK.</p>
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: PreinstrumentedJar <output dir> [api level...]");
+      System.exit(1);
+    }
+
+    File outputDir = new File(args[0]);
+    List<Integer> apiLevels = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      apiLevels.add(Integer.parseInt(args[i]));
+    }
+    if (apiLevels.isEmpty()) {
+      apiLevels.addAll(SdkConfig.getSupportedApis());
+    }
+
+    DependencyResolver dependencyResolver = new MavenDependencyResolver();
+    for (int apiLevel : apiLevels) {
+      File jar = build(new SdkConfig(apiLevel), dependencyResolver, outputDir);
+      System.out.println("Wrote " + jar);
+    }
+  }
+}
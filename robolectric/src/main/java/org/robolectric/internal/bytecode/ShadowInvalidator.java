@@ -1,43 +1,200 @@
 package org.robolectric.internal.bytecode;
 
+import java.lang.invoke.MethodType;
 import java.lang.invoke.SwitchPoint;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Hands out the {@link SwitchPoint}s guarding invokedynamic call sites, one per (class, method name, method type),
+ * and invalidates them when shadows change so the affected call sites are rebound.
+ */
 public class ShadowInvalidator {
+  /** Member name used for call sites that create shadows. */
+  public static final String SHADOW_CREATOR = "<init>";
+
+  private static final MethodType SHADOW_CREATOR_TYPE = MethodType.methodType(void.class);
   private static final SwitchPoint DUMMY = new SwitchPoint();
 
   static {
     SwitchPoint.invalidateAll(new SwitchPoint[] { DUMMY });
   }
 
-  private Map<String, SwitchPoint> switchPoints;
+  private final Map<String, Map<String, Map<MethodType, SwitchPoint>>> switchPoints;
+  private long rebindCount;
+  private long invalidationCount;
 
   public ShadowInvalidator() {
     this.switchPoints = new HashMap<>();
   }
 
+  /**
+   * @return The switch point guarding shadow creation in {@code caller}.
+   */
   public SwitchPoint getSwitchPoint(Class<?> caller) {
     return getSwitchPoint(caller.getName());
   }
 
-  public synchronized SwitchPoint getSwitchPoint(String className) {
-    SwitchPoint switchPoint = switchPoints.get(className);
-    if (switchPoint == null) switchPoints.put(className, switchPoint = new SwitchPoint());
+  public SwitchPoint getSwitchPoint(String className) {
+    return getSwitchPoint(className, SHADOW_CREATOR, SHADOW_CREATOR_TYPE);
+  }
+
+  /**
+   * @return The switch point guarding calls to the method {@code name} with type {@code type} in {@code caller}.
+   */
+  public SwitchPoint getSwitchPoint(Class<?> caller, String name, MethodType type) {
+    return getSwitchPoint(caller.getName(), name, type);
+  }
+
+  private synchronized SwitchPoint getSwitchPoint(String className, String name, MethodType type) {
+    Map<String, Map<MethodType, SwitchPoint>> classSwitchPoints = switchPoints.get(className);
+    if (classSwitchPoints == null) switchPoints.put(className, classSwitchPoints = new HashMap<>());
+    Map<MethodType, SwitchPoint> methodSwitchPoints = classSwitchPoints.get(name);
+    if (methodSwitchPoints == null) classSwitchPoints.put(name, methodSwitchPoints = new HashMap<>());
+
+    SwitchPoint switchPoint = methodSwitchPoints.get(type);
+    if (switchPoint == null || switchPoint == DUMMY) {
+      if (switchPoint == DUMMY) rebindCount++;
+      methodSwitchPoints.put(type, switchPoint = new SwitchPoint());
+    }
     return switchPoint;
   }
 
+  /**
+   * Invalidates every call site in the given classes.
+   */
   public synchronized void invalidateClasses(Collection<String> classNames) {
-    if (classNames.isEmpty()) return;
-    SwitchPoint[] points = new SwitchPoint[classNames.size()];
-    int i = 0;
+    List<SwitchPoint> points = new ArrayList<>();
     for (String className : classNames) {
-      SwitchPoint switchPoint = switchPoints.put(className, null);
-      if (switchPoint == null) switchPoint = DUMMY;
-      points[i++] = switchPoint;
+      Map<String, Map<MethodType, SwitchPoint>> classSwitchPoints = switchPoints.get(className);
+      if (classSwitchPoints != null) {
+        collect(classSwitchPoints.values(), points);
+      }
+    }
+    invalidate(points);
+  }
+
+  /**
+   * Invalidates the call sites whose shadow lookup may differ between two shadow maps. Only call sites for methods
+   * whose name is shadowed differently are invalidated, unless a change to the class's shadow configuration (e.g.
+   * {@code callThroughByDefault}) affects every method.
+   *
+   * @param previous    The shadow map call sites are currently bound with.
+   * @param current     The shadow map call sites will be bound with.
+   * @param classLoader The class loader the call sites' classes were loaded by.
+   */
+  public synchronized void invalidateChangedMethods(ShadowMap previous, ShadowMap current, ClassLoader classLoader) {
+    List<SwitchPoint> points = new ArrayList<>();
+    for (String className : current.getInvalidatedClasses(previous)) {
+      Map<String, Map<MethodType, SwitchPoint>> classSwitchPoints = switchPoints.get(className);
+      if (classSwitchPoints == null) continue;
+
+      Set<String> changedNames;
+      try {
+        Class<?> clazz = Class.forName(className, false, classLoader);
+        changedNames = getChangedMethodNames(previous.get(clazz), current.get(clazz), classLoader);
+      } catch (ClassNotFoundException | LinkageError e) {
+        changedNames = null;
+      }
+
+      if (changedNames == null) {
+        collect(classSwitchPoints.values(), points);
+      } else {
+        for (String name : changedNames) {
+          Map<MethodType, SwitchPoint> methodSwitchPoints = classSwitchPoints.get(name);
+          if (methodSwitchPoints != null) {
+            collect(Collections.singleton(methodSwitchPoints), points);
+          }
+        }
+      }
+    }
+    invalidate(points);
+  }
+
+  /**
+   * @return The number of call sites rebound because their switch point was invalidated.
+   */
+  public synchronized long getRebindCount() {
+    return rebindCount;
+  }
+
+  /**
+   * @return The number of switch points invalidated.
+   */
+  public synchronized long getInvalidationCount() {
+    return invalidationCount;
+  }
+
+  /**
+   * @return The names of methods whose shadow lookup may differ, or null if it may differ for every method.
+   */
+  private static Set<String> getChangedMethodNames(ShadowConfig previous, ShadowConfig current, ClassLoader classLoader) throws ClassNotFoundException {
+    if (previous == null ? current == null : previous.equals(current)) {
+      return new HashSet<>();
+    }
+
+    Set<String> changedNames = new HashSet<>();
+    changedNames.add(SHADOW_CREATOR);
+    if (previous == null || current == null) {
+      ShadowConfig config = previous == null ? current : previous;
+      if (!config.callThroughByDefault) {
+        return null;
+      }
+      changedNames.addAll(getPublicMethods(config, classLoader).keySet());
+      return changedNames;
+    }
+
+    if (previous.callThroughByDefault != current.callThroughByDefault
+        || previous.inheritImplementationMethods != current.inheritImplementationMethods
+        || previous.looseSignatures != current.looseSignatures) {
+      return null;
+    }
+
+    Map<String, Set<Method>> previousMethods = getPublicMethods(previous, classLoader);
+    Map<String, Set<Method>> currentMethods = getPublicMethods(current, classLoader);
+    Set<String> names = new HashSet<>(previousMethods.keySet());
+    names.addAll(currentMethods.keySet());
+    for (String name : names) {
+      Set<Method> previousOverloads = previousMethods.get(name);
+      Set<Method> currentOverloads = currentMethods.get(name);
+      if (previousOverloads == null || !previousOverloads.equals(currentOverloads)) {
+        changedNames.add(name);
+      }
+    }
+    return changedNames;
+  }
+
+  private static Map<String, Set<Method>> getPublicMethods(ShadowConfig config, ClassLoader classLoader) throws ClassNotFoundException {
+    Map<String, Set<Method>> methods = new HashMap<>();
+    for (Method method : Class.forName(config.shadowClassName, false, classLoader).getMethods()) {
+      Set<Method> overloads = methods.get(method.getName());
+      if (overloads == null) methods.put(method.getName(), overloads = new HashSet<>());
+      overloads.add(method);
     }
+    return methods;
+  }
+
+  private static void collect(Collection<Map<MethodType, SwitchPoint>> methodSwitchPoints, List<SwitchPoint> points) {
+    for (Map<MethodType, SwitchPoint> byType : methodSwitchPoints) {
+      for (Map.Entry<MethodType, SwitchPoint> entry : byType.entrySet()) {
+        if (entry.getValue() != DUMMY) {
+          points.add(entry.getValue());
+          entry.setValue(DUMMY);
+        }
+      }
+    }
+  }
 
-    SwitchPoint.invalidateAll(points);
+  private void invalidate(List<SwitchPoint> points) {
+    if (points.isEmpty()) return;
+    invalidationCount += points.size();
+    SwitchPoint.invalidateAll(points.toArray(new SwitchPoint[points.size()]));
   }
 }
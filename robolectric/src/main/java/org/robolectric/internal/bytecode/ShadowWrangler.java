@@ -39,17 +39,14 @@ public class ShadowWrangler implements ClassHandler {
   public static final MethodHandle DO_NOTHING = constant(Void.class, null).asType(methodType(void.class));
   private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
   private static final boolean STRIP_SHADOW_STACK_TRACES = true;
+  /** Set {@code robolectric.reflectivePlans} to call shadow methods with {@link Method#invoke} instead of method handles. */
+  private static final boolean REFLECTIVE_PLANS = Boolean.getBoolean("robolectric.reflectivePlans");
   private static final ShadowConfig NO_SHADOW_CONFIG = new ShadowConfig(Object.class.getName(), true, false, false);
   private static final Object NO_SHADOW = new Object();
   private static final MethodHandle NO_SHADOW_HANDLE = constant(Object.class, NO_SHADOW);
   private final ShadowMap shadowMap;
   private final Map<Class, MetaShadow> metaShadowMap = new HashMap<>();
-  private final Map<String, Plan> planCache = new LinkedHashMap<String, Plan>() {
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
-      return size() > 500;
-    }
-  };
+  private final PlanCache planCache;
   private final Map<Class, ShadowConfig> shadowConfigCache = new ConcurrentHashMap<>();
   private final ClassValue<ShadowConfig> shadowConfigs = new ClassValue<ShadowConfig>() {
     @Override protected ShadowConfig computeValue(Class<?> type) {
@@ -69,7 +66,12 @@ public class ShadowWrangler implements ClassHandler {
   }
 
   public ShadowWrangler(ShadowMap shadowMap) {
+    this(shadowMap, new PlanCache());
+  }
+
+  public ShadowWrangler(ShadowMap shadowMap, PlanCache planCache) {
     this.shadowMap = shadowMap;
+    this.planCache = planCache;
   }
 
   public static Class<?> loadClass(String paramType, ClassLoader classLoader) {
@@ -126,12 +128,21 @@ public class ShadowWrangler implements ClassHandler {
 
   @Override
   public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
-    if (planCache.containsKey(signature)) return planCache.get(signature);
-    Plan plan = calculatePlan(signature, isStatic, theClass);
-    planCache.put(signature, plan);
+    Plan plan = planCache.get(signature);
+    if (plan == PlanCache.MISSING) {
+      plan = calculatePlan(signature, isStatic, theClass);
+      planCache.put(signature, plan);
+    }
     return plan;
   }
 
+  /**
+   * @return The cache of plans returned by {@link #methodInvoked}, e.g. to inspect its hit and eviction counts.
+   */
+  public PlanCache getPlanCache() {
+    return planCache;
+  }
+
   @Override public MethodHandle findShadowMethod(Class<?> caller, String name, MethodType type,
       boolean isStatic) throws IllegalAccessException {
     ShadowConfig shadowConfig = shadowConfigs.get(caller);
@@ -192,7 +203,7 @@ public class ShadowWrangler implements ClassHandler {
         if (shadowClassMismatch && (!shadowConfig.inheritImplementationMethods || strict(invocationProfile))) {
           return CALL_REAL_CODE_PLAN;
         } else {
-          return new ShadowMethodPlan(shadowMethod);
+          return REFLECTIVE_PLANS ? new ShadowMethodPlan(shadowMethod) : new MethodHandlePlan(shadowMethod);
         }
       } catch (ClassNotFoundException e) {
         throw new RuntimeException(e);
@@ -380,7 +391,7 @@ public class ShadowWrangler implements ClassHandler {
           continue;
         }
 
-        if (className.equals(ShadowMethodPlan.class.getName())) {
+        if (className.equals(ShadowMethodPlan.class.getName()) || className.equals(MethodHandlePlan.class.getName())) {
           continue;
         }
 
@@ -390,7 +401,7 @@ public class ShadowWrangler implements ClassHandler {
               stackTraceElement.getFileName(), stackTraceElement.getLineNumber());
         }
 
-        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.")) {
+        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.") || className.startsWith("java.lang.invoke.")) {
           continue;
         }
 
@@ -524,6 +535,46 @@ public class ShadowWrangler implements ClassHandler {
     }
   }
 
+  /**
+   * Calls a shadow method through a method handle adapted to {@code (Object shadow, Object[] params)}, avoiding
+   * the access checks and argument copying of {@link Method#invoke} on every call.
+   */
+  private static class MethodHandlePlan implements Plan {
+    private final Method shadowMethod;
+    private final MethodHandle methodHandle;
+
+    public MethodHandlePlan(Method shadowMethod) {
+      this.shadowMethod = shadowMethod;
+      shadowMethod.setAccessible(true);
+      try {
+        MethodHandle mh = LOOKUP.unreflect(shadowMethod);
+        if (Modifier.isStatic(shadowMethod.getModifiers())) {
+          mh = dropArguments(mh, 0, Object.class);
+        }
+        int paramCount = shadowMethod.getParameterTypes().length;
+        this.methodHandle = mh.asType(mh.type().generic()).asSpreader(Object[].class, paramCount);
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public Object run(Object instance, Object roboData, Object[] params) throws Throwable {
+      //noinspection UnnecessaryLocalVariable
+      Object shadow = roboData;
+      try {
+        return methodHandle.invokeExact(shadow, params);
+      } catch (ClassCastException e) {
+        if (shadow != null && !Modifier.isStatic(shadowMethod.getModifiers())
+            && !shadowMethod.getDeclaringClass().isInstance(shadow)) {
+          throw new IllegalArgumentException("attempted to invoke " + shadowMethod
+              + " on instance of " + shadow.getClass() + ", but " + shadow.getClass().getSimpleName() + " doesn't extend " + shadowMethod.getDeclaringClass().getSimpleName());
+        }
+        throw e;
+      }
+    }
+  }
+
   private class MetaShadow {
     final List<Field> realObjectFields = new ArrayList<>();
 
@@ -0,0 +1,46 @@
+package org.robolectric.internal.daemon;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+/**
+ * Loads application and test classes from classpath directories before asking its parent, so a new instance sees
+ * class files that changed after the parent loaded them.
+ */
+class ApplicationClassLoader extends URLClassLoader {
+  ApplicationClassLoader(List<File> directories, ClassLoader parent) {
+    super(toUrls(directories), parent);
+  }
+
+  @Override
+  protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    Class<?> theClass = findLoadedClass(name);
+    if (theClass == null) {
+      try {
+        theClass = findClass(name);
+      } catch (ClassNotFoundException e) {
+        return super.loadClass(name, resolve);
+      }
+    }
+
+    if (resolve) {
+      resolveClass(theClass);
+    }
+    return theClass;
+  }
+
+  private static URL[] toUrls(List<File> directories) {
+    URL[] urls = new URL[directories.size()];
+    for (int i = 0; i < urls.length; i++) {
+      try {
+        urls[i] = directories.get(i).toURI().toURL();
+      } catch (MalformedURLException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return urls;
+  }
+}
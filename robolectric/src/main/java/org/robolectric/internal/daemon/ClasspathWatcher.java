@@ -0,0 +1,70 @@
+package org.robolectric.internal.daemon;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detects changes to the class files in a set of classpath directories, by comparing their sizes and modification
+ * times with those seen by the previous check.
+ */
+public class ClasspathWatcher {
+  private final List<File> directories;
+  private Map<String, Long> snapshot;
+
+  public ClasspathWatcher(List<File> directories) {
+    this.directories = new ArrayList<>(directories);
+    this.snapshot = takeSnapshot();
+  }
+
+  /**
+   * @return The directory entries of a classpath string, e.g. {@code java.class.path}.
+   */
+  public static List<File> getDirectories(String classpath) {
+    List<File> directories = new ArrayList<>();
+    for (String entry : classpath.split(File.pathSeparator)) {
+      File file = new File(entry);
+      if (!entry.isEmpty() && file.isDirectory()) {
+        directories.add(file.getAbsoluteFile());
+      }
+    }
+    return directories;
+  }
+
+  public List<File> getDirectories() {
+    return directories;
+  }
+
+  /**
+   * @return True if any class file was added, removed or modified since this watcher was created or last checked.
+   */
+  public synchronized boolean checkForChanges() {
+    Map<String, Long> current = takeSnapshot();
+    boolean changed = !current.equals(snapshot);
+    snapshot = current;
+    return changed;
+  }
+
+  private Map<String, Long> takeSnapshot() {
+    Map<String, Long> files = new HashMap<>();
+    for (File directory : directories) {
+      scan(directory, files);
+    }
+    return files;
+  }
+
+  private static void scan(File directory, Map<String, Long> files) {
+    File[] children = directory.listFiles();
+    if (children == null) return;
+
+    for (File child : children) {
+      if (child.isDirectory()) {
+        scan(child, files);
+      } else if (child.getName().endsWith(".class")) {
+        files.put(child.getPath(), child.lastModified() * 31 + child.length());
+      }
+    }
+  }
+}
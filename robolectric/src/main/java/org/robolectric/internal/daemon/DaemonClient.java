@@ -0,0 +1,72 @@
+package org.robolectric.internal.daemon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs tests in a {@link WorkerDaemon} and prints their results.
+ *
+ * <p>Usage: {@code DaemonClient <test class>...}, or {@code DaemonClient STOP} to shut the daemon down. Exits with
+ * status 0 if every test passed, 1 if any failed and 2 if the daemon couldn't be reached.</p>
+ */
+public class DaemonClient {
+  private final int port;
+
+  public DaemonClient(int port) {
+    this.port = port;
+  }
+
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println("Usage: DaemonClient <test class>...");
+      System.exit(2);
+    }
+
+    try {
+      boolean passed = new DaemonClient(WorkerDaemon.getPort()).run(Arrays.asList(args), System.out);
+      System.exit(passed ? 0 : 1);
+    } catch (IOException e) {
+      System.err.println("Can't reach the Robolectric daemon on port " + WorkerDaemon.getPort() + ": " + e);
+      System.exit(2);
+    }
+  }
+
+  /**
+   * Sends test classes to the daemon and copies its report to {@code out}.
+   *
+   * @return True if every test passed.
+   */
+  public boolean run(List<String> classNames, PrintStream out) throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      for (String className : classNames) {
+        writer.println(className);
+      }
+      writer.println();
+      writer.flush();
+
+      BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      boolean passed = true;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        out.println(line);
+        if (line.startsWith("ERROR ")) {
+          passed = false;
+        } else if (line.startsWith("DONE ")) {
+          String[] counts = line.split(" ");
+          return passed && Integer.parseInt(counts[2]) == 0;
+        }
+      }
+      throw new IOException("daemon closed the connection before finishing");
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package org.robolectric.internal.daemon;
+
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.InstrumentingClassLoaderFactory;
+import org.robolectric.internal.bytecode.InstrumentedClassCache;
+import org.robolectric.res.ResourceTableCache;
+import org.robolectric.util.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A long-lived JVM that runs tests on request, keeping Robolectric's {@link org.robolectric.internal.SdkEnvironment}s,
+ * instrumented classes and system resources warm between runs.
+ *
+ * <p>Start it with the test classpath: {@code java -cp <test classpath> org.robolectric.internal.daemon.WorkerDaemon},
+ * then run tests with {@link DaemonClient}. It listens on the loopback interface only, on the port given by
+ * {@code robolectric.daemon.port}.</p>
+ *
+ * <p>Before each run, the classpath directories (i.e. compiled application and test classes) are checked for changes.
+ * If any class file changed, the application and instrumenting class loaders are discarded and recreated. The
+ * framework is loaded by the same instrumenting class loaders as the tests, so its classes are defined again, but the
+ * daemon always enables the instrumented class cache ({@code robolectric.classCache.enabled}), so they aren't
+ * instrumented again. System resources are kept, and application resources are reloaded through the resource table
+ * cache ({@code robolectric.resourceCache.enabled}), which only parses the files that changed.</p>
+ *
+ * <p>Protocol: the client sends test class names, one per line, followed by an empty line. The daemon replies with
+ * {@code STARTED}, {@code FAILED}, {@code IGNORED} and {@code FINISHED} lines followed by the test's display name,
+ * failure traces as lines starting with a tab, and finally {@code DONE <run> <failed> <ignored> <millis>}. A request
+ * of {@code STOP} shuts the daemon down.</p>
+ */
+public class WorkerDaemon {
+  public static final String PORT_PROPERTY = "robolectric.daemon.port";
+  public static final int DEFAULT_PORT = 47117;
+
+  static final String STOP = "STOP";
+
+  private final ClasspathWatcher classpathWatcher;
+  private ClassLoader applicationClassLoader;
+
+  public WorkerDaemon(ClasspathWatcher classpathWatcher) {
+    this.classpathWatcher = classpathWatcher;
+    this.applicationClassLoader = newApplicationClassLoader();
+  }
+
+  public static int getPort() {
+    return Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+  }
+
+  public static void main(String[] args) throws IOException {
+    // Reloading recreates the instrumenting class loaders and application resource loaders; with these caches they
+    // don't instrument the framework or parse unchanged resources again.
+    System.setProperty(InstrumentedClassCache.ENABLED_PROPERTY, "true");
+    System.setProperty(ResourceTableCache.ENABLED_PROPERTY, "true");
+
+    List<File> directories = ClasspathWatcher.getDirectories(System.getProperty("java.class.path"));
+    directories.remove(getCodeSource(RobolectricTestRunner.class));
+    directories.remove(getCodeSource(JUnitCore.class));
+
+    WorkerDaemon daemon = new WorkerDaemon(new ClasspathWatcher(directories));
+    try (ServerSocket serverSocket = new ServerSocket(getPort(), 0, InetAddress.getLoopbackAddress())) {
+      Logger.info("Robolectric daemon listening on port %d", serverSocket.getLocalPort());
+      daemon.serve(serverSocket);
+    }
+  }
+
+  /**
+   * Handles connections one at a time until a client asks the daemon to stop.
+   */
+  public void serve(ServerSocket serverSocket) throws IOException {
+    while (true) {
+      try (Socket socket = serverSocket.accept()) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+        List<String> classNames = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+          classNames.add(line.trim());
+        }
+
+        if (classNames.contains(STOP)) {
+          out.println("DONE 0 0 0 0");
+          out.flush();
+          return;
+        }
+
+        run(classNames, out);
+        out.flush();
+      } catch (IOException e) {
+        Logger.error("Robolectric daemon connection failed: %s", e);
+      }
+    }
+  }
+
+  /**
+   * Runs test classes, reporting their results to {@code out}.
+   */
+  public synchronized Result run(List<String> classNames, final PrintWriter out) {
+    if (classpathWatcher.checkForChanges()) {
+      Logger.info("Application classes changed, reloading");
+      InstrumentingClassLoaderFactory.discardClassLoaders();
+      RobolectricTestRunner.clearCachedResources();
+      applicationClassLoader = newApplicationClassLoader();
+    }
+
+    List<Class<?>> classes = new ArrayList<>();
+    for (String className : classNames) {
+      try {
+        classes.add(applicationClassLoader.loadClass(className));
+      } catch (ClassNotFoundException | LinkageError e) {
+        out.println("ERROR can't load " + className + ": " + e);
+      }
+    }
+
+    JUnitCore junitCore = new JUnitCore();
+    junitCore.addListener(new RunListener() {
+      @Override
+      public void testStarted(Description description) {
+        out.println("STARTED " + description.getDisplayName());
+      }
+
+      @Override
+      public void testFailure(Failure failure) {
+        out.println("FAILED " + failure.getDescription().getDisplayName());
+        for (String traceLine : failure.getTrace().split("\n")) {
+          out.println("\t" + traceLine);
+        }
+      }
+
+      @Override
+      public void testIgnored(Description description) {
+        out.println("IGNORED " + description.getDisplayName());
+      }
+
+      @Override
+      public void testFinished(Description description) {
+        out.println("FINISHED " + description.getDisplayName());
+        out.flush();
+      }
+    });
+
+    ClassLoader originalContextClassLoader = Thread.currentThread().getContextClassLoader();
+    Thread.currentThread().setContextClassLoader(applicationClassLoader);
+    try {
+      Result result = junitCore.run(Request.classes(classes.toArray(new Class<?>[classes.size()])));
+      out.println("DONE " + result.getRunCount() + " " + result.getFailureCount() + " " + result.getIgnoreCount() + " " + result.getRunTime());
+      return result;
+    } finally {
+      Thread.currentThread().setContextClassLoader(originalContextClassLoader);
+    }
+  }
+
+  private ClassLoader newApplicationClassLoader() {
+    return new ApplicationClassLoader(classpathWatcher.getDirectories(), WorkerDaemon.class.getClassLoader());
+  }
+
+  private static File getCodeSource(Class<?> clazz) {
+    CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+    if (codeSource == null || codeSource.getLocation() == null) {
+      return null;
+    }
+
+    try {
+      return new File(codeSource.getLocation().toURI()).getAbsoluteFile();
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+}
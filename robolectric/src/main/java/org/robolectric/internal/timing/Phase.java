@@ -0,0 +1,27 @@
+package org.robolectric.internal.timing;
+
+/**
+ * The phases of running a Robolectric test that {@link TestTimeline}s record. Phases may nest; e.g.
+ * {@link #APP_RESOURCE_LOADER} happens during {@link #SET_UP_APPLICATION_STATE}.
+ */
+public enum Phase {
+  APP_MANIFEST("getAppManifest"),
+  SDK_ENVIRONMENT("getSdkEnvironment"),
+  CONFIGURE_SHADOWS("configureShadows"),
+  SYSTEM_RESOURCE_LOADER("getSystemResourceLoader"),
+  APP_RESOURCE_LOADER("getAppResourceLoader"),
+  SET_UP_APPLICATION_STATE("setUpApplicationState"),
+  TEST("test"),
+  TEAR_DOWN_APPLICATION("tearDownApplication"),
+  RESET_STATIC_STATE("resetStaticState");
+
+  private final String displayName;
+
+  Phase(String displayName) {
+    this.displayName = displayName;
+  }
+
+  public String getDisplayName() {
+    return displayName;
+  }
+}
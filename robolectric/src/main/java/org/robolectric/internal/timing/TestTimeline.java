@@ -0,0 +1,155 @@
+package org.robolectric.internal.timing;
+
+import org.junit.runner.Description;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The phases of a single test run, with their start times and durations. The runner keeps the timeline of the test
+ * running on the current thread available through {@link #current()}, so nested phases can be recorded too.
+ */
+public class TestTimeline {
+  private static final ThreadLocal<TestTimeline> current = new ThreadLocal<>();
+
+  private final String testClassName;
+  private final Description description;
+  private final String threadName;
+  private final long threadId;
+  private final long startNanos;
+  private final List<Span> spans = new ArrayList<>();
+  private long endNanos;
+
+  /**
+   * @param testClassName The name of the test class, which the description's class name may not be, e.g. for
+   *                      parameterized tests.
+   * @param description   The test's description.
+   */
+  public TestTimeline(String testClassName, Description description) {
+    this.testClassName = testClassName;
+    this.description = description;
+    this.threadName = Thread.currentThread().getName();
+    this.threadId = Thread.currentThread().getId();
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Starts a timeline for the current thread's test.
+   */
+  public static TestTimeline start(String testClassName, Description description) {
+    TestTimeline timeline = new TestTimeline(testClassName, description);
+    current.set(timeline);
+    return timeline;
+  }
+
+  /**
+   * @return The timeline of the test running on the current thread, or null if there isn't one.
+   */
+  public static TestTimeline current() {
+    return current.get();
+  }
+
+  /**
+   * Ends this timeline and passes it to the registered {@link TimingListener}s.
+   */
+  public void finish() {
+    endNanos = System.nanoTime();
+    if (current.get() == this) {
+      current.remove();
+    }
+    Timings.testTimed(this);
+  }
+
+  /**
+   * Records a phase that started at {@code startNanos} and ends now.
+   *
+   * @param phase      The phase.
+   * @param startNanos The {@link System#nanoTime()} at which the phase started.
+   * @param detail     Extra information about the phase, e.g. whether a cache was hit, or null.
+   */
+  public synchronized void record(Phase phase, long startNanos, String detail) {
+    spans.add(new Span(phase, startNanos, System.nanoTime() - startNanos, detail));
+  }
+
+  /**
+   * Records a phase in the timeline of the current thread's test, if there is one.
+   */
+  public static void recordCurrent(Phase phase, long startNanos, String detail) {
+    TestTimeline timeline = current();
+    if (timeline != null) {
+      timeline.record(phase, startNanos, detail);
+    }
+  }
+
+  public String getTestClassName() {
+    return testClassName;
+  }
+
+  public Description getDescription() {
+    return description;
+  }
+
+  public String getThreadName() {
+    return threadName;
+  }
+
+  public long getThreadId() {
+    return threadId;
+  }
+
+  public long getStartNanos() {
+    return startNanos;
+  }
+
+  public long getDurationNanos() {
+    return endNanos - startNanos;
+  }
+
+  /**
+   * @return The time between the start of the test and the start of its body, or the whole test if the body didn't
+   *     run.
+   */
+  public synchronized long getSetUpNanos() {
+    for (Span span : spans) {
+      if (span.getPhase() == Phase.TEST) {
+        return span.getStartNanos() - startNanos;
+      }
+    }
+    return getDurationNanos();
+  }
+
+  public synchronized List<Span> getSpans() {
+    return Collections.unmodifiableList(new ArrayList<>(spans));
+  }
+
+  public static class Span {
+    private final Phase phase;
+    private final long startNanos;
+    private final long durationNanos;
+    private final String detail;
+
+    Span(Phase phase, long startNanos, long durationNanos, String detail) {
+      this.phase = phase;
+      this.startNanos = startNanos;
+      this.durationNanos = durationNanos;
+      this.detail = detail;
+    }
+
+    public Phase getPhase() {
+      return phase;
+    }
+
+    public long getStartNanos() {
+      return startNanos;
+    }
+
+    public long getDurationNanos() {
+      return durationNanos;
+    }
+
+    public String getDetail() {
+      return detail;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package org.robolectric.internal.timing;
+
+import org.robolectric.util.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the timelines of each test class to {@code <class name>.trace.json} in the Chrome trace event format (open
+ * it in {@code chrome://tracing}), and keeps {@code timing-summary.json} up to date with a {@link TimingHistogram} of
+ * every test run so far.
+ *
+ * <p>Trace files use the format's JSON array form, which may be left unterminated, so the timelines of runners that
+ * split a class up, e.g. by API level, are appended to the same file as each part finishes.</p>
+ */
+public class TimingFileWriter implements TimingListener {
+  private final File directory;
+  private final TimingHistogram histogram = new TimingHistogram();
+  private final Map<String, List<TestTimeline>> timelinesByClass = new HashMap<>();
+  private final Set<String> tracedClasses = new HashSet<>();
+  private long originNanos = Long.MIN_VALUE;
+
+  public TimingFileWriter(File directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public synchronized void testTimed(TestTimeline timeline) {
+    if (originNanos == Long.MIN_VALUE) {
+      originNanos = timeline.getStartNanos();
+    }
+
+    String className = timeline.getTestClassName();
+    List<TestTimeline> timelines = timelinesByClass.get(className);
+    if (timelines == null) {
+      timelinesByClass.put(className, timelines = new ArrayList<>());
+    }
+    timelines.add(timeline);
+    histogram.testTimed(timeline);
+  }
+
+  @Override
+  public synchronized void testClassFinished(String testClassName) {
+    List<TestTimeline> timelines = timelinesByClass.remove(testClassName);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Logger.error("Can't create timing directory %s", directory);
+      return;
+    }
+
+    try {
+      if (timelines != null) {
+        boolean append = !tracedClasses.add(testClassName);
+        write(new File(directory, testClassName + ".trace.json"), toChromeTrace(timelines, append), append);
+      }
+      write(new File(directory, "timing-summary.json"), histogram.toJson(), false);
+    } catch (IOException e) {
+      Logger.error("Can't write timings to %s: %s", directory, e);
+    }
+  }
+
+  private String toChromeTrace(List<TestTimeline> timelines, boolean append) {
+    StringBuilder json = new StringBuilder(append ? "" : "[\n");
+    String separator = append ? ",\n" : "";
+    for (TestTimeline timeline : timelines) {
+      json.append(separator);
+      appendEvent(json, timeline.getDescription().getDisplayName(), "test", timeline.getThreadId(),
+          timeline.getStartNanos(), timeline.getDurationNanos(), null);
+      for (TestTimeline.Span span : timeline.getSpans()) {
+        json.append(",\n");
+        appendEvent(json, span.getPhase().getDisplayName(), "phase", timeline.getThreadId(),
+            span.getStartNanos(), span.getDurationNanos(), span.getDetail());
+      }
+      separator = ",\n";
+    }
+    return json.toString();
+  }
+
+  private void appendEvent(StringBuilder json, String name, String category, long threadId, long startNanos, long durationNanos, String detail) {
+    json.append("{\"name\": ").append(quote(name))
+        .append(", \"cat\": ").append(quote(category))
+        .append(", \"ph\": \"X\", \"pid\": 1, \"tid\": ").append(threadId)
+        .append(", \"ts\": ").append((startNanos - originNanos) / 1000)
+        .append(", \"dur\": ").append(durationNanos / 1000);
+    if (detail != null) {
+      json.append(", \"args\": {\"detail\": ").append(quote(detail)).append("}");
+    }
+    json.append("}");
+  }
+
+  private static void write(File file, String contents, boolean append) throws IOException {
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8)) {
+      writer.write(contents);
+    }
+  }
+
+  static String quote(String string) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      switch (c) {
+        case '"':
+          quoted.append("\\\"");
+          break;
+        case '\\':
+          quoted.append("\\\\");
+          break;
+        case '\n':
+          quoted.append("\\n");
+          break;
+        case '\t':
+          quoted.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            quoted.append(String.format("\\u%04x", (int) c));
+          } else {
+            quoted.append(c);
+          }
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
@@ -0,0 +1,135 @@
+package org.robolectric.internal.timing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates {@link TestTimeline}s into per-phase histograms, and keeps the tests with the slowest set up.
+ * Histogram buckets are powers of two: bucket 0 counts durations under 1 ms, and bucket {@code n} counts durations
+ * of at least 2<sup>n-1</sup> ms and under 2<sup>n</sup> ms. The last bucket counts everything longer.
+ */
+public class TimingHistogram implements TimingListener {
+  public static final int BUCKET_COUNT = 18;
+  private static final int SLOWEST_SET_UP_COUNT = 10;
+
+  private final Map<Phase, Stats> phaseStats = new EnumMap<>(Phase.class);
+  private final Stats setUpStats = new Stats();
+  private final List<TestTimeline> slowestSetUps = new ArrayList<>();
+
+  @Override
+  public synchronized void testTimed(TestTimeline timeline) {
+    for (TestTimeline.Span span : timeline.getSpans()) {
+      Stats stats = phaseStats.get(span.getPhase());
+      if (stats == null) {
+        phaseStats.put(span.getPhase(), stats = new Stats());
+      }
+      stats.add(span.getDurationNanos(), span.getDetail());
+    }
+    setUpStats.add(timeline.getSetUpNanos(), null);
+
+    slowestSetUps.add(timeline);
+    Collections.sort(slowestSetUps, new Comparator<TestTimeline>() {
+      @Override
+      public int compare(TestTimeline o1, TestTimeline o2) {
+        return Long.compare(o2.getSetUpNanos(), o1.getSetUpNanos());
+      }
+    });
+    if (slowestSetUps.size() > SLOWEST_SET_UP_COUNT) {
+      slowestSetUps.remove(SLOWEST_SET_UP_COUNT);
+    }
+  }
+
+  @Override
+  public void testClassFinished(String testClassName) {
+  }
+
+  /**
+   * @return The number of times a phase took a duration in each bucket.
+   */
+  public synchronized long[] getBuckets(Phase phase) {
+    Stats stats = phaseStats.get(phase);
+    return stats == null ? new long[BUCKET_COUNT] : stats.buckets.clone();
+  }
+
+  public synchronized long getCount(Phase phase) {
+    Stats stats = phaseStats.get(phase);
+    return stats == null ? 0 : stats.count;
+  }
+
+  public synchronized String toJson() {
+    StringBuilder json = new StringBuilder("{\n  \"phases\": {");
+    String separator = "\n";
+    for (Map.Entry<Phase, Stats> entry : phaseStats.entrySet()) {
+      json.append(separator).append("    ").append(TimingFileWriter.quote(entry.getKey().getDisplayName())).append(": ");
+      entry.getValue().appendJson(json);
+      separator = ",\n";
+    }
+    json.append("\n  },\n  \"setUp\": ");
+    setUpStats.appendJson(json);
+    json.append(",\n  \"slowestSetUps\": [");
+    separator = "\n";
+    for (TestTimeline timeline : slowestSetUps) {
+      json.append(separator).append("    {\"test\": ").append(TimingFileWriter.quote(timeline.getDescription().getDisplayName()))
+          .append(", \"setUpMs\": ").append(toMillis(timeline.getSetUpNanos())).append("}");
+      separator = ",\n";
+    }
+    json.append("\n  ]\n}\n");
+    return json.toString();
+  }
+
+  static int bucketFor(long nanos) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int bucket = 64 - Long.numberOfLeadingZeros(millis);
+    return Math.min(bucket, BUCKET_COUNT - 1);
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1000 / 1000.0;
+  }
+
+  private static class Stats {
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private final Map<String, Long> details = new TreeMap<>();
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    void add(long nanos, String detail) {
+      buckets[bucketFor(nanos)]++;
+      count++;
+      totalNanos += nanos;
+      maxNanos = Math.max(maxNanos, nanos);
+      if (detail != null) {
+        Long detailCount = details.get(detail);
+        details.put(detail, detailCount == null ? 1 : detailCount + 1);
+      }
+    }
+
+    void appendJson(StringBuilder json) {
+      json.append("{\"count\": ").append(count)
+          .append(", \"totalMs\": ").append(toMillis(totalNanos))
+          .append(", \"maxMs\": ").append(toMillis(maxNanos))
+          .append(", \"buckets\": [");
+      for (int i = 0; i < buckets.length; i++) {
+        json.append(i == 0 ? "" : ", ").append(buckets[i]);
+      }
+      json.append("]");
+      if (!details.isEmpty()) {
+        json.append(", \"details\": {");
+        String separator = "";
+        for (Map.Entry<String, Long> entry : details.entrySet()) {
+          json.append(separator).append(TimingFileWriter.quote(entry.getKey())).append(": ").append(entry.getValue());
+          separator = ", ";
+        }
+        json.append("}");
+      }
+      json.append("}");
+    }
+  }
+}
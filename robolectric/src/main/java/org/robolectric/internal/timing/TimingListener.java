@@ -0,0 +1,20 @@
+package org.robolectric.internal.timing;
+
+/**
+ * Receives the {@link TestTimeline}s of Robolectric tests. Register with {@link Timings#addListener}. Listeners may
+ * be called concurrently when tests run in parallel.
+ */
+public interface TimingListener {
+  /**
+   * Called when a test has finished.
+   */
+  void testTimed(TestTimeline timeline);
+
+  /**
+   * Called when a runner has finished the tests of a test class. Runners that split a class up, e.g. by API level,
+   * call this once for each part.
+   *
+   * @param testClassName The name of the test class, as given by {@link TestTimeline#getTestClassName()}.
+   */
+  void testClassFinished(String testClassName);
+}
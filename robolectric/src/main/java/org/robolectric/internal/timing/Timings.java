@@ -0,0 +1,42 @@
+package org.robolectric.internal.timing;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The registry of {@link TimingListener}s. If {@code robolectric.timing.dir} is set, a {@link TimingFileWriter}
+ * writing to that directory is registered automatically.
+ */
+public class Timings {
+  public static final String TIMING_DIR_PROPERTY = "robolectric.timing.dir";
+
+  private static final List<TimingListener> listeners = new CopyOnWriteArrayList<>();
+
+  static {
+    String timingDir = System.getProperty(TIMING_DIR_PROPERTY);
+    if (timingDir != null) {
+      listeners.add(new TimingFileWriter(new File(timingDir)));
+    }
+  }
+
+  public static void addListener(TimingListener listener) {
+    listeners.add(listener);
+  }
+
+  public static void removeListener(TimingListener listener) {
+    listeners.remove(listener);
+  }
+
+  static void testTimed(TestTimeline timeline) {
+    for (TimingListener listener : listeners) {
+      listener.testTimed(timeline);
+    }
+  }
+
+  public static void testClassFinished(String testClassName) {
+    for (TimingListener listener : listeners) {
+      listener.testClassFinished(testClassName);
+    }
+  }
+}
@@ -3,15 +3,24 @@ package org.robolectric;
 import android.os.Build;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.Description;
 import org.junit.runner.RunWith;
 import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.JUnit4;
 import org.robolectric.annotation.Config;
 import org.robolectric.internal.SdkConfig;
+import org.robolectric.internal.timing.TimingFileWriter;
+import org.robolectric.internal.timing.Timings;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
@@ -23,6 +32,8 @@ import static org.mockito.Mockito.verify;
 @RunWith(JUnit4.class)
 public class MultiApiRobolectricTestRunnerTest {
 
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private int numSupportedApis;
 
   @Before
@@ -86,6 +97,44 @@ public class MultiApiRobolectricTestRunnerTest {
     verify(runListener, times(5)).testFinished(any(Description.class));
   }
 
+  @Test
+  public void concurrentApis_shouldReportEveryApi() throws Throwable {
+    System.setProperty(MultiApiRobolectricTestRunner.THREADS_PROPERTY, "0");
+    MultiApiRobolectricTestRunner runner;
+    try {
+      runner = new MultiApiRobolectricTestRunner(TestWithMethodConfig.class);
+    } finally {
+      System.clearProperty(MultiApiRobolectricTestRunner.THREADS_PROPERTY);
+    }
+
+    RunNotifier runNotifier = new RunNotifier();
+    RunListener runListener = mock(RunListener.class);
+    runNotifier.addListener(runListener);
+    runner.run(runNotifier);
+
+    verify(runListener, never()).testFailure(any(Failure.class));
+    verify(runListener, times(5)).testStarted(any(Description.class));
+    verify(runListener, times(5)).testFinished(any(Description.class));
+  }
+
+  @Test
+  public void shouldWriteOneTraceForAllApis() throws Throwable {
+    File directory = temporaryFolder.newFolder("timings");
+    TimingFileWriter timingFileWriter = new TimingFileWriter(directory);
+    Timings.addListener(timingFileWriter);
+    try {
+      new MultiApiRobolectricTestRunner(TestWithNoConfig.class).run(new RunNotifier());
+    } finally {
+      Timings.removeListener(timingFileWriter);
+    }
+
+    File trace = new File(directory, TestWithNoConfig.class.getName() + ".trace.json");
+    String json = new String(Files.readAllBytes(trace.toPath()), StandardCharsets.UTF_8);
+    for (Integer apiLevel : SdkConfig.getSupportedApis()) {
+      assertThat(json).contains("\"test[" + apiLevel + "](" + TestWithNoConfig.class.getName() + ")\"");
+    }
+  }
+
   @RunWith(MultiApiRobolectricTestRunner.class)
   public class TestWithNoConfig {
 
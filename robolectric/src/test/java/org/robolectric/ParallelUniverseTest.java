@@ -14,10 +14,12 @@ import android.content.res.Configuration;
 import org.robolectric.annotation.Config;
 import org.robolectric.internal.ParallelUniverse;
 import org.robolectric.internal.SdkConfig;
+import org.robolectric.manifest.AndroidManifest;
 import org.robolectric.res.builder.RobolectricPackageManager;
 import org.robolectric.shadows.ShadowApplication;
 import org.robolectric.shadows.ShadowLooper;
 
+import java.lang.reflect.Method;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -156,6 +158,77 @@ public class ParallelUniverseTest {
     verify(RuntimeEnvironment.application).onTerminate();
   }
   
+  @Test
+  public void setUpApplicationState_withSnapshots_shouldRestoreTheApplicationForTheSameConfig() {
+    CountingTestLifecycle testLifecycle = new CountingTestLifecycle();
+    Config config = configWith("xlarge", "org.robolectric");
+
+    withSnapshots(testLifecycle, config, config);
+
+    assertThat(testLifecycle.createdApplications).isEqualTo(1);
+    assertThat(CountingApplication.onCreateCalls).isEqualTo(1);
+    assertThat(RuntimeEnvironment.application).isInstanceOf(CountingApplication.class);
+    assertThat(((CountingApplication) RuntimeEnvironment.application).created).isTrue();
+  }
+
+  @Test
+  public void setUpApplicationState_withSnapshots_shouldNotRestoreTheApplicationForOtherQualifiers() {
+    CountingTestLifecycle testLifecycle = new CountingTestLifecycle();
+
+    withSnapshots(testLifecycle, configWith("small", "org.robolectric"), configWith("normal", "org.robolectric"));
+
+    assertThat(testLifecycle.createdApplications).isEqualTo(2);
+    assertThat(CountingApplication.onCreateCalls).isEqualTo(2);
+  }
+
+  @Test
+  public void setUpApplicationState_withSnapshots_shouldNotRestoreTheApplicationForAnotherConfig() {
+    CountingTestLifecycle testLifecycle = new CountingTestLifecycle();
+
+    withSnapshots(testLifecycle, configWith("large", "org.robolectric"), configWith("large", "org.robolectric.other"));
+
+    assertThat(testLifecycle.createdApplications).isEqualTo(2);
+    assertThat(CountingApplication.onCreateCalls).isEqualTo(2);
+  }
+
+  private void withSnapshots(TestLifecycle testLifecycle, Config firstConfig, Config secondConfig) {
+    CountingApplication.onCreateCalls = 0;
+    System.setProperty("robolectric.snapshotApplication", "true");
+    try {
+      pu.setUpApplicationState(null, testLifecycle, null, null, firstConfig);
+      pu.tearDownApplication();
+      pu.resetStaticState(secondConfig);
+      pu.setUpApplicationState(null, testLifecycle, null, null, secondConfig);
+    } finally {
+      System.clearProperty("robolectric.snapshotApplication");
+    }
+  }
+
+  private static Config configWith(String qualifiers, String packageName) {
+    return new Config.Implementation(new int[0], Config.DEFAULT, qualifiers, packageName, "res", "assets", new Class[0], new String[0], Application.class, new String[0], null);
+  }
+
+  public static class CountingTestLifecycle extends DefaultTestLifecycle {
+    int createdApplications;
+
+    @Override
+    public Application createApplication(Method method, AndroidManifest appManifest, Config config) {
+      createdApplications++;
+      return new CountingApplication();
+    }
+  }
+
+  public static class CountingApplication extends Application {
+    static int onCreateCalls;
+    boolean created;
+
+    @Override
+    public void onCreate() {
+      onCreateCalls++;
+      created = true;
+    }
+  }
+
   private String getQualifiersfromSystemResources() {
     Resources systemResources = Resources.getSystem();
     Configuration configuration = systemResources.getConfiguration();
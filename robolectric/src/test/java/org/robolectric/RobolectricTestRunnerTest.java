@@ -119,6 +119,26 @@ public class RobolectricTestRunnerTest {
     assertConfig(configFor(Test2.class, "withoutAnnotation", properties), new int[0],  "--default", Application.class, "", "", "res", "assets", new Class[] {}, new String[]{}, new String[]{}, null);
   }
 
+  @Test
+  public void getConfig_shouldReadPropertiesOncePerRunner() throws Exception {
+    final int[] reads = new int[1];
+    final Properties properties = properties("qualifiers: from-properties-file");
+    RobolectricTestRunner runner = new RobolectricTestRunner(Test3.class) {
+      @Override protected Properties getConfigProperties() {
+        reads[0]++;
+        return properties;
+      }
+    };
+
+    Config first = runner.getConfig(Test3.class.getMethod("withoutAnnotation"));
+    runner.getConfig(Test3.class.getMethod("withDefaultsAnnotation"));
+    Config again = runner.getConfig(Test3.class.getMethod("withoutAnnotation"));
+
+    assertThat(reads[0]).isEqualTo(1);
+    assertThat(again).isSameAs(first);
+    assertThat(again.qualifiers()).isEqualTo("from-subclass");
+  }
+
   @Test
   public void rememberThatSomeTestRunnerMethodsShouldBeOverridable() throws Exception {
     @SuppressWarnings("unused")
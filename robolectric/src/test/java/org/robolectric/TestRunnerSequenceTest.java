@@ -1,20 +1,28 @@
 package org.robolectric;
 
 import android.app.Application;
+import android.view.View;
 import org.junit.Test;
 import org.junit.runner.Result;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.model.InitializationError;
 import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implements;
+import org.robolectric.internal.Prewarmer;
+import org.robolectric.internal.ShadowExtractor;
 import org.robolectric.internal.bytecode.InstrumentationConfiguration;
 import org.robolectric.internal.SdkEnvironment;
 import org.robolectric.manifest.AndroidManifest;
 import org.robolectric.res.FsFile;
+import org.robolectric.shadows.ShadowApplication;
 import org.robolectric.util.Transcript;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 import static org.junit.Assert.assertTrue;
 import static org.robolectric.util.TestUtil.resourceFile;
@@ -22,6 +30,8 @@ import static org.robolectric.util.TestUtil.resourceFile;
 public class TestRunnerSequenceTest {
   public static class StateHolder {
     public static Transcript transcript;
+    public static Runnable duringTest;
+    public static List<Object> resourceLoaders;
   }
 
   @Test public void shouldRunThingsInTheRightOrder() throws Exception {
@@ -72,12 +82,81 @@ public class TestRunnerSequenceTest {
     assertTrue(robolectricTestRunner.allStateIsCleared());
   }
 
+  @Test public void prewarmingAnotherRunner_shouldNotChangeTheShadowsOfARunningTest() throws Exception {
+    StateHolder.transcript = new Transcript();
+    StateHolder.duringTest = new Runnable() {
+      @Override public void run() {
+        System.setProperty(Prewarmer.PREWARM_PROPERTY, "true");
+        try {
+          new Runner(SimpleTest.class).getDescription();
+        } catch (InitializationError e) {
+          throw new RuntimeException(e);
+        } finally {
+          System.clearProperty(Prewarmer.PREWARM_PROPERTY);
+        }
+        Prewarmer.await(Prewarmer.submit(new Runnable() {
+          @Override public void run() {
+          }
+        }));
+      }
+    };
+    try {
+      assertNoFailures(run(new Runner(ShadowedTest.class)));
+    } finally {
+      StateHolder.duringTest = null;
+    }
+  }
+
+  @Test public void withSnapshots_shouldRestoreTheApplicationBoundToTheTestsResources() throws Exception {
+    StateHolder.transcript = new Transcript();
+    StateHolder.resourceLoaders = new ArrayList<>();
+    System.setProperty("robolectric.snapshotApplication", "true");
+    try {
+      assertNoFailures(run(new Runner(SnapshotTest.class)));
+    } finally {
+      System.clearProperty("robolectric.snapshotApplication");
+    }
+
+    assertThat(StateHolder.transcript.getEvents()).containsOnlyOnce("createApplication", "application.onCreate");
+    assertThat(StateHolder.resourceLoaders).hasSize(2).doesNotContainNull();
+    assertThat(StateHolder.resourceLoaders.get(1)).isSameAs(StateHolder.resourceLoaders.get(0));
+  }
+
   public static class SimpleTest {
     @Test public void shouldDoNothingMuch() throws Exception {
       StateHolder.transcript.add("TEST!");
     }
   }
 
+  public static class ShadowedTest {
+    @Test @Config(shadows = SequenceShadowView.class)
+    public void shouldKeepItsShadowsWhileAnotherRunnerPrewarms() throws Exception {
+      StateHolder.duringTest.run();
+      assertThat(ShadowExtractor.extract(new View(RuntimeEnvironment.application))).isInstanceOf(SequenceShadowView.class);
+    }
+  }
+
+  @Config(qualifiers = "land")
+  public static class SnapshotTest {
+    @Test public void first() throws Exception {
+      recordBinding();
+    }
+
+    @Test public void second() throws Exception {
+      recordBinding();
+    }
+
+    private void recordBinding() {
+      ShadowApplication shadowApplication = Shadows.shadowOf(RuntimeEnvironment.application);
+      assertThat(shadowApplication.getAppManifest().getPackageName()).isEqualTo("org.robolectric");
+      StateHolder.resourceLoaders.add(shadowApplication.getResourceLoader());
+    }
+  }
+
+  @Implements(View.class)
+  public static class SequenceShadowView {
+  }
+
   private Result run(Runner runner) throws InitializationError {
     RunNotifier notifier = new RunNotifier();
     Result result = new Result();
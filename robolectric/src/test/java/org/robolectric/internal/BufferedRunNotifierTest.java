@@ -0,0 +1,112 @@
+package org.robolectric.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
+import org.mockito.InOrder;
+
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class BufferedRunNotifierTest {
+  private final Description first = Description.createTestDescription(BufferedRunNotifierTest.class, "first");
+  private final Description second = Description.createTestDescription(BufferedRunNotifierTest.class, "second");
+  private RunListener listener;
+  private RunNotifier target;
+
+  @Before
+  public void setUp() throws Exception {
+    listener = mock(RunListener.class);
+    target = new RunNotifier();
+    target.addListener(listener);
+  }
+
+  @Test
+  public void shouldPassOnTheEventsOfATestAsTheyHappenWhenNoOtherTestIsRunning() throws Exception {
+    Failure failure = new Failure(first, new RuntimeException());
+    BufferedRunNotifier notifier = new BufferedRunNotifier(target);
+
+    notifier.fireTestStarted(first);
+    verify(listener).testStarted(first);
+    notifier.fireTestFailure(failure);
+    verify(listener).testFailure(failure);
+
+    notifier.fireTestFinished(first);
+    notifier.fireTestIgnored(second);
+
+    InOrder inOrder = inOrder(listener);
+    inOrder.verify(listener).testStarted(first);
+    inOrder.verify(listener).testFailure(failure);
+    inOrder.verify(listener).testFinished(first);
+    inOrder.verify(listener).testIgnored(second);
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void shouldHoldBackTheEventsOfTestsThatStartWhileAnotherIsRunning() throws Exception {
+    Failure failure = new Failure(second, new RuntimeException());
+    BufferedRunNotifier firstNotifier = new BufferedRunNotifier(target);
+    BufferedRunNotifier secondNotifier = new BufferedRunNotifier(target);
+
+    firstNotifier.fireTestStarted(first);
+    secondNotifier.fireTestStarted(second);
+    secondNotifier.fireTestFailure(failure);
+    secondNotifier.fireTestFinished(second);
+    verify(listener, never()).testStarted(second);
+
+    firstNotifier.fireTestFinished(first);
+
+    InOrder inOrder = inOrder(listener);
+    inOrder.verify(listener).testStarted(first);
+    inOrder.verify(listener).testFinished(first);
+    inOrder.verify(listener).testStarted(second);
+    inOrder.verify(listener).testFailure(failure);
+    inOrder.verify(listener).testFinished(second);
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void shouldPassOnHeldBackTestsAsSoonAsTheyFinishOnceNoTestIsRunning() throws Exception {
+    BufferedRunNotifier firstNotifier = new BufferedRunNotifier(target);
+    BufferedRunNotifier secondNotifier = new BufferedRunNotifier(target);
+
+    firstNotifier.fireTestStarted(first);
+    secondNotifier.fireTestStarted(second);
+    firstNotifier.fireTestFinished(first);
+    verify(listener, never()).testStarted(second);
+
+    secondNotifier.fireTestFinished(second);
+
+    InOrder inOrder = inOrder(listener);
+    inOrder.verify(listener).testStarted(first);
+    inOrder.verify(listener).testFinished(first);
+    inOrder.verify(listener).testStarted(second);
+    inOrder.verify(listener).testFinished(second);
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void shouldStopWhenTheTargetIsAskedToStop() throws Exception {
+    BufferedRunNotifier notifier = new BufferedRunNotifier(target);
+    target.pleaseStop();
+
+    notifier.fireTestStarted(first);
+    notifier.fireTestFinished(first);
+    verify(listener, never()).testStarted(any(Description.class));
+
+    try {
+      notifier.fireTestStarted(second);
+      fail("expected the notifier to stop");
+    } catch (StoppedByUserException e) {
+      // pass
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package org.robolectric.internal;
+
+import android.app.Application;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConfigSorterTest {
+  private final Map<Description, Config> configs = new LinkedHashMap<>();
+
+  @Test
+  public void shouldGroupTestsByEnvironmentThenConfig() throws Exception {
+    Description a = add("a", 18, "");
+    Description b = add("b", 21, "");
+    Description c = add("c", 18, "land");
+    Description d = add("d", 21, "");
+    Description e = add("e", 18, "");
+
+    ConfigSorter sorter = new ConfigSorter(configs);
+    List<Description> sorted = new ArrayList<>(configs.keySet());
+    Collections.sort(sorted, sorter);
+
+    assertThat(sorted).containsExactly(a, e, c, b, d);
+    assertThat(sorter.getEnvironmentSwitchesAvoided()).isEqualTo(3);
+    assertThat(sorter.getShadowMapSwitchesAvoided()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldPutUnknownTestsLast() throws Exception {
+    Description a = add("a", 18, "");
+    Description unknown = Description.createTestDescription(ConfigSorterTest.class, "unknown");
+
+    assertThat(new ConfigSorter(configs).compare(unknown, a)).isGreaterThan(0);
+  }
+
+  private Description add(String name, int sdk, String qualifiers) {
+    Description description = Description.createTestDescription(ConfigSorterTest.class, name);
+    configs.put(description, new Config.Implementation(new int[] {sdk}, Config.DEFAULT, qualifiers, "", "res", "assets",
+        new Class<?>[0], new String[0], Application.class, new String[0], Void.class));
+    return description;
+  }
+}
@@ -0,0 +1,174 @@
+package org.robolectric.internal;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ObjectGraphClonerTest {
+  private final ObjectGraphCloner cloner = new ObjectGraphCloner(getClass().getClassLoader());
+
+  @Test
+  public void shouldCopyFieldsAndPreserveCycles() throws Exception {
+    Node node = new Node();
+    node.value = 42;
+    node.next = node;
+    node.children.add(node);
+
+    Node copy = cloner.copy(node);
+
+    assertThat(copy).isNotSameAs(node);
+    assertThat(copy.value).isEqualTo(42);
+    assertThat(copy.next).isSameAs(copy);
+    assertThat(copy.children).isNotSameAs(node.children).containsExactly(copy);
+    assertThat(copy.values).isNotSameAs(node.values).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  public void shouldRehashKeysWithIdentityHashCodes() throws Exception {
+    Node node = new Node();
+    Object key = new Node();
+    node.map.put(key, "value");
+
+    Node copy = cloner.copy(node);
+
+    Object copiedKey = copy.map.keySet().iterator().next();
+    assertThat(copiedKey).isNotSameAs(key);
+    assertThat(copy.map.get(copiedKey)).isEqualTo("value");
+  }
+
+  @Test
+  public void shouldSubstituteAndShareObjects() throws Exception {
+    Node node = new Node();
+    node.next = new Node();
+    node.children.add(new Node());
+    Node replacement = new Node();
+
+    Node copy = cloner.substitute(node.next, replacement).share(node.children.get(0)).copy(node);
+
+    assertThat(copy.next).isSameAs(replacement);
+    assertThat(copy.children.get(0)).isSameAs(node.children.get(0));
+  }
+
+  @Test
+  public void shouldPreserveAccessOrderOfLinkedHashMaps() throws Exception {
+    LinkedHashMap<String, String> map = new LinkedHashMap<>(16, 0.75f, true);
+    map.put("a", "1");
+    map.put("b", "2");
+
+    LinkedHashMap<String, String> copy = cloner.copy(map);
+    copy.get("a");
+
+    assertThat(copy.keySet()).containsExactly("b", "a");
+  }
+
+  @Test
+  public void shouldShareImmutableAndSingletonObjects() throws Exception {
+    String string = new String("string");
+    List<Object> empty = Collections.emptyList();
+
+    assertThat(cloner.copy(string)).isSameAs(string);
+    assertThat(cloner.copy(empty)).isSameAs(empty);
+    assertThat(cloner.copy(Thread.currentThread())).isSameAs(Thread.currentThread());
+  }
+
+  @Test
+  public void shouldMoveGraphIntoTargetClassLoader() throws Exception {
+    URL classes = getClass().getProtectionDomain().getCodeSource().getLocation();
+    ClassLoader targetClassLoader = new URLClassLoader(new URL[] {classes}, null);
+    Node node = new Node();
+    node.value = 42;
+    node.next = node;
+    node.kind = Kind.SECOND;
+    node.type = Node.class;
+
+    Object copy = new ObjectGraphCloner(getClass().getClassLoader(), targetClassLoader).copy(node);
+
+    Class<?> targetNodeClass = Class.forName(Node.class.getName(), false, targetClassLoader);
+    assertThat(copy).isInstanceOf(targetNodeClass);
+    assertThat(field(copy, "value")).isEqualTo(42);
+    assertThat(field(copy, "next")).isSameAs(copy);
+    assertThat(field(copy, "kind").getClass().getClassLoader()).isSameAs(targetClassLoader);
+    assertThat(field(copy, "kind").toString()).isEqualTo("SECOND");
+    assertThat(field(copy, "type")).isSameAs(targetNodeClass);
+    assertThat((int[]) field(copy, "values")).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  public void shouldRefuseToMoveFieldsWhoseTypeDiffersInTargetClassLoader() throws Exception {
+    URL classes = getClass().getProtectionDomain().getCodeSource().getLocation();
+    ClassLoader targetClassLoader = new URLClassLoader(new URL[] {classes}, null) {
+      @Override
+      protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (!name.equals(Holder.class.getName())) {
+          return super.findClass(name);
+        }
+
+        // Holder, but with its node field declared as a String.
+        try (InputStream in = getResourceAsStream(MismatchedHolder.class.getName().replace('.', '/') + ".class")) {
+          ClassWriter writer = new ClassWriter(0);
+          new ClassReader(in).accept(new RemappingClassAdapter(writer, new SimpleRemapper(
+              Type.getInternalName(MismatchedHolder.class), Type.getInternalName(Holder.class))), 0);
+          byte[] bytes = writer.toByteArray();
+          return defineClass(name, bytes, 0, bytes.length);
+        } catch (IOException e) {
+          throw new ClassNotFoundException(name, e);
+        }
+      }
+    };
+    Holder holder = new Holder();
+    holder.node = new Node();
+
+    try {
+      new ObjectGraphCloner(getClass().getClassLoader(), targetClassLoader).copy(holder);
+      fail("expected a RuntimeException");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage()).contains("differs");
+    }
+  }
+
+  private static Object field(Object object, String name) throws Exception {
+    Field field = object.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+    return field.get(object);
+  }
+
+  private enum Kind {
+    FIRST, SECOND
+  }
+
+  private static class Holder {
+    Node node;
+  }
+
+  private static class MismatchedHolder {
+    String node;
+  }
+
+  private static class Node {
+    int value;
+    Node next;
+    final List<Node> children = new ArrayList<>();
+    final Map<Object, String> map = new HashMap<>();
+    final int[] values = {1, 2, 3};
+    Kind kind;
+    Class<?> type;
+  }
+}
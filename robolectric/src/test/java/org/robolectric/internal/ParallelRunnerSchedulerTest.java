@@ -0,0 +1,56 @@
+package org.robolectric.internal;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelRunnerSchedulerTest {
+  @Test
+  public void shouldRunChildrenOnIndexedWorkers() throws Exception {
+    ParallelRunnerScheduler scheduler = new ParallelRunnerScheduler(2);
+    final CountDownLatch bothStarted = new CountDownLatch(2);
+    final Set<Integer> workerIndexes = Collections.synchronizedSet(new HashSet<Integer>());
+
+    for (int i = 0; i < 2; i++) {
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          workerIndexes.add(ParallelRunnerScheduler.getWorkerIndex());
+          bothStarted.countDown();
+          try {
+            bothStarted.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    }
+    scheduler.finished();
+
+    assertThat(bothStarted.getCount()).isEqualTo(0);
+    assertThat(workerIndexes).containsOnly(0, 1);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void finished_shouldRethrowFailures() throws Exception {
+    ParallelRunnerScheduler scheduler = new ParallelRunnerScheduler(1);
+    scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException("boom");
+      }
+    });
+    scheduler.finished();
+  }
+
+  @Test
+  public void getWorkerIndex_shouldBeZeroOutsideWorkers() throws Exception {
+    assertThat(ParallelRunnerScheduler.getWorkerIndex()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,66 @@
+package org.robolectric.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrewarmerTest {
+  @Test
+  public void shouldRunTasksInSubmissionOrder() throws Exception {
+    final List<Integer> order = new ArrayList<>();
+    Future<?> first = Prewarmer.submit(new Runnable() {
+      @Override
+      public void run() {
+        order.add(1);
+      }
+    });
+    Future<?> second = Prewarmer.submit(new Runnable() {
+      @Override
+      public void run() {
+        order.add(2);
+      }
+    });
+
+    Prewarmer.await(second);
+
+    assertThat(first.isDone()).isTrue();
+    assertThat(order).containsExactly(1, 2);
+  }
+
+  @Test
+  public void await_shouldNotRethrowFailures() throws Exception {
+    Future<?> task = Prewarmer.submit(new Runnable() {
+      @Override
+      public void run() {
+        throw new RuntimeException("boom");
+      }
+    });
+
+    Prewarmer.await(task);
+
+    assertThat(task.isDone()).isTrue();
+  }
+
+  @Test
+  public void preloadClasses_shouldSkipClassesThatCantBeLoaded() throws Exception {
+    ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+      @Override
+      protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (name.equals(ArrayList.class.getName())) {
+          throw new NoClassDefFoundError(name);
+        }
+        return super.loadClass(name, resolve);
+      }
+    };
+
+    List<Class<?>> classes = Prewarmer.preloadClasses(classLoader,
+        String.class.getName(), ArrayList.class.getName(), "com.example.Missing", HashMap.class.getName());
+
+    assertThat(classes).containsExactly(String.class, HashMap.class);
+  }
+}
@@ -0,0 +1,131 @@
+package org.robolectric.internal;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SdkEnvironmentCacheTest {
+  private final RecordingListener listener = new RecordingListener();
+
+  @After
+  public void tearDown() throws Exception {
+    SdkEnvironmentCache.removeListener(listener);
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedWhenFull() throws Exception {
+    SdkEnvironmentCache<String> cache = new SdkEnvironmentCache<>(2, 0, SdkEnvironmentCache.Retention.NONE);
+    cache.put("a", environment(0), 0);
+    cache.put("b", environment(0), 0);
+    cache.get("a");
+    cache.put("c", environment(0), 0);
+
+    assertThat(cache.getHotKeys()).containsExactly("a", "c");
+    assertThat(cache.get("b")).isNull();
+  }
+
+  @Test
+  public void shouldEvictWhenOverHeapBudget() throws Exception {
+    SdkEnvironmentCache<String> cache = new SdkEnvironmentCache<>(10, 100, SdkEnvironmentCache.Retention.NONE);
+    cache.put("a", environment(60), 0);
+    cache.put("b", environment(60), 0);
+
+    assertThat(cache.getHotKeys()).containsExactly("b");
+  }
+
+  @Test
+  public void shouldAlwaysKeepMostRecentlyUsed() throws Exception {
+    SdkEnvironmentCache<String> cache = new SdkEnvironmentCache<>(10, 100, SdkEnvironmentCache.Retention.NONE);
+    cache.put("a", environment(500), 0);
+
+    assertThat(cache.getHotKeys()).containsExactly("a");
+  }
+
+  @Test
+  public void shouldReviveSoftlyHeldEnvironments() throws Exception {
+    SdkEnvironmentCache.addListener(listener);
+    SdkEnvironmentCache<String> cache = new SdkEnvironmentCache<>(1, 0, SdkEnvironmentCache.Retention.SOFT);
+    SdkEnvironment a = environment(0);
+    cache.put("a", a, 0);
+    cache.put("b", environment(0), 0);
+
+    assertThat(cache.contains("a")).isTrue();
+    assertThat(cache.get("a")).isSameAs(a);
+    assertThat(cache.getHotKeys()).containsExactly("a");
+    assertThat(listener.events).containsExactly("loaded 18", "loaded 18", "evicted 18 retained", "revived 18",
+        "evicted 18 retained");
+  }
+
+  @Test
+  public void shouldReportReloadsOfDroppedEnvironments() throws Exception {
+    SdkEnvironmentCache.addListener(listener);
+    SdkEnvironmentCache<String> cache = new SdkEnvironmentCache<>(1, 0, SdkEnvironmentCache.Retention.NONE);
+    cache.put("a", environment(0), 0);
+    cache.put("b", environment(0), 0);
+    cache.put("a", environment(0), 0);
+
+    assertThat(listener.events).containsExactly("loaded 18", "loaded 18", "evicted 18 dropped", "reloaded 18",
+        "evicted 18 dropped");
+  }
+
+  @Test
+  public void clear_shouldReturnTheReachableEnvironments() throws Exception {
+    SdkEnvironmentCache<String> cache = new SdkEnvironmentCache<>(1, 0, SdkEnvironmentCache.Retention.SOFT);
+    SdkEnvironment a = environment(0);
+    SdkEnvironment b = environment(0);
+    cache.put("a", a, 0);
+    cache.put("b", b, 0);
+
+    Map<String, SdkEnvironment> cleared = cache.clear();
+
+    assertThat(cleared).containsEntry("a", a).containsEntry("b", b).hasSize(2);
+    assertThat(cache.contains("a")).isFalse();
+    assertThat(cache.getHotKeys()).isEmpty();
+  }
+
+  @Test
+  public void parseSize_shouldAcceptSuffixes() throws Exception {
+    assertThat(SdkEnvironmentCache.parseSize("100")).isEqualTo(100);
+    assertThat(SdkEnvironmentCache.parseSize("2k")).isEqualTo(2048);
+    assertThat(SdkEnvironmentCache.parseSize("512M")).isEqualTo(512L * 1024 * 1024);
+    assertThat(SdkEnvironmentCache.parseSize("1g")).isEqualTo(1024L * 1024 * 1024);
+  }
+
+  private static SdkEnvironment environment(final long estimatedBytes) {
+    return new SdkEnvironment(new SdkConfig(18), SdkEnvironmentCacheTest.class.getClassLoader()) {
+      @Override
+      public long getEstimatedRetainedBytes() {
+        return estimatedBytes;
+      }
+    };
+  }
+
+  private static class RecordingListener implements SdkEnvironmentCache.Listener {
+    final List<String> events = new ArrayList<>();
+
+    @Override
+    public void environmentLoaded(SdkEnvironment environment, boolean reloaded, long nanos) {
+      events.add((reloaded ? "reloaded " : "loaded ") + environment.getSdkConfig().getApiLevel());
+    }
+
+    @Override
+    public void environmentEvicted(SdkEnvironment environment, long estimatedBytes, boolean retained) {
+      events.add("evicted " + environment.getSdkConfig().getApiLevel() + (retained ? " retained" : " dropped"));
+    }
+
+    @Override
+    public void environmentRevived(SdkEnvironment environment) {
+      events.add("revived " + environment.getSdkConfig().getApiLevel());
+    }
+
+    @Override
+    public void environmentCollected(SdkConfig sdkConfig, long estimatedBytes) {
+      events.add("collected " + sdkConfig.getApiLevel());
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package org.robolectric.internal;
+
+import org.junit.Test;
+import org.robolectric.internal.bytecode.ShadowMap;
+import org.robolectric.internal.bytecode.ShadowWrangler;
+import org.robolectric.internal.dependency.MavenDependencyResolver;
+import org.robolectric.res.ResName;
+import org.robolectric.res.ResourceLoader;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SdkEnvironmentTest {
+  @Test
+  public void shouldShareClassHandlersByShadowMap() throws Exception {
+    SdkEnvironment sdkEnvironment = new SdkEnvironment(new SdkConfig(18), getClass().getClassLoader());
+    ShadowWrangler classHandler = new ShadowWrangler(ShadowMap.EMPTY);
+
+    assertThat(sdkEnvironment.getClassHandler(ShadowMap.EMPTY)).isNull();
+    sdkEnvironment.putClassHandler(ShadowMap.EMPTY, classHandler);
+
+    assertThat(sdkEnvironment.getClassHandler(ShadowMap.EMPTY)).isSameAs(classHandler);
+    assertThat(sdkEnvironment.getClassHandlerMissCount()).isEqualTo(1);
+    assertThat(sdkEnvironment.getClassHandlerHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void createSystemResourceLoader_shouldNotNeedTheEnvironmentsClassLoader() throws Exception {
+    SdkConfig sdkConfig = new SdkConfig(SdkConfig.FALLBACK_SDK_VERSION);
+    SdkEnvironment sdkEnvironment = new SdkEnvironment(sdkConfig, new URLClassLoader(new URL[0], null));
+
+    ResourceLoader systemResourceLoader = sdkEnvironment.createSystemResourceLoader(new MavenDependencyResolver());
+
+    assertThat(systemResourceLoader.getResourceIndex().getResourceId(new ResName("android", "string", "ok")))
+        .isEqualTo(android.R.string.ok);
+  }
+
+  @Test
+  public void getSystemResourceLoader_shouldReuseTheGivenLoader() throws Exception {
+    SdkConfig sdkConfig = new SdkConfig(SdkConfig.FALLBACK_SDK_VERSION);
+    ResourceLoader systemResourceLoader = new SdkEnvironment(sdkConfig, getClass().getClassLoader())
+        .createSystemResourceLoader(new MavenDependencyResolver());
+
+    SdkEnvironment sdkEnvironment = new SdkEnvironment(sdkConfig, getClass().getClassLoader(), systemResourceLoader);
+
+    assertThat(sdkEnvironment.getSystemResourceLoader(new MavenDependencyResolver())).isSameAs(systemResourceLoader);
+  }
+}
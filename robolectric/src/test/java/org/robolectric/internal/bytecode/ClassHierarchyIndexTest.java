@@ -0,0 +1,54 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.robolectric.internal.bytecode.testing.AChild;
+import org.robolectric.internal.bytecode.testing.AParent;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ClassHierarchyIndexTest {
+  private final ClassHierarchyIndex index = new ClassHierarchyIndex(getClass().getClassLoader());
+
+  @Test
+  public void shouldReadEachClassOnlyOnce() throws Exception {
+    ClassHierarchyIndex.Entry entry = index.get(Type.getInternalName(AChild.class));
+    index.get(Type.getInternalName(AChild.class));
+
+    assertThat(entry.getSuperName()).isEqualTo(Type.getInternalName(AParent.class));
+    assertThat(index.getLookupCount()).isEqualTo(2);
+    assertThat(index.getResourceReadCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotReadClassesAlreadyAdded() throws Exception {
+    try (InputStream is = getClass().getClassLoader().getResourceAsStream(Type.getInternalName(Runnable.class) + ".class")) {
+      index.add(new ClassReader(is));
+    }
+
+    ClassHierarchyIndex.Entry entry = index.get(Type.getInternalName(Runnable.class));
+
+    assertThat(entry.getAccess() & Opcodes.ACC_INTERFACE).isNotEqualTo(0);
+    assertThat(index.getResourceReadCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldRememberMissingClasses() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      try {
+        index.get("com/example/DoesNotExist");
+        fail("expected IOException");
+      } catch (IOException e) {
+        // expected
+      }
+    }
+
+    assertThat(index.getResourceReadCount()).isEqualTo(1);
+  }
+}
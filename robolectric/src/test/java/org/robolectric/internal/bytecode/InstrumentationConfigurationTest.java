@@ -76,6 +76,26 @@ public class InstrumentationConfigurationTest {
     assertThat(baseConfig).isNotEqualTo(customConfig);
   }
 
+  @Test
+  public void stableBaseHash_ShouldIgnoreInstrumentedPackagesAndClasses() throws Exception {
+    InstrumentationConfiguration baseConfig = InstrumentationConfiguration.newBuilder().build();
+    InstrumentationConfiguration customConfig = InstrumentationConfiguration.newBuilder()
+        .addInstrumentedClass("com.whatever.SomeClassNameToInstrument")
+        .addInstrumentedPackage("com.whatever.")
+        .build();
+
+    assertThat(customConfig.stableHash()).isNotEqualTo(baseConfig.stableHash());
+    assertThat(customConfig.stableBaseHash()).isEqualTo(baseConfig.stableBaseHash());
+  }
+
+  @Test
+  public void stableBaseHash_ShouldCheckClassesToNotInstrument() throws Exception {
+    InstrumentationConfiguration baseConfig = InstrumentationConfiguration.newBuilder().build();
+    InstrumentationConfiguration customConfig = InstrumentationConfiguration.newBuilder().doNotInstrumentClass("android.foo.Bar").build();
+
+    assertThat(customConfig.stableBaseHash()).isNotEqualTo(baseConfig.stableBaseHash());
+  }
+
   public void shouldNotInstrumentListedClasses() throws Exception {
     String instrumentName = "android.foo.bar";
     InstrumentationConfiguration customConfig = InstrumentationConfiguration.newBuilder().doNotInstrumentClass(instrumentName).build();
@@ -0,0 +1,127 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstrumentedClassCacheTest {
+  private final InstrumentationConfiguration config = InstrumentationConfiguration.newBuilder().build();
+  private final byte[] originalBytes = new byte[] {1, 2, 3};
+  private final byte[] instrumentedBytes = new byte[] {4, 5, 6, 7};
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldMissWhenCacheIsEmpty() throws Exception {
+    InstrumentedClassCache cache = createCache(1024 * 1024);
+
+    String key = cache.keyFor(config, "android.Foo", null, originalBytes);
+
+    assertThat(cache.load(key, originalBytes)).isNull();
+    assertThat(cache.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldLoadStoredInstrumentedBytes() throws Exception {
+    InstrumentedClassCache cache = createCache(1024 * 1024);
+
+    String key = cache.keyFor(config, "android.Foo", null, originalBytes);
+    cache.store(key, instrumentedBytes, true);
+
+    assertThat(cache.load(key, originalBytes)).isEqualTo(instrumentedBytes);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getWriteCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldReturnOriginalBytesForUninstrumentedClasses() throws Exception {
+    InstrumentedClassCache cache = createCache(1024 * 1024);
+
+    String key = cache.keyFor(config, "com.foo.Bar", null, originalBytes);
+    cache.store(key, originalBytes, false);
+
+    assertThat(cache.load(key, originalBytes)).isSameAs(originalBytes);
+  }
+
+  @Test
+  public void shouldBeSharedBetweenInstances() throws Exception {
+    File dir = temporaryFolder.newFolder("shared");
+    InstrumentedClassCache writer = new InstrumentedClassCache(dir, 1024 * 1024);
+    InstrumentedClassCache reader = new InstrumentedClassCache(dir, 1024 * 1024);
+
+    String key = writer.keyFor(config, "android.Foo", null, originalBytes);
+    writer.store(key, instrumentedBytes, true);
+
+    assertThat(reader.load(reader.keyFor(config, "android.Foo", null, originalBytes), originalBytes)).isEqualTo(instrumentedBytes);
+  }
+
+  @Test
+  public void keyShouldDependOnClassBytesNameAndConfig() throws Exception {
+    InstrumentedClassCache cache = createCache(1024 * 1024);
+    InstrumentationConfiguration otherConfig = InstrumentationConfiguration.newBuilder().addInstrumentedPackage("com.foo.").build();
+
+    String key = cache.keyFor(config, "android.Foo", null, originalBytes);
+
+    assertThat(cache.keyFor(config, "android.Foo", null, originalBytes)).isEqualTo(key);
+    assertThat(cache.keyFor(config, "android.Foo", null, instrumentedBytes)).isNotEqualTo(key);
+    assertThat(cache.keyFor(config, "android.Bar", null, originalBytes)).isNotEqualTo(key);
+    assertThat(cache.keyFor(otherConfig, "android.Foo", null, originalBytes)).isNotEqualTo(key);
+  }
+
+  @Test
+  public void keyShouldUseBytesForClassesNotFromJars() throws Exception {
+    InstrumentedClassCache cache = createCache(1024 * 1024);
+
+    assertThat(cache.keyFor(config, "android.Foo", new URL("file:/tmp/android/Foo.class"), originalBytes))
+        .isEqualTo(cache.keyFor(config, "android.Foo", null, originalBytes));
+  }
+
+  @Test
+  public void shouldDiscardCorruptEntries() throws Exception {
+    InstrumentedClassCache cache = createCache(1024 * 1024);
+    String key = cache.keyFor(config, "android.Foo", null, originalBytes);
+    cache.store(key, instrumentedBytes, true);
+
+    File entry = new File(new File(cache.getDirectory(), key.substring(0, 2)), key + ".class");
+    byte[] contents = Files.readAllBytes(entry.toPath());
+    contents[contents.length - 1]++;
+    Files.write(entry.toPath(), contents);
+
+    assertThat(cache.load(key, originalBytes)).isNull();
+    assertThat(entry.exists()).isFalse();
+  }
+
+  @Test
+  public void shouldEvictEntriesWhenOverSizeCap() throws Exception {
+    InstrumentedClassCache cache = createCache(100);
+
+    for (int i = 0; i < 20; i++) {
+      cache.store(cache.keyFor(config, "android.Foo" + i, null, originalBytes), instrumentedBytes, true);
+    }
+
+    int remaining = 0;
+    for (int i = 0; i < 20; i++) {
+      if (cache.load(cache.keyFor(config, "android.Foo" + i, null, originalBytes), originalBytes) != null) {
+        remaining++;
+      }
+    }
+    assertThat(cache.getEvictionCount()).isGreaterThan(0);
+    assertThat(remaining).isEqualTo(20 - (int) cache.getEvictionCount());
+    assertThat(remaining).isLessThan(6);
+  }
+
+  @Test
+  public void stableHashShouldBeEqualForEqualConfigs() throws Exception {
+    assertThat(InstrumentationConfiguration.newBuilder().build().stableHash()).isEqualTo(config.stableHash());
+  }
+
+  private InstrumentedClassCache createCache(long maxSizeBytes) {
+    return new InstrumentedClassCache(temporaryFolder.newFolder("cache"), maxSizeBytes);
+  }
+}
@@ -47,6 +47,12 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static java.lang.invoke.MethodHandles.constant;
 import static java.lang.invoke.MethodHandles.dropArguments;
@@ -720,6 +726,7 @@ public class InstrumentingClassLoaderTest {
     }
     ShadowInvalidator invalidator = Mockito.mock(ShadowInvalidator.class);
     when(invalidator.getSwitchPoint(any(Class.class))).thenReturn(new SwitchPoint());
+    when(invalidator.getSwitchPoint(any(Class.class), anyString(), any(MethodType.class))).thenReturn(new SwitchPoint());
     RobolectricTestRunner.injectEnvironment(classLoader, classHandler, invalidator);
     return classLoader.loadClass(clazz.getName());
   }
@@ -748,4 +755,41 @@ public class InstrumentingClassLoaderTest {
 
     transcript.assertEventsSoFar("find foo.AClass");
   }
+
+  @Test public void shouldLoadClassesConcurrently() throws Exception {
+    final ClassLoader classLoader = new InstrumentingClassLoader(InstrumentationConfiguration.newBuilder().build());
+    final String[] classNames = {
+        AnExampleClass.class.getName(),
+        AChild.class.getName(),
+        AnUninstrumentedClass.class.getName(),
+        AClassWithStaticMethod.class.getName()
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Class<?>[]>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(new Callable<Class<?>[]>() {
+          @Override
+          public Class<?>[] call() throws Exception {
+            Class<?>[] loaded = new Class<?>[classNames.length];
+            for (int j = 0; j < classNames.length; j++) {
+              loaded[j] = classLoader.loadClass(classNames[j]);
+            }
+            return loaded;
+          }
+        }));
+      }
+
+      Class<?>[] expected = futures.get(0).get();
+      for (Future<Class<?>[]> future : futures) {
+        assertArrayEquals(expected, future.get());
+      }
+      for (Class<?> loaded : expected) {
+        assertSame(classLoader, loaded.getClassLoader());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
@@ -0,0 +1,32 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PlanCacheTest {
+  @Test
+  public void shouldDistinguishCachedNullPlansFromMisses() throws Exception {
+    PlanCache planCache = new PlanCache(10);
+
+    assertThat(planCache.get("a/B/c()V")).isSameAs(PlanCache.MISSING);
+    planCache.put("a/B/c()V", ShadowWrangler.CALL_REAL_CODE_PLAN);
+    planCache.put("a/B/d()V", ShadowWrangler.DO_NOTHING_PLAN);
+
+    assertThat(planCache.get("a/B/c()V")).isNull();
+    assertThat(planCache.get("a/B/d()V")).isSameAs(ShadowWrangler.DO_NOTHING_PLAN);
+    assertThat(planCache.getMissCount()).isEqualTo(1);
+    assertThat(planCache.getHitCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldEvictWhenFull() throws Exception {
+    PlanCache planCache = new PlanCache(10);
+    for (int i = 0; i < 11; i++) {
+      planCache.put("a/B/m" + i + "()V", ShadowWrangler.DO_NOTHING_PLAN);
+    }
+
+    assertThat(planCache.size()).isEqualTo(9);
+    assertThat(planCache.getEvictionCount()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,78 @@
+package org.robolectric.internal.bytecode;
+
+import org.junit.Test;
+import org.robolectric.annotation.Implements;
+
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
+import java.util.Collections;
+
+import static java.lang.invoke.MethodType.methodType;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShadowInvalidatorTest {
+  private static final MethodType TYPE = methodType(void.class, Thing.class);
+
+  private final ShadowInvalidator invalidator = new ShadowInvalidator();
+
+  @Test
+  public void invalidateChangedMethods_shouldOnlyInvalidateMethodsShadowedDifferently() throws Exception {
+    SwitchPoint a = invalidator.getSwitchPoint(Thing.class, "a", TYPE);
+    SwitchPoint b = invalidator.getSwitchPoint(Thing.class, "b", TYPE);
+
+    ShadowMap previous = new ShadowMap.Builder().addShadowClass(ShadowThing.class).build();
+    ShadowMap current = new ShadowMap.Builder().addShadowClass(OtherShadowThing.class).build();
+    invalidator.invalidateChangedMethods(previous, current, getClass().getClassLoader());
+
+    assertThat(a.hasBeenInvalidated()).isTrue();
+    assertThat(b.hasBeenInvalidated()).isFalse();
+    assertThat(invalidator.getInvalidationCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void invalidateClasses_shouldInvalidateEveryMethod() throws Exception {
+    SwitchPoint a = invalidator.getSwitchPoint(Thing.class, "a", TYPE);
+    SwitchPoint b = invalidator.getSwitchPoint(Thing.class, "b", TYPE);
+
+    invalidator.invalidateClasses(Collections.singleton(Thing.class.getName()));
+
+    assertThat(a.hasBeenInvalidated()).isTrue();
+    assertThat(b.hasBeenInvalidated()).isTrue();
+  }
+
+  @Test
+  public void getSwitchPoint_shouldCountRebinds() throws Exception {
+    SwitchPoint a = invalidator.getSwitchPoint(Thing.class, "a", TYPE);
+    assertThat(invalidator.getSwitchPoint(Thing.class, "a", TYPE)).isSameAs(a);
+    assertThat(invalidator.getRebindCount()).isEqualTo(0);
+
+    invalidator.invalidateClasses(Collections.singleton(Thing.class.getName()));
+
+    assertThat(invalidator.getSwitchPoint(Thing.class, "a", TYPE)).isNotSameAs(a);
+    assertThat(invalidator.getRebindCount()).isEqualTo(1);
+  }
+
+  public static class Thing {
+    public void a() {
+    }
+
+    public void b() {
+    }
+  }
+
+  @Implements(Thing.class)
+  public static class ShadowThing {
+    public void a() {
+    }
+
+    public void b() {
+    }
+  }
+
+  @Implements(Thing.class)
+  public static class OtherShadowThing extends ShadowThing {
+    @Override
+    public void a() {
+    }
+  }
+}
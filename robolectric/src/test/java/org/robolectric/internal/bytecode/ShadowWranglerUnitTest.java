@@ -2,6 +2,7 @@ package org.robolectric.internal.bytecode;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.robolectric.annotation.Implements;
 import org.robolectric.internal.SdkConfig;
 import org.robolectric.util.Function;
 
@@ -59,4 +60,39 @@ public class ShadowWranglerUnitTest {
 
     assertThat(result).isNull();
   }
+
+  @Test
+  public void methodInvoked_shouldCachePlansIncludingCallRealCodePlans() throws Exception {
+    String signature = "java/lang/Object/unknownMethod()V";
+    ClassHandler.Plan plan = shadowWrangler.methodInvoked(signature, false, Object.class);
+    shadowWrangler.methodInvoked(signature, false, Object.class);
+
+    assertThat(plan).isSameAs(ShadowWrangler.CALL_REAL_CODE_PLAN);
+    assertThat(shadowWrangler.getPlanCache().getMissCount()).isEqualTo(1);
+    assertThat(shadowWrangler.getPlanCache().getHitCount()).isEqualTo(1);
+    assertThat(shadowWrangler.getPlanCache().size()).isEqualTo(1);
+  }
+
+  @Test
+  public void methodInvoked_shouldReturnPlanThatCallsShadowMethod() throws Throwable {
+    ShadowWrangler wrangler = new ShadowWrangler(new ShadowMap.Builder().addShadowClass(ShadowAdder.class).build());
+    String signature = Adder.class.getName().replace('.', '/') + "/add(II)I";
+
+    ClassHandler.Plan plan = wrangler.methodInvoked(signature, false, Adder.class);
+
+    assertThat(plan.run(new Adder(), new ShadowAdder(), new Object[]{2, 3})).isEqualTo(50);
+  }
+
+  public static class Adder {
+    public int add(int a, int b) {
+      return a + b;
+    }
+  }
+
+  @Implements(Adder.class)
+  public static class ShadowAdder {
+    public int add(int a, int b) {
+      return (a + b) * 10;
+    }
+  }
 }
@@ -0,0 +1,56 @@
+package org.robolectric.internal.daemon;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClasspathWatcherTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File classFile;
+  private ClasspathWatcher watcher;
+
+  @Before
+  public void setUp() throws Exception {
+    classFile = temporaryFolder.newFile("com/example/Foo.class", "v1");
+    watcher = new ClasspathWatcher(Collections.singletonList(temporaryFolder.getRoot()));
+  }
+
+  @Test
+  public void shouldNotReportChangesWhenNothingChanged() throws Exception {
+    temporaryFolder.newFile("com/example/notes.txt", "not a class");
+
+    assertThat(watcher.checkForChanges()).isFalse();
+  }
+
+  @Test
+  public void shouldReportModifiedClassesOnce() throws Exception {
+    temporaryFolder.newFile("com/example/Foo.class", "version 2");
+
+    assertThat(watcher.checkForChanges()).isTrue();
+    assertThat(watcher.checkForChanges()).isFalse();
+  }
+
+  @Test
+  public void shouldReportAddedAndRemovedClasses() throws Exception {
+    temporaryFolder.newFile("com/example/Bar.class", "v1");
+    assertThat(watcher.checkForChanges()).isTrue();
+
+    assertThat(classFile.delete()).isTrue();
+    assertThat(watcher.checkForChanges()).isTrue();
+  }
+
+  @Test
+  public void getDirectories_shouldIgnoreJarsAndMissingEntries() throws Exception {
+    File jar = temporaryFolder.newFile("lib.jar");
+    String classpath = temporaryFolder.getRoot() + File.pathSeparator + jar + File.pathSeparator + "missing";
+
+    assertThat(ClasspathWatcher.getDirectories(classpath)).containsExactly(temporaryFolder.getRoot().getAbsoluteFile());
+  }
+}
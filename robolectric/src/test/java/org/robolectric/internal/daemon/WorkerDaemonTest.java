@@ -0,0 +1,123 @@
+package org.robolectric.internal.daemon;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WorkerDaemonTest {
+  public static final List<ClassLoader> loaders = Collections.synchronizedList(new ArrayList<ClassLoader>());
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File classFile;
+  private ServerSocket serverSocket;
+  private Thread serverThread;
+  private DaemonClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    loaders.clear();
+    classFile = copyClassFile(RecordingTest.class);
+    copyClassFile(FailingTest.class);
+
+    final WorkerDaemon daemon = new WorkerDaemon(new ClasspathWatcher(Collections.singletonList(temporaryFolder.getRoot())));
+    serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+    serverThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          daemon.serve(serverSocket);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    serverThread.setDaemon(true);
+    serverThread.start();
+    client = new DaemonClient(serverSocket.getLocalPort());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    serverSocket.close();
+  }
+
+  @Test
+  public void shouldReportResultsAndReloadChangedClasses() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    assertThat(client.run(Collections.singletonList(RecordingTest.class.getName()), new PrintStream(output, true, "UTF-8"))).isTrue();
+    assertThat(output.toString("UTF-8"))
+        .contains("STARTED recordClassLoader(" + RecordingTest.class.getName() + ")")
+        .contains("FINISHED recordClassLoader(" + RecordingTest.class.getName() + ")")
+        .contains("DONE 1 0 0 ");
+
+    assertThat(client.run(Collections.singletonList(RecordingTest.class.getName()), new PrintStream(new ByteArrayOutputStream()))).isTrue();
+    assertThat(classFile.setLastModified(classFile.lastModified() - 10000)).isTrue();
+    assertThat(client.run(Collections.singletonList(RecordingTest.class.getName()), new PrintStream(new ByteArrayOutputStream()))).isTrue();
+
+    assertThat(loaders).hasSize(3);
+    assertThat(loaders.get(0)).isInstanceOf(ApplicationClassLoader.class).isSameAs(loaders.get(1));
+    assertThat(loaders.get(2)).isInstanceOf(ApplicationClassLoader.class).isNotSameAs(loaders.get(1));
+  }
+
+  @Test
+  public void shouldReportFailuresAndUnknownClasses() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    assertThat(client.run(Collections.singletonList(FailingTest.class.getName()), new PrintStream(output, true, "UTF-8"))).isFalse();
+    assertThat(output.toString("UTF-8"))
+        .contains("FAILED fail(" + FailingTest.class.getName() + ")")
+        .contains("\tjava.lang.AssertionError: expected failure")
+        .contains("DONE 1 1 0 ");
+
+    output.reset();
+    assertThat(client.run(Collections.singletonList("com.example.Missing"), new PrintStream(output, true, "UTF-8"))).isFalse();
+    assertThat(output.toString("UTF-8")).startsWith("ERROR can't load com.example.Missing");
+  }
+
+  @Test
+  public void shouldStopWhenAsked() throws Exception {
+    assertThat(client.run(Collections.singletonList(WorkerDaemon.STOP), new PrintStream(new ByteArrayOutputStream()))).isTrue();
+
+    serverThread.join(10000);
+    assertThat(serverThread.isAlive()).isFalse();
+  }
+
+  private File copyClassFile(Class<?> clazz) throws Exception {
+    String path = clazz.getName().replace('.', '/') + ".class";
+    File file = new File(temporaryFolder.getRoot(), path);
+    assertThat(file.getParentFile().mkdirs() || file.getParentFile().isDirectory()).isTrue();
+    try (InputStream in = clazz.getClassLoader().getResourceAsStream(path)) {
+      Files.copy(in, file.toPath());
+    }
+    return file;
+  }
+
+  public static class RecordingTest {
+    @Test
+    public void recordClassLoader() throws Exception {
+      loaders.add(getClass().getClassLoader());
+    }
+  }
+
+  public static class FailingTest {
+    @Test
+    public void fail() throws Exception {
+      throw new AssertionError("expected failure");
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package org.robolectric.internal.timing;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingFileWriterTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File directory;
+  private TimingFileWriter writer;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = new File(temporaryFolder.getRoot(), "timings");
+    writer = new TimingFileWriter(directory);
+  }
+
+  @Test
+  public void shouldWriteTheTimelinesOfAClassWhenItFinishes() throws Exception {
+    writer.testTimed(finishedTimeline("com.example.FooTest", "first(com.example.FooTest)"));
+    writer.testTimed(finishedTimeline("com.example.BarTest", "other(com.example.BarTest)"));
+    writer.testClassFinished("com.example.FooTest");
+
+    assertThat(trace("com.example.FooTest"))
+        .startsWith("[\n{\"name\": \"first(com.example.FooTest)\", \"cat\": \"test\"")
+        .contains("{\"name\": \"test\", \"cat\": \"phase\"")
+        .doesNotContain("other(com.example.BarTest)");
+    assertThat(new File(directory, "com.example.BarTest.trace.json")).doesNotExist();
+    assertThat(new File(directory, "timing-summary.json")).exists();
+  }
+
+  @Test
+  public void shouldAppendTheTimelinesOfEachPartOfAClass() throws Exception {
+    // Child runners, e.g. one per API level, describe their tests with their own names, not the test class's.
+    writer.testTimed(finishedTimeline("com.example.FooTest", "test[18]"));
+    writer.testClassFinished("com.example.FooTest");
+    writer.testTimed(finishedTimeline("com.example.FooTest", "test[19]"));
+    writer.testClassFinished("com.example.FooTest");
+
+    String trace = trace("com.example.FooTest");
+    assertThat(trace).startsWith("[\n").contains("\"test[18]\"").contains(",\n{\"name\": \"test[19]\"");
+    assertThat(trace.lastIndexOf("[\n")).isEqualTo(0);
+  }
+
+  private String trace(String className) throws Exception {
+    return new String(Files.readAllBytes(new File(directory, className + ".trace.json").toPath()), StandardCharsets.UTF_8);
+  }
+
+  private static TestTimeline finishedTimeline(String testClassName, String displayName) {
+    TestTimeline timeline = new TestTimeline(testClassName, Description.createSuiteDescription(displayName));
+    timeline.record(Phase.TEST, System.nanoTime(), null);
+    timeline.finish();
+    return timeline;
+  }
+}
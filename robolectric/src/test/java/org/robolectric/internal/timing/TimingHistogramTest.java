@@ -0,0 +1,39 @@
+package org.robolectric.internal.timing;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingHistogramTest {
+  @Test
+  public void bucketFor_shouldUsePowersOfTwoMilliseconds() throws Exception {
+    assertThat(TimingHistogram.bucketFor(TimeUnit.MICROSECONDS.toNanos(500))).isEqualTo(0);
+    assertThat(TimingHistogram.bucketFor(TimeUnit.MILLISECONDS.toNanos(1))).isEqualTo(1);
+    assertThat(TimingHistogram.bucketFor(TimeUnit.MILLISECONDS.toNanos(3))).isEqualTo(2);
+    assertThat(TimingHistogram.bucketFor(TimeUnit.MILLISECONDS.toNanos(4))).isEqualTo(3);
+    assertThat(TimingHistogram.bucketFor(TimeUnit.HOURS.toNanos(1))).isEqualTo(TimingHistogram.BUCKET_COUNT - 1);
+  }
+
+  @Test
+  public void shouldAggregatePhasesAcrossTests() throws Exception {
+    TimingHistogram histogram = new TimingHistogram();
+    for (int i = 0; i < 2; i++) {
+      TestTimeline timeline = new TestTimeline(TimingHistogramTest.class.getName(),
+          Description.createTestDescription(TimingHistogramTest.class, "test" + i));
+      timeline.record(Phase.SDK_ENVIRONMENT, System.nanoTime(), i == 0 ? "miss" : "hit");
+      timeline.record(Phase.TEST, System.nanoTime(), null);
+      histogram.testTimed(timeline);
+    }
+
+    assertThat(histogram.getCount(Phase.SDK_ENVIRONMENT)).isEqualTo(2);
+    assertThat(histogram.getBuckets(Phase.TEST)[0]).isEqualTo(2);
+    assertThat(histogram.getCount(Phase.TEAR_DOWN_APPLICATION)).isEqualTo(0);
+    assertThat(histogram.toJson())
+        .contains("\"getSdkEnvironment\": {\"count\": 2")
+        .contains("\"details\": {\"hit\": 1, \"miss\": 1}")
+        .contains("test1(org.robolectric.internal.timing.TimingHistogramTest)");
+  }
+}
@@ -0,0 +1,56 @@
+package org.robolectric.res;
+
+import org.junit.After;
+import org.junit.Test;
+import org.robolectric.util.TestUtil;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class DocumentLoaderTest {
+  @After
+  public void tearDown() throws Exception {
+    System.clearProperty(DocumentLoader.PARALLELISM_PROPERTY);
+  }
+
+  @Test
+  public void getParallelism_shouldDefaultToOneThread() throws Exception {
+    assertThat(DocumentLoader.getParallelism()).isEqualTo(1);
+
+    System.setProperty(DocumentLoader.PARALLELISM_PROPERTY, "0");
+    assertThat(DocumentLoader.getParallelism()).isEqualTo(Runtime.getRuntime().availableProcessors());
+  }
+
+  @Test
+  public void shouldLoadTheSameValuesConcurrentlyAsSerially() throws Exception {
+    ResBunch serialData = new ResBunch();
+    ResBundle<PluralResourceLoader.PluralRules> serialPlurals = new ResBundle<>();
+    load(serialData, serialPlurals);
+
+    System.setProperty(DocumentLoader.PARALLELISM_PROPERTY, "4");
+    ResBunch concurrentData = new ResBunch();
+    ResBundle<PluralResourceLoader.PluralRules> concurrentPlurals = new ResBundle<>();
+    load(concurrentData, concurrentPlurals);
+
+    assertThat(concurrentData.size()).isEqualTo(serialData.size());
+    assertThat(concurrentPlurals.size()).isEqualTo(serialPlurals.size());
+    assertThat(concurrentData.get(resName("string", "hello"), "").asString()).isEqualTo("Hello");
+    assertThat(concurrentData.get(resName("string", "hello"), "fr").asString()).isEqualTo("Bonjour");
+    assertThat(concurrentData.get(resName("style", "Theme_Robolectric"), "").getData())
+        .isEqualTo(serialData.get(resName("style", "Theme_Robolectric"), "").getData());
+    assertThat(concurrentPlurals.get(resName("plurals", "beer"), "").find(1).string).isEqualTo("One beer");
+  }
+
+  private static void load(ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData) throws Exception {
+    new DocumentLoader(testResources()).load("values",
+        new ValueResourceLoader(data, "/resources/string", "string", ResType.CHAR_SEQUENCE),
+        new ValueResourceLoader(data, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
+        new PluralResourceLoader(pluralsData),
+        new AttrResourceLoader(data),
+        new StyleResourceLoader(data));
+  }
+
+  private static ResName resName(String type, String name) {
+    return new ResName(TestUtil.TEST_PACKAGE, type, name);
+  }
+}
@@ -114,6 +114,33 @@ public class ResBundleTest {
         "port-notouch-12key"), "en-GB-port-hdpi-notouch-12key").getValue());
   }
 
+  @Test
+  public void getValue_shouldRememberPicksOnceImmutable() throws Exception {
+    ResBundle<String> bundle = new ResBundle<>();
+    bundle.put("string", "greeting", "hello", xmlContext("values"));
+    bundle.put("string", "greeting", "bonjour", xmlContext("values-fr"));
+    bundle.makeImmutable();
+
+    ResName resName = new ResName("org.robolectric", "string", "greeting");
+    Value<String> value = bundle.getValue(resName, "fr-land");
+    assertThat(value.getValue()).isEqualTo("bonjour");
+    assertThat(bundle.getValue(resName, "fr-land")).isSameAs(value);
+    assertThat(bundle.get(resName, "de")).isEqualTo("hello");
+    assertThat(bundle.get(new ResName("org.robolectric", "string", "missing"), "fr")).isNull();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void put_shouldThrowOnceImmutable() throws Exception {
+    ResBundle<String> bundle = new ResBundle<>();
+    bundle.makeImmutable();
+
+    bundle.put("string", "greeting", "hello", xmlContext("values"));
+  }
+
+  private static XmlLoader.XmlContext xmlContext(String valuesDir) {
+    return new XmlLoader.XmlContext("org.robolectric", Fs.fileFromPath("res/" + valuesDir + "/strings.xml"));
+  }
+
   private List<Value<String>> asValues(String... qualifierses) {
     List<Value<String>> values = new ArrayList<>();
     for (String qualifiers : qualifierses) {
@@ -0,0 +1,66 @@
+package org.robolectric.res;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.TestUtil;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class ResourceTableCacheTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldReplayUnchangedFilesWithoutParsing() throws Exception {
+    ResourceTableCache cache = new ResourceTableCache(temporaryFolder.newFolder("cache"));
+    ResBunch parsedData = new ResBunch();
+    ResBundle<PluralResourceLoader.PluralRules> parsedPlurals = new ResBundle<>();
+    CountingLoader firstLoader = load(cache, parsedData, parsedPlurals);
+
+    ResBunch replayedData = new ResBunch();
+    ResBundle<PluralResourceLoader.PluralRules> replayedPlurals = new ResBundle<>();
+    CountingLoader secondLoader = load(cache, replayedData, replayedPlurals);
+
+    assertThat(firstLoader.count).isGreaterThan(0);
+    assertThat(secondLoader.count).isEqualTo(0);
+    assertThat(replayedData.size()).isEqualTo(parsedData.size());
+    assertThat(replayedPlurals.size()).isEqualTo(parsedPlurals.size());
+
+    assertThat(replayedData.get(resName("string", "hello"), "").asString()).isEqualTo("Hello");
+    assertThat((TypedResource[]) replayedData.get(resName("array", "greetings"), "").getData()).hasSize(2);
+    AttrData attrData = (AttrData) replayedData.get(resName("attr", "aspectRatio"), "").getData();
+    assertThat(attrData.getFormat()).isEqualTo("float");
+    StyleData styleData = (StyleData) replayedData.get(resName("style", "Theme_Robolectric"), "").getData();
+    assertThat(styleData).isEqualTo(parsedData.get(resName("style", "Theme_Robolectric"), "").getData());
+    assertThat(replayedPlurals.get(resName("plurals", "beer"), "").find(1).string).isEqualTo("One beer");
+  }
+
+  private static CountingLoader load(ResourceTableCache cache, ResBunch data, ResBundle<PluralResourceLoader.PluralRules> pluralsData) throws Exception {
+    ResourceTableCache.Snapshot snapshot = cache.open(testResources(), data, pluralsData);
+    CountingLoader countingLoader = new CountingLoader();
+    new DocumentLoader(testResources()).load("values", snapshot,
+        countingLoader,
+        new ValueResourceLoader(snapshot.getRecordingData(), "/resources/string", "string", ResType.CHAR_SEQUENCE),
+        new ValueResourceLoader(snapshot.getRecordingData(), "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
+        new PluralResourceLoader(snapshot.getRecordingPluralsData()),
+        new AttrResourceLoader(snapshot.getRecordingData()),
+        new StyleResourceLoader(snapshot.getRecordingData()));
+    snapshot.save();
+    return countingLoader;
+  }
+
+  private static ResName resName(String type, String name) {
+    return new ResName(TestUtil.TEST_PACKAGE, type, name);
+  }
+
+  private static class CountingLoader extends XmlLoader {
+    int count;
+
+    @Override
+    protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) {
+      count++;
+    }
+  }
+}
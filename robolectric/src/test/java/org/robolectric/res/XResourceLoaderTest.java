@@ -0,0 +1,51 @@
+package org.robolectric.res;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XResourceLoaderTest {
+
+  @Test
+  public void initialize_shouldLoadResourcesOnceWhenCalledFromSeveralThreads() throws Exception {
+    final AtomicInteger initializations = new AtomicInteger();
+    final XResourceLoader loader = new EmptyResourceLoader() {
+      @Override void doInitialize() {
+        initializations.incrementAndGet();
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          loader.initialize();
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(initializations.get()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,148 @@
+package org.robolectric.res.builder;
+
+import android.content.res.XmlResourceParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.TestRunners;
+import org.robolectric.res.DocumentLoader;
+import org.robolectric.res.MergedResourceIndex;
+import org.robolectric.res.ResBundle;
+import org.robolectric.res.ResName;
+import org.robolectric.res.ResourceExtractor;
+import org.robolectric.res.ResourceIndex;
+import org.robolectric.res.XmlBlockLoader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.TEST_PACKAGE;
+import static org.robolectric.util.TestUtil.testResources;
+
+@RunWith(TestRunners.WithDefaults.class)
+public class CompiledXmlTest {
+  private ResBundle<XmlBlock> resBundle;
+  private ResourceIndex resourceIndex;
+
+  @Before
+  public void setUp() throws Exception {
+    resBundle = new ResBundle<>();
+    DocumentLoader documentLoader = new DocumentLoader(testResources());
+    documentLoader.load("layout", new XmlBlockLoader(resBundle, "layout"));
+    documentLoader.load("xml", new XmlBlockLoader(resBundle, "xml"));
+    resourceIndex = new MergedResourceIndex(new ResourceExtractor(testResources()), new ResourceExtractor());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    System.clearProperty(ResourceParser.DOM_PARSER_PROPERTY);
+  }
+
+  @Test
+  public void shouldReportTheSameEventsAsTheDomParser() throws Exception {
+    for (String name : new String[] {"layout/main", "layout/custom_layout", "layout/fragment", "layout/override_include",
+        "layout/text_views", "xml/preferences"}) {
+      XmlBlock block = resBundle.get(new ResName(TEST_PACKAGE + ":" + name), "");
+
+      assertThat(events(compiledParser(block))).as(name).isEqualTo(events(domParser(block)));
+    }
+  }
+
+  @Test
+  public void shouldMatchTheDomParserForTextCommentsAndNamespaces() throws Exception {
+    String xml = "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+        + "    xmlns:app=\"http://schemas.android.com/apk/res-auto\" app:title=\"@string/hello\" android:id=\"@+id/x\">\n"
+        + "  text &amp; more <!-- comment --> after<![CDATA[ <cdata> ]]>\n"
+        + "  <item>x<sub>y</sub>z</item>\n"
+        + "</LinearLayout>";
+    XmlBlock block = XmlBlock.create(xml.getBytes(StandardCharsets.UTF_8), "test.xml", TEST_PACKAGE);
+
+    assertThat(events(compiledParser(block))).isEqualTo(events(domParser(block)));
+  }
+
+  @Test
+  public void shouldResolveAttributeNameResourcesOncePerResourceIndex() throws Exception {
+    XmlBlock block = resBundle.get(new ResName(TEST_PACKAGE, "layout", "main"), "");
+    XmlResourceParser parser = compiledParser(block);
+    parser.next();
+    parser.next();
+
+    int attributeIndex = attributeIndex(parser, "layout_width");
+    int resourceId = parser.getAttributeNameResource(attributeIndex);
+    assertThat(resourceId).isEqualTo(domParserAtRoot(block).getAttributeNameResource(attributeIndex));
+    assertThat(block.getCompiledXml().attributeResources.resourceIds).contains(resourceId);
+  }
+
+  @Test
+  public void from_shouldUseTheDomParserWhenAskedTo() throws Exception {
+    XmlBlock block = resBundle.get(new ResName(TEST_PACKAGE, "layout", "main"), "");
+    assertThat(ResourceParser.from(block, TEST_PACKAGE, resourceIndex))
+        .isInstanceOf(ResourceParser.CompiledXmlResourceParser.class);
+
+    System.setProperty(ResourceParser.DOM_PARSER_PROPERTY, "true");
+    assertThat(ResourceParser.from(block, TEST_PACKAGE, resourceIndex))
+        .isInstanceOf(ResourceParser.XmlResourceParserImpl.class);
+  }
+
+  @Test
+  public void from_shouldUseTheDomParserForBlocksCreatedFromDocuments() throws Exception {
+    XmlBlock block = resBundle.get(new ResName(TEST_PACKAGE, "layout", "main"), "");
+    XmlBlock documentBlock = XmlBlock.create(block.getDocument(), block.getFilename(), block.getPackageName());
+
+    assertThat(ResourceParser.from(documentBlock, TEST_PACKAGE, resourceIndex))
+        .isInstanceOf(ResourceParser.XmlResourceParserImpl.class);
+  }
+
+  private XmlResourceParser compiledParser(XmlBlock block) {
+    return new ResourceParser.CompiledXmlResourceParser(block.getCompiledXml(), block.getFilename(),
+        block.getPackageName(), TEST_PACKAGE, resourceIndex);
+  }
+
+  private XmlResourceParser domParser(XmlBlock block) {
+    return new ResourceParser.XmlResourceParserImpl(block.getDocument(), block.getFilename(),
+        block.getPackageName(), TEST_PACKAGE, resourceIndex);
+  }
+
+  private XmlResourceParser domParserAtRoot(XmlBlock block) throws Exception {
+    XmlResourceParser parser = domParser(block);
+    parser.next();
+    parser.next();
+    return parser;
+  }
+
+  private static int attributeIndex(XmlResourceParser parser, String name) {
+    for (int i = 0; i < parser.getAttributeCount(); i++) {
+      if (name.equals(parser.getAttributeName(i))) {
+        return i;
+      }
+    }
+    throw new AssertionError("no attribute " + name);
+  }
+
+  private static List<String> events(XmlResourceParser parser) throws Exception {
+    List<String> events = new ArrayList<>();
+    int eventType = parser.getEventType();
+    while (true) {
+      StringBuilder event = new StringBuilder()
+          .append(XmlResourceParser.TYPES[eventType]).append(' ').append(parser.getDepth())
+          .append(' ').append(parser.getName()).append(' ').append(parser.getNamespace())
+          .append(' ').append(parser.getText());
+      if (eventType == XmlResourceParser.START_TAG) {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+          event.append("\n  ").append(parser.getAttributeNamespace(i)).append(' ').append(parser.getAttributeName(i))
+              .append('=').append(parser.getAttributeValue(i)).append(' ').append(parser.getAttributeNameResource(i));
+        }
+        event.append("\n  id=").append(parser.getAttributeResourceValue(
+            "http://schemas.android.com/apk/res/android", "id", 0));
+      }
+      events.add(event.toString());
+      if (eventType == XmlResourceParser.END_DOCUMENT) {
+        return events;
+      }
+      eventType = parser.next();
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package org.robolectric.res.builder;
+
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Runs the {@link XmlBlockLoaderTest} suite against the DOM-based parser that
+ * {@code robolectric.resources.domParser} selects.
+ */
+public class XmlBlockLoaderDomParserTest extends XmlBlockLoaderTest {
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    System.setProperty(ResourceParser.DOM_PARSER_PROPERTY, "true");
+    super.setUp();
+  }
+
+  @After
+  @Override
+  public void tearDown() throws Exception {
+    try {
+      super.tearDown();
+    } finally {
+      System.clearProperty(ResourceParser.DOM_PARSER_PROPERTY);
+    }
+  }
+}
@@ -14,14 +14,11 @@ import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceExtractor;
 import org.robolectric.res.ResourceIndex;
 import org.robolectric.res.XmlBlockLoader;
-import org.robolectric.res.builder.ResourceParser.XmlResourceParserImpl;
 import org.robolectric.util.TestUtil;
 import org.w3c.dom.Document;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -37,8 +34,8 @@ import static org.robolectric.util.TestUtil.TEST_PACKAGE;
 import static org.robolectric.util.TestUtil.testResources;
 
 /**
- * Test class for {@link XmlBlockLoader} and its inner
- * class {@link XmlResourceParserImpl}. The tests verify
+ * Test class for {@link XmlBlockLoader} and the parser
+ * {@link ResourceParser#from} creates for its blocks. The tests verify
  * that this implementation will behave exactly as
  * the android implementation.
  *
@@ -54,7 +51,7 @@ public class XmlBlockLoaderTest {
   public static final String XMLNS_NS = "http://www.w3.org/2000/xmlns/";
   private XmlBlockLoader xmlBlockLoader;
   private XmlBlock xmlBlock;
-  private XmlResourceParserImpl parser;
+  private ResourceParser.BaseXmlResourceParser parser;
   private ResBundle<XmlBlock> resBundle;
   private ResourceIndex resourceIndex;
 
@@ -67,7 +64,7 @@ public class XmlBlockLoaderTest {
     ResName resName = new ResName(TEST_PACKAGE, "xml", "preferences");
     xmlBlock = resBundle.get(resName, "");
     resourceIndex = new MergedResourceIndex(new ResourceExtractor(testResources()), new ResourceExtractor());
-    parser = (XmlResourceParserImpl) ResourceParser.from(xmlBlock, TEST_PACKAGE, resourceIndex);
+    parser = (ResourceParser.BaseXmlResourceParser) ResourceParser.from(xmlBlock, TEST_PACKAGE, resourceIndex);
   }
 
   @After
@@ -95,16 +92,9 @@ public class XmlBlockLoaderTest {
   private void forgeAndOpenDocument(String xmlValue)
       throws XmlPullParserException {
     try {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      factory.setNamespaceAware(true);
-      factory.setIgnoringComments(true);
-      factory.setIgnoringElementContentWhitespace(true);
-      DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-      Document document = documentBuilder.parse(
-          new ByteArrayInputStream(xmlValue.getBytes()));
-
-      parser = new XmlResourceParserImpl(document, "file", TestUtil.testResources().getPackageName(),
-          TEST_PACKAGE, resourceIndex);
+      XmlBlock block = XmlBlock.create(xmlValue.getBytes(), "file", TestUtil.testResources().getPackageName());
+
+      parser = (ResourceParser.BaseXmlResourceParser) ResourceParser.from(block, TEST_PACKAGE, resourceIndex);
       // Navigate to the root element
       parseUntilNext(XmlResourceParser.START_TAG);
     } catch (Exception parsingException) {
@@ -132,6 +122,15 @@ public class XmlBlockLoaderTest {
     assertThat(parser).isNotNull();
   }
 
+  @Test
+  public void shouldBuildDocumentOnceFromLoadedBytes() throws Exception {
+    XmlBlock block = resBundle.get(new ResName(TEST_PACKAGE, "xml", "preferences"), "");
+    Document document = block.getDocument();
+
+    assertThat(document.getDocumentElement().getTagName()).isEqualTo("PreferenceScreen");
+    assertThat(block.getDocument()).isSameAs(document);
+  }
+
   @Test
   public void testSetFeature() throws XmlPullParserException {
     for (String feature : ResourceParser.AVAILABLE_FEATURES) {